@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.nio;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Event loop which multiplexes the non-blocking SMTP and IMAP connections of the email sinks and sources on a
+ * single thread. The handlers and the tickers registered with an event loop are only called on its thread, so
+ * that their state is not shared between threads, and the other threads hand over their work through
+ * {@link #execute(Runnable)}.
+ */
+public class EmailEventLoop implements Runnable {
+    private static final Logger log = LogManager.getLogger(EmailEventLoop.class);
+    private static final long TICK_INTERVAL = 100;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final List<Ticker> tickers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * Handler of the readiness events of a channel registered with the event loop.
+     */
+    public interface Handler {
+        void onSelected(SelectionKey key);
+    }
+
+    /**
+     * Component which is called by the event loop periodically, such as to time out its connections.
+     */
+    public interface Ticker {
+        void onTick(long now);
+    }
+
+    /**
+     * @param name name of the thread of the event loop.
+     * @throws IOException if the selector cannot be opened.
+     */
+    public EmailEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Run a task on the thread of the event loop.
+     *
+     * @param task the task to be run.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Register a channel with the selector of the event loop. Called on the event loop.
+     *
+     * @param channel     the channel, which should be in the non-blocking mode.
+     * @param interestOps the initial interest set of the channel.
+     * @param handler     handler of the readiness events of the channel.
+     * @return the selection key of the channel.
+     * @throws ClosedChannelException if the channel is closed.
+     */
+    public SelectionKey register(SelectableChannel channel, int interestOps, Handler handler)
+            throws ClosedChannelException {
+        return channel.register(selector, interestOps, handler);
+    }
+
+    /**
+     * Add a ticker, which is called every {@value #TICK_INTERVAL} milliseconds. Called on the event loop.
+     */
+    public void addTicker(Ticker ticker) {
+        tickers.add(ticker);
+    }
+
+    /**
+     * Remove a ticker. Called on the event loop.
+     */
+    public void removeTicker(Ticker ticker) {
+        tickers.remove(ticker);
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.currentTimeMillis() + TICK_INTERVAL;
+        while (running) {
+            try {
+                selector.select(TICK_INTERVAL);
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    ((Handler) key.attachment()).onSelected(key);
+                }
+                runTasks();
+                long now = System.currentTimeMillis();
+                if (now >= nextTick) {
+                    for (Ticker ticker : new ArrayList<>(tickers)) {
+                        ticker.onTick(now);
+                    }
+                    nextTick = now + TICK_INTERVAL;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Error is encountered in the email event loop: " + thread.getName() + ". "
+                        + e.getMessage(), e);
+            }
+        }
+        runTasks();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Error in closing the selector of the email event loop: " + thread.getName() + ". "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Error is encountered while running a task in the email event loop: " + thread.getName()
+                        + ". " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Stop the event loop after running the tasks submitted before, and wait for its thread to terminate.
+     *
+     * @param timeout the maximum time in milliseconds to wait.
+     */
+    public void stop(long timeout) {
+        execute(() -> running = false);
+        if (inEventLoop()) {
+            return;
+        }
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
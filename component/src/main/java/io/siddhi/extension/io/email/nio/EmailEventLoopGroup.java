@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.nio;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group of event loops on which non-blocking SMTP and IMAP connections are multiplexed. The connections are
+ * assigned to the event loops in round robin. An email sink owns the group of its SMTP clients, whereas the email
+ * sources share a JVM wide group, so that hundreds of mailboxes are watched on a handful of threads.
+ */
+public class EmailEventLoopGroup {
+    private static final Map<String, EmailEventLoopGroup> sharedGroups = new HashMap<>();
+    private static final Map<String, Integer> references = new HashMap<>();
+
+    private final EmailEventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+
+    /**
+     * @param name    prefix of the names of the threads of the event loops.
+     * @param threads number of the event loops.
+     * @throws IOException if the selector of an event loop cannot be opened.
+     */
+    public EmailEventLoopGroup(String name, int threads) throws IOException {
+        eventLoops = new EmailEventLoop[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                eventLoops[i] = new EmailEventLoop(name + "-" + i);
+            }
+        } catch (IOException e) {
+            for (EmailEventLoop eventLoop : eventLoops) {
+                if (eventLoop != null) {
+                    eventLoop.start();
+                    eventLoop.stop(0);
+                }
+            }
+            throw e;
+        }
+        for (EmailEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    /**
+     * Get a JVM wide group, creating it if it does not exist. The group should be released through
+     * {@link #releaseShared(String, long)} by each of its users.
+     *
+     * @param name    name of the group, and the prefix of the names of its threads.
+     * @param threads number of the event loops, if the group is created.
+     * @return the shared group.
+     * @throws IOException if the selector of an event loop cannot be opened.
+     */
+    public static synchronized EmailEventLoopGroup acquireShared(String name, int threads) throws IOException {
+        EmailEventLoopGroup group = sharedGroups.get(name);
+        if (group == null) {
+            group = new EmailEventLoopGroup(name, threads);
+            sharedGroups.put(name, group);
+        }
+        references.merge(name, 1, Integer::sum);
+        return group;
+    }
+
+    /**
+     * Release a JVM wide group, stopping its event loops if it is not used anymore.
+     *
+     * @param name    name of the group.
+     * @param timeout the maximum time in milliseconds to wait for each event loop to terminate.
+     */
+    public static synchronized void releaseShared(String name, long timeout) {
+        Integer count = references.get(name);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(name, count - 1);
+            return;
+        }
+        references.remove(name);
+        EmailEventLoopGroup group = sharedGroups.remove(name);
+        if (group != null) {
+            group.shutdown(timeout);
+        }
+    }
+
+    public EmailEventLoop next() {
+        return eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+    }
+
+    /**
+     * Stop all the event loops.
+     *
+     * @param timeout the maximum time in milliseconds to wait for each event loop to terminate.
+     */
+    public void shutdown(long timeout) {
+        for (EmailEventLoop eventLoop : eventLoops) {
+            eventLoop.stop(timeout);
+        }
+    }
+}
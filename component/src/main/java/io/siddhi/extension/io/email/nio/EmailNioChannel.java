@@ -0,0 +1,314 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Non-blocking connection to a mail server, which encrypts the data with a {@link SSLEngine} if the connection
+ * uses implicit TLS. The data written to the channel is queued, and it is written as the socket accepts it. The
+ * owner of the channel should call {@link #flush()} after each write and each read, since the TLS handshake may
+ * need to write while reading, and register for the write readiness while it returns false.
+ */
+public class EmailNioChannel {
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine sslEngine;
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private boolean endOfStream = false;
+
+    private EmailNioChannel(SocketChannel channel, SSLEngine sslEngine) {
+        this.channel = channel;
+        this.sslEngine = sslEngine;
+        if (sslEngine != null) {
+            SSLSession session = sslEngine.getSession();
+            netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+            netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+            netOut.flip();
+            appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+        }
+    }
+
+    /**
+     * Open a non-blocking socket channel, which is not connected yet.
+     *
+     * @param host       host name of the server, which is used to validate its certificate.
+     * @param port       port of the server.
+     * @param sslContext the SSL context of the implicit TLS connection, or null if the connection is in plain text.
+     * @return the channel.
+     * @throws IOException if the socket channel cannot be opened.
+     */
+    public static EmailNioChannel open(String host, int port, SSLContext sslContext) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SSLEngine sslEngine = null;
+            if (sslContext != null) {
+                sslEngine = sslContext.createSSLEngine(host, port);
+                sslEngine.setUseClientMode(true);
+            }
+            return new EmailNioChannel(channel, sslEngine);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public SocketChannel getSocketChannel() {
+        return channel;
+    }
+
+    /**
+     * Start connecting to the server.
+     *
+     * @param address address of the server.
+     * @return true if the connection is established immediately, else {@link #finishConnect()} should be called
+     * once the channel is ready to connect.
+     * @throws IOException if the connection fails.
+     */
+    public boolean connect(SocketAddress address) throws IOException {
+        if (channel.connect(address)) {
+            onConnected();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finish connecting to the server, and start the TLS handshake.
+     *
+     * @return true if the connection is established.
+     * @throws IOException if the connection fails.
+     */
+    public boolean finishConnect() throws IOException {
+        if (!channel.finishConnect()) {
+            return false;
+        }
+        onConnected();
+        return true;
+    }
+
+    private void onConnected() throws SSLException {
+        if (sslEngine != null) {
+            sslEngine.beginHandshake();
+        }
+    }
+
+    /**
+     * Read the data available in the channel, without blocking.
+     *
+     * @param dst buffer into which the data is read.
+     * @return the number of bytes read, which may be zero, or -1 if the server has closed the connection.
+     * @throws IOException if the data cannot be read or decrypted.
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if (sslEngine == null) {
+            return channel.read(dst);
+        }
+        if (appIn.position() == 0 && !endOfStream) {
+            if (channel.read(netIn) < 0) {
+                endOfStream = true;
+            }
+            unwrap();
+        }
+        appIn.flip();
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer data = appIn.duplicate();
+        data.limit(data.position() + count);
+        dst.put(data);
+        appIn.position(appIn.position() + count);
+        appIn.compact();
+        return count == 0 && endOfStream ? -1 : count;
+    }
+
+    /**
+     * Queue data to be written to the channel. The data is written by {@link #flush()}.
+     *
+     * @param src the data, which should not be modified afterwards.
+     */
+    public void write(ByteBuffer src) {
+        writeQueue.add(src);
+    }
+
+    /**
+     * Write the queued data, and the data of the TLS handshake, as far as the socket accepts it without blocking.
+     *
+     * @return true if there is nothing left to write, or if the TLS handshake waits for the server.
+     * @throws IOException if the data cannot be written or encrypted.
+     */
+    public boolean flush() throws IOException {
+        if (sslEngine == null) {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer buffer = writeQueue.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+                writeQueue.poll();
+            }
+            return true;
+        }
+        while (true) {
+            if (!writeNetOut()) {
+                return false;
+            }
+            HandshakeStatus status = sslEngine.getHandshakeStatus();
+            if (status == HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+            } else if (status == HandshakeStatus.NEED_WRAP) {
+                wrap(EMPTY_BUFFER);
+            } else if (status != HandshakeStatus.NOT_HANDSHAKING && status != HandshakeStatus.FINISHED) {
+                return true;
+            } else {
+                ByteBuffer buffer = writeQueue.peek();
+                if (buffer == null) {
+                    return true;
+                }
+                if (buffer.hasRemaining()) {
+                    wrap(buffer);
+                } else {
+                    writeQueue.poll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the channel, after sending the TLS close notification if the socket accepts it without blocking.
+     *
+     * @throws IOException if the socket channel cannot be closed.
+     */
+    public void close() throws IOException {
+        try {
+            if (sslEngine != null && channel.isConnected()) {
+                sslEngine.closeOutbound();
+                if (writeNetOut()) {
+                    wrap(EMPTY_BUFFER);
+                    writeNetOut();
+                }
+            }
+        } catch (IOException e) {
+            // The connection is closed regardless.
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void unwrap() throws IOException {
+        while (true) {
+            HandshakeStatus status = sslEngine.getHandshakeStatus();
+            if (status == HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                continue;
+            }
+            if (status == HandshakeStatus.NEED_WRAP) {
+                if (!writeNetOut()) {
+                    return;
+                }
+                wrap(EMPTY_BUFFER);
+                continue;
+            }
+            SSLEngineResult result;
+            netIn.flip();
+            try {
+                result = sslEngine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, sslEngine.getSession().getApplicationBufferSize());
+                    break;
+                case BUFFER_UNDERFLOW:
+                    if (netIn.position() == netIn.capacity()) {
+                        netIn = enlarge(netIn, sslEngine.getSession().getPacketBufferSize());
+                    }
+                    return;
+                case CLOSED:
+                    endOfStream = true;
+                    return;
+                default:
+                    if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                            && result.getHandshakeStatus() != HandshakeStatus.NEED_TASK
+                            && result.getHandshakeStatus() != HandshakeStatus.NEED_WRAP) {
+                        return;
+                    }
+            }
+        }
+    }
+
+    /**
+     * Encrypt data into the network buffer, which should have been written to the socket before.
+     */
+    private void wrap(ByteBuffer src) throws IOException {
+        SSLEngineResult result;
+        netOut.clear();
+        try {
+            result = sslEngine.wrap(src, netOut);
+        } finally {
+            netOut.flip();
+        }
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            netOut = ByteBuffer.allocate(Math.max(netOut.capacity() * 2,
+                    sslEngine.getSession().getPacketBufferSize()));
+            netOut.flip();
+        } else if (result.getStatus() == SSLEngineResult.Status.CLOSED && src != EMPTY_BUFFER) {
+            throw new SSLException("TLS connection is closed.");
+        }
+    }
+
+    private boolean writeNetOut() throws IOException {
+        if (netOut.hasRemaining()) {
+            channel.write(netOut);
+        }
+        return !netOut.hasRemaining();
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = sslEngine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+        ByteBuffer enlarged = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        buffer.flip();
+        enlarged.put(buffer);
+        return enlarged;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import io.siddhi.core.exception.ConnectionUnavailableException;
+import io.siddhi.extension.io.email.sink.outbox.EmailOutbox;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sends the envelopes of an email whose recipients are split by the {@link EmailRecipientChunker} in parallel. The
+ * envelopes which are not delivered are given by the {@link UndeliveredEnvelopesException}, and only those are sent
+ * when the email is retried with them, so that the recipients of the delivered envelopes do not receive the email
+ * twice. Nothing is kept between the sends, so an email which is not retried leaves nothing behind.
+ */
+class EmailEnvelopeSender {
+    private static final Logger log = LogManager.getLogger(EmailEnvelopeSender.class);
+
+    private final int chunkSize;
+    private final EmailOutbox.EmailSender sender;
+
+    /**
+     * @param chunkSize the maximum number of recipients of an envelope.
+     * @param sender    sender of the envelopes.
+     */
+    EmailEnvelopeSender(int chunkSize, EmailOutbox.EmailSender sender) {
+        this.chunkSize = chunkSize;
+        this.sender = sender;
+    }
+
+    /**
+     * Get the email to be sent when an email is retried after a send failed.
+     *
+     * @param email the email which is not sent.
+     * @param error the error of the send.
+     * @return a copy of the email with the envelopes which are not delivered, if the email is split, else the
+     * email.
+     */
+    static RenderedEmail getRetry(RenderedEmail email, ConnectionUnavailableException error) {
+        if (error instanceof UndeliveredEnvelopesException) {
+            return email.withUndeliveredEnvelopes(((UndeliveredEnvelopesException) error).getEnvelopes());
+        }
+        return email;
+    }
+
+    /**
+     * Send an email, splitting its recipients into envelopes if they exceed the chunk size. The first envelope is
+     * sent by the calling thread and the others by the given executor. If the email is a retry which carries the
+     * envelopes which are not delivered, only those are sent.
+     *
+     * @param email    the email to be sent.
+     * @param executor executor which sends the envelopes after the first one.
+     * @throws ConnectionUnavailableException if the smtp server is unavailable for any of the envelopes. If the
+     *                                        email is split, it is an {@link UndeliveredEnvelopesException} which
+     *                                        gives the envelopes to be retried.
+     */
+    void send(RenderedEmail email, ExecutorService executor) throws ConnectionUnavailableException {
+        List<RenderedEmail> envelopes = EmailRecipientChunker.split(email, chunkSize);
+        if (envelopes.size() == 1) {
+            sender.send(email);
+            return;
+        }
+        BitSet pending = email.getUndeliveredEnvelopes();
+        if (pending == null || pending.isEmpty() || pending.length() > envelopes.size()) {
+            //The recipients of a retry which is rendered again may have changed, and then all the envelopes are sent.
+            pending = new BitSet(envelopes.size());
+            pending.set(0, envelopes.size());
+        }
+        BitSet failed = sendEnvelopes(envelopes, pending, executor);
+        if (!failed.isEmpty()) {
+            throw new UndeliveredEnvelopesException(failed.cardinality() + " of the " + envelopes.size()
+                    + " envelopes of the email with properties: " + email.getHeaders().toString()
+                    + " are not delivered, as the smtp server is unavailable.", failed);
+        }
+    }
+
+    /**
+     * Send the pending envelopes of an email in parallel.
+     *
+     * @return the indexes of the envelopes which failed with a {@link ConnectionUnavailableException}.
+     * @throws RuntimeException if an envelope failed with an error which is not retried, and none of the
+     *                          envelopes failed with a {@link ConnectionUnavailableException}.
+     */
+    private BitSet sendEnvelopes(List<RenderedEmail> envelopes, BitSet pending, ExecutorService executor) {
+        int first = pending.nextSetBit(0);
+        List<Future<?>> futures = new ArrayList<>(pending.cardinality() - 1);
+        for (int i = pending.nextSetBit(first + 1); i >= 0; i = pending.nextSetBit(i + 1)) {
+            RenderedEmail envelope = envelopes.get(i);
+            futures.add(executor.submit(() -> {
+                sender.send(envelope);
+                return null;
+            }));
+        }
+        BitSet failed = new BitSet(envelopes.size());
+        RuntimeException error = null;
+        try {
+            sender.send(envelopes.get(first));
+        } catch (ConnectionUnavailableException e) {
+            failed.set(first);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        int index = first;
+        for (Future<?> future : futures) {
+            index = pending.nextSetBit(index + 1);
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ConnectionUnavailableException) {
+                    failed.set(index);
+                } else if (error == null) {
+                    error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new RuntimeException("Error is encountered while sending the envelope with "
+                            + "properties: " + envelopes.get(index).getHeaders().toString() + ". "
+                            + e.getCause().getMessage(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                //The envelopes which are still being sent are not waited for, and taken as delivered, so that they
+                //are not duplicated.
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (error != null) {
+            if (failed.isEmpty()) {
+                throw error;
+            }
+            //The email is retried for the envelopes which failed with a ConnectionUnavailableException, which would
+            //drop this error. Therefore, it is logged.
+            log.error("Error is encountered while sending an envelope of the email. " + error.getMessage(), error);
+        }
+        return failed;
+    }
+
+    /**
+     * Thrown when envelopes of a split email are not delivered, as the smtp server is unavailable.
+     */
+    static class UndeliveredEnvelopesException extends ConnectionUnavailableException {
+        private final BitSet envelopes;
+
+        private UndeliveredEnvelopesException(String message, BitSet envelopes) {
+            super(message);
+            this.envelopes = envelopes;
+        }
+
+        /**
+         * @return the indexes of the envelopes which are not delivered.
+         */
+        BitSet getEnvelopes() {
+            return envelopes;
+        }
+    }
+}
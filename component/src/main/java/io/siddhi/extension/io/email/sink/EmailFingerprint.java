@@ -0,0 +1,73 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes a digest of the headers, content and attachments of an email, used to detect identical emails.
+ */
+final class EmailFingerprint {
+
+    private EmailFingerprint() {
+    }
+
+    /**
+     * @param email           the email.
+     * @param excludedHeaders headers which are not considered when comparing emails.
+     * @return the Base64 encoded SHA-256 digest of the email.
+     */
+    static String of(RenderedEmail email, Collection<String> excludedHeaders) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 message digest is not available.", e);
+        }
+        for (Map.Entry<String, String> header : new TreeMap<>(email.getHeaders()).entrySet()) {
+            if (!excludedHeaders.contains(header.getKey())) {
+                update(messageDigest, header.getKey());
+                update(messageDigest, header.getValue());
+            }
+        }
+        update(messageDigest, email.getContent());
+        List<String> attachments = email.getAttachments();
+        if (attachments != null) {
+            for (String attachment : attachments) {
+                update(messageDigest, attachment);
+            }
+        }
+        return Base64.getEncoder().encodeToString(messageDigest.digest());
+    }
+
+    private static void update(MessageDigest messageDigest, String value) {
+        if (value != null) {
+            messageDigest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        //Separator, so that adjacent values cannot be shifted into each other.
+        messageDigest.update((byte) 0);
+    }
+}
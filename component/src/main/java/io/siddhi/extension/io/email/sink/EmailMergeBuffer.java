@@ -0,0 +1,158 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import io.siddhi.extension.io.email.util.EmailConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Buffers the emails which differ only by their recipients for a merge window, and sends them as a single email
+ * with all the recipients as 'bcc' recipients, so that they are delivered in one SMTP transaction.
+ */
+class EmailMergeBuffer {
+    private static final List<String> RECIPIENT_HEADERS = Arrays.asList(EmailConstants.TRANSPORT_MAIL_HEADER_TO,
+            EmailConstants.TRANSPORT_MAIL_HEADER_CC, EmailConstants.TRANSPORT_MAIL_HEADER_BCC);
+
+    private final long window;
+    private final int maxRecipients;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<RenderedEmail> sender;
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    /**
+     * @param window        the merge window in milliseconds.
+     * @param maxRecipients the number of recipients after which a merged email is sent before its window closes.
+     * @param scheduler     scheduler used to close the windows.
+     * @param sender        sender of the merged emails.
+     */
+    EmailMergeBuffer(long window, int maxRecipients, ScheduledExecutorService scheduler,
+                     Consumer<RenderedEmail> sender) {
+        this.window = window;
+        this.maxRecipients = maxRecipients;
+        this.scheduler = scheduler;
+        this.sender = sender;
+    }
+
+    /**
+     * Add an email to the batch of the identical emails. The batch is sent when its window closes, or when it
+     * reaches the maximum number of recipients.
+     *
+     * @param email the email to be sent.
+     */
+    void add(RenderedEmail email) {
+        String key = EmailFingerprint.of(email, RECIPIENT_HEADERS);
+        Batch fullBatch = null;
+        synchronized (this) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch();
+                batches.put(key, batch);
+                Batch scheduledBatch = batch;
+                scheduler.schedule(() -> close(key, scheduledBatch), window, TimeUnit.MILLISECONDS);
+            }
+            batch.add(email);
+            if (batch.recipients.size() >= maxRecipients) {
+                batches.remove(key);
+                fullBatch = batch;
+            }
+        }
+        if (fullBatch != null) {
+            sender.accept(fullBatch.toEmail());
+        }
+    }
+
+    /**
+     * Send all the buffered emails without waiting for their windows to close.
+     */
+    void flush() {
+        List<Batch> pendingBatches;
+        synchronized (this) {
+            pendingBatches = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+        for (Batch batch : pendingBatches) {
+            sender.accept(batch.toEmail());
+        }
+    }
+
+    private void close(String key, Batch batch) {
+        synchronized (this) {
+            if (batches.get(key) != batch) {
+                return;
+            }
+            batches.remove(key);
+        }
+        sender.accept(batch.toEmail());
+    }
+
+    /**
+     * Identical emails buffered within a merge window.
+     */
+    private static class Batch {
+        private RenderedEmail firstEmail;
+        private int emailCount = 0;
+        private final Set<String> recipients = new LinkedHashSet<>();
+
+        void add(RenderedEmail email) {
+            if (firstEmail == null) {
+                firstEmail = email;
+            }
+            emailCount++;
+            for (String header : RECIPIENT_HEADERS) {
+                String addresses = email.getHeader(header);
+                if (addresses != null) {
+                    for (String address : addresses.split(EmailConstants.COMMA_SEPERATOR)) {
+                        if (!address.trim().isEmpty()) {
+                            recipients.add(address.trim());
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Create the email of the batch. Since the recipients of the merged emails should not see each other, they
+         * are 'bcc' recipients, and the 'to' header is the sender address.
+         *
+         * @return the email itself if only one email was buffered, else the merged email.
+         */
+        RenderedEmail toEmail() {
+            if (emailCount == 1) {
+                return firstEmail;
+            }
+            Map<String, String> headers = new HashMap<>(firstEmail.getHeaders());
+            headers.remove(EmailConstants.TRANSPORT_MAIL_HEADER_CC);
+            headers.put(EmailConstants.TRANSPORT_MAIL_HEADER_TO,
+                    firstEmail.getHeader(EmailConstants.TRANSPORT_MAIL_HEADER_FROM));
+            headers.put(EmailConstants.TRANSPORT_MAIL_HEADER_BCC,
+                    String.join(EmailConstants.COMMA_SEPERATOR + " ", recipients));
+            return firstEmail.withHeaders(headers);
+        }
+    }
+}
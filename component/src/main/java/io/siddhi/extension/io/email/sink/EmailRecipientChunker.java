@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import io.siddhi.extension.io.email.util.EmailConstants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the recipients of an email into envelopes of a bounded size, so that a large distribution list is not
+ * sent with more RCPT commands than the SMTP server accepts in a single transaction.
+ */
+final class EmailRecipientChunker {
+    private static final String[] RECIPIENT_HEADERS = {EmailConstants.TRANSPORT_MAIL_HEADER_TO,
+            EmailConstants.TRANSPORT_MAIL_HEADER_CC, EmailConstants.TRANSPORT_MAIL_HEADER_BCC};
+
+    private EmailRecipientChunker() {
+    }
+
+    /**
+     * Split an email into copies with at most the given number of recipients each. A recipient keeps its
+     * 'to', 'cc' or 'bcc' type in the copy, and the other headers, the content and the attachments are unchanged.
+     *
+     * @param email     the email to be split.
+     * @param chunkSize the maximum number of recipients of a copy.
+     * @return the copies, or a list with only the given email if it does not exceed the chunk size.
+     */
+    static List<RenderedEmail> split(RenderedEmail email, int chunkSize) {
+        List<Map<String, List<String>>> chunks = new ArrayList<>();
+        Map<String, List<String>> chunk = new LinkedHashMap<>();
+        int chunkRecipients = 0;
+        for (String header : RECIPIENT_HEADERS) {
+            String addresses = email.getHeader(header);
+            if (addresses == null || addresses.trim().isEmpty()) {
+                continue;
+            }
+            for (String address : addresses.split(EmailConstants.COMMA_SEPERATOR)) {
+                address = address.trim();
+                if (address.isEmpty()) {
+                    continue;
+                }
+                if (chunkRecipients == chunkSize) {
+                    chunks.add(chunk);
+                    chunk = new LinkedHashMap<>();
+                    chunkRecipients = 0;
+                }
+                chunk.computeIfAbsent(header, k -> new ArrayList<>()).add(address);
+                chunkRecipients++;
+            }
+        }
+        if (chunks.isEmpty()) {
+            List<RenderedEmail> emails = new ArrayList<>(1);
+            emails.add(email);
+            return emails;
+        }
+        chunks.add(chunk);
+        List<RenderedEmail> emails = new ArrayList<>(chunks.size());
+        for (Map<String, List<String>> recipients : chunks) {
+            Map<String, String> headers = new HashMap<>(email.getHeaders());
+            for (String header : RECIPIENT_HEADERS) {
+                headers.remove(header);
+            }
+            recipients.forEach((header, addresses) ->
+                    headers.put(header, String.join(EmailConstants.COMMA_SEPERATOR + " ", addresses)));
+            emails.add(email.withHeaders(headers));
+        }
+        return emails;
+    }
+}
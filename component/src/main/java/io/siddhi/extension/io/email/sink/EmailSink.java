@@ -37,25 +37,55 @@ import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.core.util.transport.DynamicOptions;
 import io.siddhi.core.util.transport.Option;
 import io.siddhi.core.util.transport.OptionHolder;
-import io.siddhi.extension.io.email.sink.transport.EmailClientConnectionPoolManager;
+import io.siddhi.extension.io.email.nio.EmailEventLoopGroup;
+import io.siddhi.extension.io.email.sink.outbox.EmailOutbox;
+import io.siddhi.extension.io.email.sink.smtp.EmailSmtpClient;
+import io.siddhi.extension.io.email.sink.transport.EmailCircuitBreaker;
+import io.siddhi.extension.io.email.sink.transport.EmailConcurrencyLimiter;
+import io.siddhi.extension.io.email.sink.transport.EmailConnectionPool;
+import io.siddhi.extension.io.email.sink.transport.EmailPriorityGate;
+import io.siddhi.extension.io.email.sink.transport.EmailRateLimiter;
+import io.siddhi.extension.io.email.sink.transport.EmailRelay;
+import io.siddhi.extension.io.email.sink.transport.EmailRelayRouter;
+import io.siddhi.extension.io.email.source.EmailOutcomeSource;
 import io.siddhi.extension.io.email.util.EmailConstants;
+import io.siddhi.extension.io.email.util.EmailExecutors;
+import io.siddhi.extension.io.email.util.EmailSSLSocketFactory;
 import io.siddhi.query.api.definition.StreamDefinition;
-import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wso2.transport.email.connector.factory.EmailConnectorFactoryImpl;
-import org.wso2.transport.email.contract.EmailClientConnector;
 import org.wso2.transport.email.contract.EmailConnectorFactory;
-import org.wso2.transport.email.contract.message.EmailBaseMessage;
-import org.wso2.transport.email.contract.message.EmailMultipartMessage;
-import org.wso2.transport.email.contract.message.EmailTextMessage;
 import org.wso2.transport.email.exception.EmailConnectorException;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
 
 /**
  * This the class implementing email sink.
@@ -99,7 +129,7 @@ import java.util.Map;
                            description = "The port that is used to create the connection.",
                            type = {DataType.INT},
                            optional = true,
-                           defaultValue = "'465' the default value is only valid is SSL is enabled."),
+                           defaultValue = "'465' if SSL is enabled, '587' if STARTTLS is enabled, else '25'."),
                 @Parameter(name = "ssl.enable",
                            description = "This parameter specifies whether the connection should be established via " +
                                    "a secure connection or not. The value can be either 'true' or 'false'. If it is" +
@@ -108,6 +138,17 @@ import java.util.Map;
                            type = {DataType.BOOL},
                            optional = true,
                            defaultValue = "true"),
+                @Parameter(name = "starttls.enable",
+                           description = "If this is set to 'true', the connection is established in plain text, " +
+                                   "typically via the 587 submission port, and is upgraded to TLS with the " +
+                                   "'STARTTLS' command before the login. The upgrade is enforced, i.e., the " +
+                                   "connection fails if the server does not support 'STARTTLS'. The upgraded " +
+                                   "connections are kept in the connection pool and reused for the later emails. " +
+                                   "If this is 'true', 'ssl.enable' is 'false' unless it is explicitly set, in which " +
+                                   "case it should be 'false'.",
+                           type = {DataType.BOOL},
+                           optional = true,
+                           defaultValue = "false"),
                 @Parameter(name = "auth",
                            description = "This parameter specifies whether to use the 'AUTH' command when " +
                                    "authenticating or not. If the parameter is set to 'true', an attempt is made to " +
@@ -159,7 +200,467 @@ import java.util.Map;
                         description = "Number of concurrent Email client connections.",
                         type = DataType.INT,
                         optional = true,
-                        defaultValue = "1")
+                        defaultValue = "1"),
+                @Parameter(
+                        name = "rate.limit.messages.per.second",
+                        description = "The maximum number of emails per second that can be sent through the " +
+                                "SMTP relay. The limit is shared by all the email sinks that use the same host, " +
+                                "port and username. If the value is '0', the number of messages is not limited.",
+                        type = DataType.DOUBLE,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "rate.limit.recipients.per.minute",
+                        description = "The maximum number of recipients (i.e., 'to', 'cc' and 'bcc' addresses) per" +
+                                " minute that can be sent through the SMTP relay. The limit is shared by all the " +
+                                "email sinks that use the same host, port and username. If the value is '0', the " +
+                                "number of recipients is not limited.",
+                        type = DataType.DOUBLE,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "rate.limit.burst.size",
+                        description = "The maximum number of emails that can be sent back to back before the " +
+                                "'rate.limit.messages.per.second' limit is applied.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "1"),
+                @Parameter(
+                        name = "adaptive.concurrency.enable",
+                        description = "If this is set to 'true', the number of concurrent sends is adapted to the " +
+                                "capacity of the SMTP relay. The limit starts at one and grows up to the " +
+                                "'connection.pool.size' while the send latency is stable, and it is halved when the" +
+                                " relay replies with a '421', '451' or '452' error or when the latency spikes.",
+                        type = DataType.BOOL,
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(
+                        name = "adaptive.concurrency.latency.tolerance",
+                        description = "The ratio between the latency of a send and the average latency of the " +
+                                "previous sends, above which the send is considered as a latency spike. This is " +
+                                "only applicable if 'adaptive.concurrency.enable' is 'true'.",
+                        type = DataType.DOUBLE,
+                        optional = true,
+                        defaultValue = "2"),
+                @Parameter(
+                        name = "outbox.enable",
+                        description = "If this is set to 'true', the emails are written to a durable outbox on the " +
+                                "local disk when events are published, and sender workers send them to the SMTP " +
+                                "server asynchronously. Therefore, event processing is not blocked while the SMTP " +
+                                "server is unavailable, and the emails that are not sent yet are sent after a " +
+                                "restart.",
+                        type = DataType.BOOL,
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(
+                        name = "outbox.directory",
+                        description = "The directory in which the outbox journal is stored. Each email sink should " +
+                                "use a separate directory. This is mandatory if 'outbox.enable' is 'true'.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "None"),
+                @Parameter(
+                        name = "outbox.segment.size",
+                        description = "The maximum size of an outbox journal segment file in bytes. A segment file is" +
+                                " deleted once all the emails in it are sent.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "16777216"),
+                @Parameter(
+                        name = "outbox.fsync",
+                        description = "The policy on when the outbox journal is flushed to the disk. Possible values " +
+                                "are as follows:\n"
+                                + "'always': Flushes the journal before each publish returns.\n"
+                                + "'interval': Flushes the journal periodically based on 'outbox.fsync.interval'.\n"
+                                + "'never': Leaves the flushing to the operating system.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "interval"),
+                @Parameter(
+                        name = "outbox.fsync.interval",
+                        description = "The interval in milliseconds at which the outbox journal is flushed to the " +
+                                "disk if 'outbox.fsync' is 'interval'.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "1000"),
+                @Parameter(
+                        name = "outbox.workers",
+                        description = "The number of workers that concurrently send the emails in the outbox.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "1"),
+                @Parameter(
+                        name = "suppression.window",
+                        description = "The time window in milliseconds within which duplicate emails are " +
+                                "suppressed. Emails are considered as duplicates if they have the same recipients," +
+                                " subject, content type, content and attachments. Only the first email of a window " +
+                                "is sent. If the value is '0', duplicate emails are not suppressed.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "suppression.cache.size",
+                        description = "The maximum number of distinct emails tracked for suppressing duplicates. " +
+                                "When the limit is reached, the emails with the oldest windows are evicted.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "10000"),
+                @Parameter(
+                        name = "suppression.summary.enable",
+                        description = "If this is set to 'true', a copy of the email with 'N repeats suppressed' " +
+                                "appended to the content is sent when the window of the email closes, if 'N' " +
+                                "duplicates were suppressed within the window.",
+                        type = DataType.BOOL,
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(
+                        name = "relays",
+                        description = "A comma-separated list of SMTP relays in the 'host:port' format, through " +
+                                "which the emails are sent. Each relay has its own connection pool, rate limits " +
+                                "and concurrency limit. If this is not defined, the emails are sent through the " +
+                                "relay given by 'host' and 'port'.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "<host>:<port>"),
+                @Parameter(
+                        name = "relay.strategy",
+                        description = "The strategy used to pick the relay of an email. Possible values are as " +
+                                "follows:\n"
+                                + "'round.robin': Picks the relays in turn.\n"
+                                + "'least.outstanding': Picks the relay with the fewest sends in progress.\n"
+                                + "'domain': Picks the relay based on the domain of the first recipient as " +
+                                "defined in 'relay.domain.routes', and falls back to 'round.robin'.\n"
+                                + "'failover': Picks the first available relay in the order of 'relays'.\n"
+                                + "If the picked relay is unavailable, the email is sent through the other relays.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "round.robin"),
+                @Parameter(
+                        name = "relay.domain.routes",
+                        description = "A comma-separated list of 'domain=host:port' routes used by the 'domain' " +
+                                "strategy. e.g., 'gmail.com=smtp1.example.com:465,yahoo.com=smtp2.example.com:465'." +
+                                " Each relay of the routes should be defined in 'relays'.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "None"),
+                @Parameter(
+                        name = "relay.failure.threshold",
+                        description = "The number of consecutive connection failures after which a relay is " +
+                                "marked as unavailable, and the emails are routed to the other relays.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "3"),
+                @Parameter(
+                        name = "relay.retry.interval",
+                        description = "The time in milliseconds for which an unavailable relay is not picked, " +
+                                "after which the emails are routed to it again.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "30000"),
+                @Parameter(
+                        name = "recipient.chunk.size",
+                        description = "The maximum number of recipients (i.e., 'to', 'cc' and 'bcc' addresses) of a " +
+                                "single SMTP transaction. An email with more recipients is split into copies with " +
+                                "at most this many recipients, which are sent in parallel through the connection " +
+                                "pool. Each recipient keeps its 'to', 'cc' or 'bcc' type, while the 'to' and 'cc' " +
+                                "headers of a copy only list the recipients of that copy. If the value is '0', " +
+                                "emails are not split.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "merge.window",
+                        description = "The time window in milliseconds within which emails that differ only by " +
+                                "their recipients are merged into a single email, which is sent in one SMTP " +
+                                "transaction. The recipients of a merged email are 'bcc' recipients and its 'to' " +
+                                "recipient is the sender 'address', so that the recipients do not see each other. " +
+                                "Since merged emails are sent after the event is published, send errors are logged" +
+                                " unless 'outbox.enable' is 'true'. If the value is '0', emails are not merged.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "merge.max.recipients",
+                        description = "The number of recipients after which a merged email is sent without " +
+                                "waiting for its 'merge.window' to close.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "50"),
+                @Parameter(
+                        name = "body.template.html",
+                        description = "The path of an HTML template file, which is used as the email body instead" +
+                                " of the mapped payload. The template is compiled when the Siddhi application is " +
+                                "created, and its '{{attribute}}' placeholders are filled in with the HTML escaped " +
+                                "attribute values of each event. If 'body.template.text' is also given, the HTML " +
+                                "template is used for the emails whose 'content.type' is 'text/html'.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "None"),
+                @Parameter(
+                        name = "body.template.text",
+                        description = "The path of a plain text template file, which is used as the email body " +
+                                "instead of the mapped payload. The template is compiled when the Siddhi " +
+                                "application is created, and its '{{attribute}}' placeholders are filled in with " +
+                                "the attribute values of each event. If 'body.template.html' is also given, the text" +
+                                " template is used for the emails whose 'content.type' is not 'text/html'.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "None"),
+                @Parameter(
+                        name = "ssl.session.reuse",
+                        description = "If this is set to 'true', the SSL connections use an SSL context which is " +
+                                "shared by all the email sinks and sources, so that a reconnect resumes the TLS " +
+                                "session of a previous connection instead of doing a full handshake. This is only " +
+                                "applicable if 'ssl.enable' or 'starttls.enable' is 'true', and " +
+                                "'mail.smtp.ssl.trust' is '*' or empty.",
+                        type = DataType.BOOL,
+                        optional = true,
+                        defaultValue = "true"),
+                @Parameter(
+                        name = "mime.8bit.enable",
+                        description = "If this is set to 'true' and the SMTP server advertises the '8BITMIME' " +
+                                "extension, the text parts of the emails are sent as raw 8-bit data instead of " +
+                                "'quoted-printable' or 'base64' encoded data, which reduces the size of non-ASCII " +
+                                "emails. If the server does not advertise the extension, the parts are encoded as " +
+                                "usual. Since this changes the transfer encoding of the emails, it is disabled by " +
+                                "default. This sets the 'mail.smtp.allow8bitmime' property unless it is defined in " +
+                                "the deployment 'yaml' file.",
+                        type = DataType.BOOL,
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(
+                        name = "sink.id",
+                        description = "An identifier of the email sink within the Siddhi application. If this is " +
+                                "given, the delivery outcome of each email is published asynchronously to the " +
+                                "'email-outcome' source with the same 'sink.id', and each email is sent with an " +
+                                "'X-Siddhi-Message-Id' header which identifies it in the outcome.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "None"),
+                @Parameter(
+                        name = "send.at",
+                        description = "The time in epoch milliseconds at which the email should be sent. The email " +
+                                "is held in a timer wheel until the time is reached. If the time has already " +
+                                "passed, the email is sent immediately.",
+                        type = DataType.LONG,
+                        optional = true,
+                        dynamic = true,
+                        defaultValue = "None"),
+                @Parameter(
+                        name = "delay",
+                        description = "The time in milliseconds by which sending the email should be deferred. " +
+                                "This is not considered if 'send.at' is given.",
+                        type = DataType.LONG,
+                        optional = true,
+                        dynamic = true,
+                        defaultValue = "None"),
+                @Parameter(
+                        name = "schedule.tick",
+                        description = "The precision in milliseconds with which the scheduled emails are released," +
+                                " i.e., the tick duration of the timer wheel.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "100"),
+                @Parameter(
+                        name = "schedule.persist",
+                        description = "If this is set to 'true', the scheduled emails which are not sent yet are " +
+                                "included in the state snapshots of the Siddhi application, so that they are " +
+                                "rescheduled when the state is restored.",
+                        type = DataType.BOOL,
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(
+                        name = "priority",
+                        description = "The priority of the email, which could be 'high', 'normal' or 'low'. The " +
+                                "emails waiting for a connection of the pool are sent in the order of their " +
+                                "priorities, as given by 'priority.scheduling', instead of the order in which " +
+                                "they are published. So are the emails waiting in the outbox, or for a virtual " +
+                                "thread of the 'virtual.thread' send executor, while the 'high' priority emails " +
+                                "are not held back by the merge window. The priority is also set as the " +
+                                "'X-Priority' header.",
+                        type = DataType.STRING,
+                        optional = true,
+                        dynamic = true,
+                        defaultValue = "normal"),
+                @Parameter(
+                        name = "priority.scheduling",
+                        description = "The policy used to pick the priority whose email gets the next free " +
+                                "connection. If this is 'strict', the higher priority emails always go first. If " +
+                                "this is 'weighted', the priorities take turns in proportion to " +
+                                "'priority.weights', so that the lower priority emails are not starved.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "strict"),
+                @Parameter(
+                        name = "priority.weights",
+                        description = "The comma-separated weights of the 'high', 'normal' and 'low' priorities, " +
+                                "used by the 'weighted' scheduling.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "4,2,1"),
+                @Parameter(
+                        name = "priority.reserved.connections",
+                        description = "The number of connections of the pool reserved for the 'high' priority " +
+                                "emails, which should be less than the 'connection.pool.size'.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "circuit.breaker.enable",
+                        description = "If this is set to 'true', each relay has a circuit breaker which opens when " +
+                                "the rate of the failed or slow sends to the relay reaches its threshold. While " +
+                                "the circuit is open, the sends to the relay fail fast, so that the emails are " +
+                                "routed to the other relays, or kept in the outbox, or handed over to the " +
+                                "'on.error' action of the sink, instead of waiting for the socket timeouts. After " +
+                                "'circuit.breaker.open.duration', a few trial sends probe whether the relay " +
+                                "recovered.",
+                        type = DataType.BOOL,
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(
+                        name = "circuit.breaker.window.size",
+                        description = "The number of the last sends to a relay whose outcomes are used to compute " +
+                                "the failure and slow send rates.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "20"),
+                @Parameter(
+                        name = "circuit.breaker.failure.rate.threshold",
+                        description = "The percentage of the failed sends at which the circuit opens. Only the " +
+                                "failures caused by the relay, such as connection errors, socket timeouts and " +
+                                "transient SMTP replies, are counted.",
+                        type = DataType.DOUBLE,
+                        optional = true,
+                        defaultValue = "50"),
+                @Parameter(
+                        name = "circuit.breaker.slow.call.rate.threshold",
+                        description = "The percentage of the slow sends at which the circuit opens.",
+                        type = DataType.DOUBLE,
+                        optional = true,
+                        defaultValue = "100"),
+                @Parameter(
+                        name = "circuit.breaker.slow.call.duration",
+                        description = "The time in milliseconds after which a send is considered slow.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "10000"),
+                @Parameter(
+                        name = "circuit.breaker.open.duration",
+                        description = "The time in milliseconds for which the circuit stays open before the " +
+                                "trial sends.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "30000"),
+                @Parameter(
+                        name = "circuit.breaker.trial.sends",
+                        description = "The number of trial sends let through after the open duration. The " +
+                                "circuit closes if all of them succeed, else it opens again.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "3"),
+                @Parameter(
+                        name = "connection.timeout",
+                        description = "The timeout in milliseconds to connect to the SMTP server. This sets the " +
+                                "'mail.smtp.connectiontimeout' property unless it is defined in the deployment " +
+                                "yaml.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "30000"),
+                @Parameter(
+                        name = "read.timeout",
+                        description = "The timeout in milliseconds to read a reply of the SMTP server. This sets " +
+                                "the 'mail.smtp.timeout' property unless it is defined in the deployment yaml.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "60000"),
+                @Parameter(
+                        name = "write.timeout",
+                        description = "The timeout in milliseconds to write an email to the SMTP server. This sets" +
+                                " the 'mail.smtp.writetimeout' property unless it is defined in the deployment " +
+                                "yaml.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "60000"),
+                @Parameter(
+                        name = "connection.pool.wait.timeout",
+                        description = "The time in milliseconds to wait for a connection of the pool when all the " +
+                                "connections are in use. If the time elapses, the send fails as the SMTP server " +
+                                "is unavailable. A negative value waits indefinitely.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "30000"),
+                @Parameter(
+                        name = "send.deadline",
+                        description = "The time in milliseconds within which an email should be sent, from the " +
+                                "time it is handed over to be sent, including the time spent in the outbox, the " +
+                                "waits for the rate limits and the connections, and the retries across relays. " +
+                                "An email whose deadline passes is not sent, and it fails with an error which is " +
+                                "handled as given by the 'on.error' action of the sink. If this is '0', there is " +
+                                "no deadline.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "connection.max.messages",
+                        description = "The number of emails after which a pooled connection is closed and " +
+                                "replaced, for the SMTP servers which drop a session after a number of messages. " +
+                                "The connection is closed and its replacement is connected in the background. If " +
+                                "this is '0', there is no limit.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "connection.max.lifetime",
+                        description = "The time in milliseconds after which a pooled connection is closed and " +
+                                "replaced, for the SMTP servers which drop a session after a period of time. Idle " +
+                                "connections are also replaced in the background. If this is '0', there is no " +
+                                "limit.",
+                        type = DataType.LONG,
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(
+                        name = "send.executor",
+                        description = "The threads on which the emails are sent. If this is 'caller', an email is " +
+                                "sent on the thread which publishes it, and the errors are handled as given by the " +
+                                "'on.error' action of the sink. If this is 'virtual.thread', each email is sent on " +
+                                "a virtual thread, so that many SMTP sessions to multiple relays are held open " +
+                                "without a platform thread per session. Then, the number of concurrent sends is " +
+                                "bounded by the 'connection.pool.size' of the relays, the publishing thread " +
+                                "waits only when that bound is reached. An email is retried with an exponential " +
+                                "backoff while the SMTP server is unavailable, until it is sent, its " +
+                                "'send.deadline' expires or the sink is disconnected, and the other errors are " +
+                                "logged and published to the 'email-outcome' source. Enable the outbox so that " +
+                                "the emails which are being retried are not lost when the sink is disconnected. " +
+                                "The outbox workers also run on virtual threads. " +
+                                "Virtual threads require Java 21 or later, and the 'caller' mode is used on the " +
+                                "earlier versions. The default is 'virtual.thread' if the 'smtp.client' is 'nio'.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "caller"),
+                @Parameter(
+                        name = "smtp.client",
+                        description = "The SMTP client through which the emails are sent. If this is 'blocking', " +
+                                "the emails are sent by the email client connectors of the connection pools, each " +
+                                "of which blocks a thread while it sends an email. If this is 'nio', the emails " +
+                                "are sent by a non-blocking SMTP client per relay, which multiplexes up to " +
+                                "'connection.pool.size' SMTP sessions per relay on the 'smtp.client.threads' " +
+                                "event loops, and writes the MAIL FROM and RCPT TO commands of an email at once " +
+                                "if the SMTP server supports PIPELINING. The 'nio' client supports AUTH PLAIN and " +
+                                "AUTH LOGIN, but does not support 'ssl.enable' or 'starttls.enable'. With the " +
+                                "'nio' client, the 'send.executor' defaults to 'virtual.thread', so that the " +
+                                "publishing threads do not wait for the event loops. A send which is waited for " +
+                                "fails as the SMTP server is unavailable if it is not accepted within the time " +
+                                "given by the connection, read, write and pool wait timeouts.",
+                        type = DataType.STRING,
+                        optional = true,
+                        defaultValue = "blocking"),
+                @Parameter(
+                        name = "smtp.client.threads",
+                        description = "The number of the event loop threads of the 'nio' SMTP client, on which the " +
+                                "SMTP sessions of all the relays of the sink are multiplexed.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "2")
         },
         examples = {
                 @Example(syntax = "@sink(type='email', @map(type ='json'), "
@@ -263,11 +764,15 @@ import java.util.Map;
                                  possibleParameters = "String"),
                 @SystemParameter(name = "mail.smtp.connectiontimeout",
                                  description = "The socket connection timeout value in milliseconds. ",
-                                 defaultValue = "infinite timeout",
+                                 defaultValue = "The value of 'connection.timeout'",
                                  possibleParameters = "Any Integer"),
                 @SystemParameter(name = "mail.smtp.timeout",
                                  description = "The socket I/O timeout value in milliseconds. ",
-                                 defaultValue = "infinite timeout",
+                                 defaultValue = "The value of 'read.timeout'",
+                                 possibleParameters = "Any Integer"),
+                @SystemParameter(name = "mail.smtp.writetimeout",
+                                 description = "The socket write timeout value in milliseconds. ",
+                                 defaultValue = "The value of 'write.timeout'",
                                  possibleParameters = "Any Integer"),
                 @SystemParameter(name = "mail.smtp.from",
                                  description = "The email address to use for the SMTP MAIL command. "
@@ -439,6 +944,12 @@ import java.util.Map;
 )
 public class EmailSink extends Sink {
     private static final Logger log = LogManager.getLogger(EmailSink.class);
+    private static final int SMTP_OK = 250;
+    private static final int SCHEDULE_WHEEL_SIZE = 512;
+    private static final long SEND_EXECUTOR_SHUTDOWN_TIMEOUT = 30000;
+    private static final long SMTP_CLIENT_SHUTDOWN_TIMEOUT = 10000;
+    private static final long INITIAL_RETRY_INTERVAL = 1000;
+    private static final long MAX_RETRY_INTERVAL = 60000;
     private Option optionSubject;
     private Option optionTo;
     private Option optionCc;
@@ -450,6 +961,42 @@ public class EmailSink extends Sink {
     private OptionHolder optionHolder;
     private List<String> attachments;
     private Option attachmentOption;
+    private EmailRelayRouter relayRouter;
+    private int relayFailureThreshold;
+    private long relayRetryInterval;
+    private int recipientChunkSize;
+    private EmailEnvelopeSender envelopeSender;
+    private final Map<Object, BitSet> undeliveredEnvelopes = Collections.synchronizedMap(new IdentityHashMap<>());
+    private String sinkId;
+    private Option optionSendAt;
+    private Option optionDelay;
+    private EmailTimerWheel<RenderedEmail> timerWheel;
+    private boolean schedulePersist;
+    private int scheduleSenders;
+    private volatile ExecutorService scheduleExecutor;
+    private final Object scheduleRetryLock = new Object();
+    private final Map<RenderedEmail, Long> releasingEmails = new ConcurrentHashMap<>();
+    private Option optionPriority;
+    private EmailPriorityGate.Policy priorityPolicy;
+    private int[] priorityWeights;
+    private int reservedConnections;
+    private long sendDeadline;
+    private boolean virtualThreadSends;
+    private EmailPriorityGate sendPermits;
+    private volatile ExecutorService sendExecutor;
+    private final Object sendRetryLock = new Object();
+    private int smtpClientThreads;
+    private EmailEventLoopGroup smtpEventLoopGroup;
+    private Session mimeSession;
+    private EmailOutbox outbox;
+    private String outboxDirectory;
+    private int outboxWorkers;
+    private EmailSuppressionCache suppressionCache;
+    private EmailMergeBuffer mergeBuffer;
+    private SiddhiAppContext siddhiAppContext;
+    private StreamDefinition streamDefinition;
+    private EmailTemplate htmlTemplate;
+    private EmailTemplate textTemplate;
 
     /**
      * The initialization method for {@link Sink}, which will be called before other methods and validate
@@ -467,6 +1014,8 @@ public class EmailSink extends Sink {
                                 ConfigReader configReader, SiddhiAppContext siddhiAppContext) {
         this.configReader = configReader;
         this.optionHolder = optionHolder;
+        this.siddhiAppContext = siddhiAppContext;
+        this.streamDefinition = streamDefinition;
         //Server system properties starts with 'mail.smtp'.
         configReader.getAllConfigs().forEach((k, v)-> {
             if (k.startsWith("mail.smtp") || k.startsWith("mail.store")) {
@@ -474,6 +1023,9 @@ public class EmailSink extends Sink {
             }
         });
         validateAndGetRequiredParameters();
+        if (schedulePersist) {
+            return () -> new ScheduleState();
+        }
         return null;
     }
 
@@ -486,9 +1038,78 @@ public class EmailSink extends Sink {
      */
     @Override
     public void connect() throws ConnectionUnavailableException {
+        if (timerWheel != null) {
+            if (scheduleExecutor == null) {
+                scheduleExecutor = Executors.newFixedThreadPool(scheduleSenders);
+            }
+            timerWheel.start();
+        }
+        if (virtualThreadSends && sendExecutor == null) {
+            sendExecutor = EmailExecutors.newVirtualThreadPerTaskExecutor();
+        }
+        if (smtpClientThreads > 0 && smtpEventLoopGroup == null) {
+            try {
+                smtpEventLoopGroup = new EmailEventLoopGroup("EmailSmtpClient-" + streamDefinition.getId(),
+                        smtpClientThreads);
+            } catch (IOException e) {
+                throw new RuntimeException("Error is encountered while opening the event loops of the smtp client. "
+                        + e.getMessage(), e);
+            }
+        }
+        if (outbox != null) {
+            try {
+                if (virtualThreadSends) {
+                    outbox.start(this::send, outboxWorkers, EmailExecutors.newVirtualThreadPerTaskExecutor());
+                } else {
+                    outbox.start(this::send, outboxWorkers);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error is encountered while opening the email outbox in the directory: "
+                        + outboxDirectory + ". " + e.getMessage(), e);
+            }
+            try {
+                connectRelays();
+            } catch (ConnectionUnavailableException e) {
+                //Emails are kept in the outbox and the sender workers retry to connect to the smtp server.
+                log.warn("Emails are kept in the outbox until the smtp server is available. " + e.getMessage());
+            }
+        } else {
+            connectRelays();
+        }
+    }
+
+    /**
+     * Connect to all the relays. The relays which are unavailable are connected when an email is routed to them.
+     *
+     * @throws ConnectionUnavailableException if none of the relays is available.
+     */
+    private void connectRelays() throws ConnectionUnavailableException {
+        ConnectionUnavailableException error = null;
+        boolean connected = false;
+        for (EmailRelay relay : relayRouter.getRelays()) {
+            if (smtpEventLoopGroup != null) {
+                //Sessions of the non-blocking smtp client are opened when the emails are sent.
+                relay.connect(smtpEventLoopGroup);
+                connected = true;
+                continue;
+            }
+            try {
+                connectRelay(relay);
+                connected = true;
+            } catch (ConnectionUnavailableException e) {
+                log.warn("Unable to connect to the smtp server: " + relay + ". " + e.getMessage());
+                error = e;
+            }
+        }
+        if (!connected && error != null) {
+            throw error;
+        }
+    }
+
+    private EmailConnectionPool connectRelay(EmailRelay relay) throws ConnectionUnavailableException {
         try {
             EmailConnectorFactory emailConnectorFactory = new EmailConnectorFactoryImpl();
-            EmailClientConnectionPoolManager.initializeConnectionPool(emailConnectorFactory, initProperties);
+            return relay.connect(emailConnectorFactory);
         } catch (EmailConnectorException e) {
             if (e.getCause() instanceof MailConnectException) {
                 if (e.getCause().getCause() instanceof ConnectException) {
@@ -516,108 +1137,741 @@ public class EmailSink extends Sink {
     @Override
     public void publish(Object payload, DynamicOptions dynamicOptions, State state)
             throws ConnectionUnavailableException {
-
-        Map<String, String> dynamicEmailProperties = new HashMap<>();
-        Map<String, String> combinedEmailProperties = new HashMap<>();
-
-        if (optionSubject != null) {
-            String subject = optionSubject.getValue(dynamicOptions);
-            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_SUBJECT, subject);
+        RenderedEmail email = render(payload, dynamicOptions);
+        //Siddhi retries an event with the same payload, so that only the envelopes which are not delivered by the
+        //previous publish of the payload are sent.
+        BitSet undelivered = undeliveredEnvelopes.remove(payload);
+        if (undelivered != null) {
+            email = email.withUndeliveredEnvelopes(undelivered);
         }
-        if (optionTo != null) {
-            String to = optionTo.getValue(dynamicOptions);
-            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_TO, to);
+        if (suppressionCache != null && suppressionCache.suppress(email)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Suppressed a duplicate email with properties: " + email.getHeaders().toString());
+            }
+            return;
         }
-        if (optionCc != null) {
-            String cc = optionCc.getValue(dynamicOptions);
-            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_CC, cc);
+        if (timerWheel != null) {
+            long dueTime = getDueTime(dynamicOptions);
+            if (dueTime > System.currentTimeMillis()) {
+                timerWheel.schedule(email, dueTime);
+                return;
+            }
         }
-        if (optionBcc != null) {
-            String bcc = optionBcc.getValue(dynamicOptions);
-            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_BCC, bcc);
+        try {
+            release(email);
+        } catch (EmailEnvelopeSender.UndeliveredEnvelopesException e) {
+            undeliveredEnvelopes.put(payload, e.getEnvelopes());
+            throw e;
         }
-        if (optionContentType != null) {
-            String contentType = optionContentType.getValue(dynamicOptions);
-            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_CONTENT_TYPE, contentType);
+    }
+
+    /**
+     * Called when an event is not published. Siddhi has either retried the event or given up on it by the time this
+     * returns, so that the envelopes of the event which are not delivered are forgotten.
+     *
+     * @param payload        payload of the event.
+     * @param dynamicOptions dynamic options of the event.
+     * @param e              the error of the publish.
+     */
+    @Override
+    public void onError(Object payload, DynamicOptions dynamicOptions, Exception e) {
+        try {
+            super.onError(payload, dynamicOptions, e);
+        } finally {
+            undeliveredEnvelopes.remove(payload);
         }
+    }
 
-        if ((attachmentOption != null) && (!attachmentOption.isStatic())) {
-           attachments  =
-                   Arrays.asList(attachmentOption.getValue(dynamicOptions).split(EmailConstants.COMMA_SEPERATOR));
+    /**
+     * Get the time at which an email should be sent, from the 'send.at' or 'delay' options.
+     *
+     * @param dynamicOptions dynamic options of the event.
+     * @return the time in epoch milliseconds, or zero if the email should be sent immediately.
+     */
+    private long getDueTime(DynamicOptions dynamicOptions) {
+        String sendAt = optionSendAt != null ? optionSendAt.getValue(dynamicOptions) : null;
+        String delay = optionDelay != null ? optionDelay.getValue(dynamicOptions) : null;
+        try {
+            if (sendAt != null && !sendAt.trim().isEmpty() && !sendAt.trim().equals("null")) {
+                return Long.parseLong(sendAt.trim());
+            } else if (delay != null && !delay.trim().isEmpty() && !delay.trim().equals("null")) {
+                return System.currentTimeMillis() + Long.parseLong(delay.trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Values of " + EmailConstants.SEND_AT + " and " + EmailConstants.DELAY
+                    + " should be in milliseconds. But found: " + sendAt + " and " + delay + ".", e);
         }
+        return 0;
+    }
 
-        EmailBaseMessage emailBaseMessage;
-        if (attachmentOption != null) {
-            emailBaseMessage = new EmailMultipartMessage(payload.toString(), attachments);
-        } else {
-            emailBaseMessage = new EmailTextMessage(payload.toString());
+    /**
+     * Hand over an email which is due to the merge buffer if it is enabled, else dispatch it. High priority emails
+     * are dispatched right away, without waiting for the merge window.
+     *
+     * @param email the email to be sent.
+     * @throws ConnectionUnavailableException if the smtp server is unavailable.
+     */
+    private void release(RenderedEmail email) throws ConnectionUnavailableException {
+        if (mergeBuffer != null && getPriorityLane(email) != EmailPriorityGate.Lane.HIGH) {
+            mergeBuffer.add(email);
+            return;
         }
-        combinedEmailProperties.putAll(commonEmailProperties);
-        combinedEmailProperties.putAll(dynamicEmailProperties);
-        emailBaseMessage.setHeaders(combinedEmailProperties);
-        GenericKeyedObjectPool objectPool = EmailClientConnectionPoolManager.getConnectionPool();
-        if (objectPool != null) {
-            EmailClientConnector connection = null;
-            try {
-                connection = (EmailClientConnector)
-                        objectPool.borrowObject(EmailConstants.EMAIL_CLIENT_CONNECTION_POOL_ID);
-                if (connection != null) {
-                    connection.send(emailBaseMessage);
+        dispatch(email);
+    }
+
+    /**
+     * Release a scheduled email when it is due. The email is sent by the schedule executor, so that the timer wheel
+     * is not held up by the smtp server.
+     *
+     * @param email the email to be sent.
+     */
+    private void releaseAsync(RenderedEmail email) {
+        ExecutorService executor = scheduleExecutor;
+        releasingEmails.put(email, System.currentTimeMillis());
+        try {
+            if (executor == null) {
+                throw new RejectedExecutionException("The email sink is disconnected from the smtp server.");
+            }
+            executor.execute(() -> releaseWithRetry(email, executor));
+        } catch (RejectedExecutionException e) {
+            //The email is released when the sink is connected again.
+            timerWheel.schedule(email, System.currentTimeMillis());
+            releasingEmails.remove(email);
+        }
+    }
+
+    /**
+     * Release a scheduled email, retrying it with an exponential backoff while the smtp server is unavailable. Since
+     * there is no publish call to propagate the other errors to, they are logged. The email remains in the state of
+     * the sink until it is released, and it is scheduled again if the sink is disconnected while retrying.
+     *
+     * @param email    the email to be sent.
+     * @param executor the schedule executor which runs this task.
+     */
+    private void releaseWithRetry(RenderedEmail email, ExecutorService executor) {
+        long retryInterval = INITIAL_RETRY_INTERVAL;
+        RenderedEmail retry = email;
+        try {
+            while (true) {
+                try {
+                    release(retry);
+                    return;
+                } catch (ConnectionUnavailableException e) {
+                    retry = EmailEnvelopeSender.getRetry(retry, e);
+                    log.warn("Unable to send the scheduled email with properties: " + email.getHeaders().toString()
+                            + ". Retrying in " + retryInterval + " ms. " + e.getMessage());
+                } catch (RuntimeException e) {
+                    log.error("Error is encountered while sending the scheduled email with properties: "
+                            + email.getHeaders().toString() + ". " + e.getMessage(), e);
+                    return;
                 }
-            } catch (Exception e) {
-                //calling super class logs the exception and retry
-                if (e.getCause() instanceof MailConnectException) {
-                    if (e.getCause().getCause() instanceof ConnectException) {
-                        throw new ConnectionUnavailableException("Error is encountered while connecting the smtp"
-                                + " server by the email ClientConnector.", e);
-                    } else {
-                        throw new RuntimeException("Error is encountered while sending the message by the email"
-                                + " ClientConnector with properties: " + combinedEmailProperties.toString(), e);
+                synchronized (scheduleRetryLock) {
+                    if (!executor.isShutdown()) {
+                        scheduleRetryLock.wait(retryInterval);
                     }
-                } else if (e.getCause() instanceof SMTPSendFailedException) {
-                    throw new ConnectionUnavailableException("Error encountered while connecting " +
-                            "to the mail server by the email client connector.", e);
-                } else {
-                    throw new RuntimeException("Error is encountered while sending the message by the email"
-                            + " ClientConnector with properties: " + combinedEmailProperties.toString(), e);
                 }
-            } finally {
-                if (connection != null) {
-                    try {
-                        objectPool.returnObject(EmailConstants.EMAIL_CLIENT_CONNECTION_POOL_ID, connection);
-                    } catch (Exception e) {
-                        log.error("Error in returning the email client connection object to the pool. " +
-                                e.getMessage(), e);
-                    }
+                if (executor.isShutdown()) {
+                    timerWheel.schedule(retry, System.currentTimeMillis());
+                    return;
                 }
+                retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL);
             }
-        } else {
-            log.error("Error in obtaining connection pool to publish emails to the server.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            timerWheel.schedule(retry, System.currentTimeMillis());
+        } finally {
+            releasingEmails.remove(email);
         }
     }
 
     /**
-     * Get the email parameters and validate them. If they are defined in correct way then they are put into the
-     * email property map else throw SiddhiAppCreation exception.
+     * Hand over an email to the outbox if it is enabled, else send it to the smtp server.
+     *
+     * @param email the email to be sent.
+     * @throws ConnectionUnavailableException if the smtp server is unavailable.
      */
-    private void validateAndGetRequiredParameters() {
-        String username = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_USERNAME,
-                configReader.readConfig(EmailConstants.MAIL_PUBLISHER_USERNAME, EmailConstants.EMPTY_STRING));
-        if (username.isEmpty()) {
-           throw new SiddhiAppCreationException(EmailConstants.MAIL_PUBLISHER_USERNAME + " is a mandatory parameter. "
-                   + "It should be defined in either stream definition or deployment 'yaml' file.");
+    private void dispatch(RenderedEmail email) throws ConnectionUnavailableException {
+        if (sendDeadline > 0) {
+            email = email.withDeadline(System.currentTimeMillis() + sendDeadline);
         }
-        initProperties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_USERNAME, username);
-
-        String address = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_ADDRESS,
-                configReader.readConfig(EmailConstants.MAIL_PUBLISHER_ADDRESS, EmailConstants.EMPTY_STRING));
-        if (address.isEmpty()) {
-            throw new SiddhiAppCreationException(EmailConstants.MAIL_PUBLISHER_ADDRESS + " is a mandatory parameter. "
-                    + "It should be defined in either stream definition or deployment 'yaml' file.");
+        if (sinkId != null) {
+            //Identifies the email in its delivery outcome. The envelopes of a split email share the identifier.
+            Map<String, String> headers = new HashMap<>(email.getHeaders());
+            headers.put(EmailConstants.TRANSPORT_MAIL_HEADER_X_SIDDHI_MESSAGE_ID, UUID.randomUUID().toString());
+            email = email.withHeaders(headers);
         }
-        commonEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_FROM, address);
+        if (outbox != null) {
+            try {
+                //Each envelope is a record of the outbox, so that a failed envelope is retried on its own.
+                for (RenderedEmail envelope : recipientChunkSize > 0
+                        ? EmailRecipientChunker.split(email, recipientChunkSize) : Collections.singletonList(email)) {
+                    outbox.append(envelope);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error is encountered while writing the email to the outbox with "
+                        + "properties: " + email.getHeaders().toString(), e);
+            }
+        } else if (sendExecutor != null) {
+            sendAsync(email);
+        } else {
+            send(email);
+        }
+    }
 
-        String password = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_PASSWORD,
+    /**
+     * Send an email on a virtual thread. The calling thread waits only if the number of concurrent sends reached
+     * the total size of the connection pools of the relays, and the waiting sends go by their priority lanes. Since
+     * the publish call has returned by the time the email is sent, the virtual thread retries the email while the
+     * smtp server is unavailable.
+     *
+     * @param email the email to be sent.
+     * @throws ConnectionUnavailableException if the sink is disconnected, or the thread is interrupted while
+     *                                        waiting.
+     */
+    private void sendAsync(RenderedEmail email) throws ConnectionUnavailableException {
+        ExecutorService executor = sendExecutor;
+        if (executor == null) {
+            throw new ConnectionUnavailableException("The email sink is disconnected from the smtp server.");
+        }
+        try {
+            sendPermits.acquire(getPriorityLane(email));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionUnavailableException("Interrupted while waiting for a concurrent send to the smtp "
+                    + "server.", e);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    sendWithRetry(email, executor);
+                } finally {
+                    sendPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sendPermits.release();
+            throw new ConnectionUnavailableException("The email sink is disconnected from the smtp server.", e);
+        }
+    }
+
+    /**
+     * Send an email, retrying it with an exponential backoff while the smtp server is unavailable, or until its
+     * deadline expires. The concurrent send permit is held while retrying, so that the publishing threads are
+     * slowed down while the smtp server is unavailable. Since there is no publish call to propagate the errors to,
+     * they are logged, as is the email if the sink is disconnected while retrying it.
+     *
+     * @param email    the email to be sent.
+     * @param executor the send executor which runs this task.
+     */
+    private void sendWithRetry(RenderedEmail email, ExecutorService executor) {
+        long retryInterval = INITIAL_RETRY_INTERVAL;
+        try {
+            while (true) {
+                try {
+                    send(email);
+                    return;
+                } catch (ConnectionUnavailableException e) {
+                    if (executor.isShutdown()) {
+                        throw e;
+                    }
+                    email = EmailEnvelopeSender.getRetry(email, e);
+                    log.warn("Unable to send the email with properties: " + email.getHeaders().toString()
+                            + ". Retrying in " + retryInterval + " ms. " + e.getMessage());
+                }
+                synchronized (sendRetryLock) {
+                    if (!executor.isShutdown()) {
+                        sendRetryLock.wait(retryInterval);
+                    }
+                }
+                if (executor.isShutdown()) {
+                    throw new ConnectionUnavailableException("The email sink is disconnected from the smtp server.");
+                }
+                retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while retrying the email with properties: " + email.getHeaders().toString()
+                    + ". The email is not sent.");
+        } catch (ConnectionUnavailableException | RuntimeException e) {
+            log.error("Error is encountered while sending the email with properties: "
+                    + email.getHeaders().toString() + ". " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Dispatch an email which is not triggered by a published event, such as a summary of suppressed emails.
+     * Since there is no publish call to propagate the errors to, they are logged.
+     *
+     * @param email the email to be sent.
+     */
+    private void dispatchAsync(RenderedEmail email) {
+        try {
+            dispatch(email);
+        } catch (ConnectionUnavailableException | RuntimeException e) {
+            log.error("Error is encountered while sending the email with properties: "
+                    + email.getHeaders().toString() + ". " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resolve the headers and the content of the email for an event.
+     *
+     * @param payload        payload of the event.
+     * @param dynamicOptions dynamic options of the event.
+     * @return the email to be sent.
+     */
+    private RenderedEmail render(Object payload, DynamicOptions dynamicOptions) {
+        Map<String, String> dynamicEmailProperties = new HashMap<>();
+        Map<String, String> combinedEmailProperties = new HashMap<>();
+
+        if (optionSubject != null) {
+            String subject = optionSubject.getValue(dynamicOptions);
+            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_SUBJECT, subject);
+        }
+        if (optionTo != null) {
+            String to = optionTo.getValue(dynamicOptions);
+            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_TO, to);
+        }
+        if (optionCc != null) {
+            String cc = optionCc.getValue(dynamicOptions);
+            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_CC, cc);
+        }
+        if (optionBcc != null) {
+            String bcc = optionBcc.getValue(dynamicOptions);
+            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_BCC, bcc);
+        }
+        if (optionContentType != null) {
+            String contentType = optionContentType.getValue(dynamicOptions);
+            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_CONTENT_TYPE, contentType);
+        }
+        if (optionPriority != null) {
+            dynamicEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_X_PRIORITY,
+                    getPriorityHeader(optionPriority.getValue(dynamicOptions)));
+        }
+
+        List<String> emailAttachments = attachments;
+        if ((attachmentOption != null) && (!attachmentOption.isStatic())) {
+            emailAttachments =
+                    Arrays.asList(attachmentOption.getValue(dynamicOptions).split(EmailConstants.COMMA_SEPERATOR));
+        }
+        combinedEmailProperties.putAll(commonEmailProperties);
+        combinedEmailProperties.putAll(dynamicEmailProperties);
+        String content;
+        byte[] rawContent = null;
+        String contentType = combinedEmailProperties.get(EmailConstants.TRANSPORT_MAIL_HEADER_CONTENT_TYPE);
+        boolean htmlContent = contentType != null && contentType.toLowerCase(Locale.ENGLISH).contains("html");
+        EmailTemplate template = getTemplate(htmlContent);
+        if (template != null) {
+            content = template.render(dynamicOptions.getEvent().getData());
+            if (template.isHtml() != htmlContent) {
+                combinedEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_CONTENT_TYPE,
+                        template.isHtml() ? EmailConstants.TEXT_HTML : EmailConstants.TEXT_PLAIN);
+            }
+        } else if (mimeSession != null && (payload instanceof byte[] || payload instanceof ByteBuffer)) {
+            //The non-blocking smtp client sends the bytes as they are, instead of encoding the decoded content again.
+            rawContent = getBytes(payload);
+            content = new String(rawContent, getCharset(contentType));
+        } else {
+            content = getContent(payload, contentType);
+        }
+        return new RenderedEmail(combinedEmailProperties, content, rawContent,
+                attachmentOption != null ? emailAttachments : null, 0);
+    }
+
+    /**
+     * Get the 'X-Priority' header value of a priority.
+     *
+     * @param priority the priority, i.e., 'high', 'normal' or 'low'.
+     * @return '1', '3' or '5'.
+     */
+    private static String getPriorityHeader(String priority) {
+        switch (priority.trim().toLowerCase(Locale.ENGLISH)) {
+            case "high":
+                return "1";
+            case "normal":
+                return "3";
+            case "low":
+                return "5";
+            default:
+                throw new RuntimeException(EmailConstants.PRIORITY + " could be 'high', 'normal' or 'low'. "
+                        + "But found: " + priority + ".");
+        }
+    }
+
+    /**
+     * Get the priority lane of an email from its 'X-Priority' header.
+     *
+     * @param email the email.
+     * @return the lane.
+     */
+    private static EmailPriorityGate.Lane getPriorityLane(RenderedEmail email) {
+        return EmailPriorityGate.Lane.of(email.getHeader(EmailConstants.TRANSPORT_MAIL_HEADER_X_PRIORITY));
+    }
+
+    /**
+     * Get the content of an email from the mapped payload. Binary payloads are decoded with the charset of the
+     * content type, or UTF-8 if the content type has no charset.
+     *
+     * @param payload     the mapped payload.
+     * @param contentType content type of the email, or null if it is not given.
+     * @return the content.
+     */
+    static String getContent(Object payload, String contentType) {
+        if (payload instanceof byte[]) {
+            return new String((byte[]) payload, getCharset(contentType));
+        } else if (payload instanceof ByteBuffer) {
+            //Decode a view of the buffer, so that its position is not moved and its content is not copied.
+            return getCharset(contentType).decode(((ByteBuffer) payload).duplicate()).toString();
+        }
+        return payload.toString();
+    }
+
+    /**
+     * Get the bytes of a binary payload, without moving the position of a buffer.
+     *
+     * @param payload the mapped payload, i.e., a byte array or a byte buffer.
+     * @return the bytes.
+     */
+    static byte[] getBytes(Object payload) {
+        if (payload instanceof byte[]) {
+            return (byte[]) payload;
+        }
+        ByteBuffer buffer = ((ByteBuffer) payload).duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Charset getCharset(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] nameAndValue = parameter.trim().split("=", 2);
+                if (nameAndValue.length == 2 && nameAndValue[0].trim().equalsIgnoreCase("charset")) {
+                    try {
+                        return Charset.forName(nameAndValue[1].trim().replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Unsupported charset in the content type: " + contentType + ". Using UTF-8.");
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Pick the body template of an email.
+     *
+     * @param htmlContent whether the content type of the email is HTML.
+     * @return the HTML template for HTML emails and the text template for the others, if both are given, else the
+     * only given template, or null if the body is the mapped payload.
+     */
+    private EmailTemplate getTemplate(boolean htmlContent) {
+        if (htmlTemplate == null || textTemplate == null) {
+            return htmlTemplate != null ? htmlTemplate : textTemplate;
+        }
+        return htmlContent ? htmlTemplate : textTemplate;
+    }
+
+    /**
+     * Send an email, splitting its recipients into envelopes if they exceed the recipient chunk size. If some of
+     * the envelopes are not delivered, only those are sent when the email is retried.
+     *
+     * @param email the email to be sent.
+     * @throws ConnectionUnavailableException if the smtp server is unavailable.
+     */
+    private void send(RenderedEmail email) throws ConnectionUnavailableException {
+        if (envelopeSender != null) {
+            envelopeSender.send(email, sendExecutor != null ? sendExecutor : siddhiAppContext.getExecutorService());
+            return;
+        }
+        sendThroughRelays(email);
+    }
+
+    /**
+     * Send an email through the relays picked by the relay router. If a relay is unavailable, or its circuit is
+     * open, the email is sent through the next relay.
+     *
+     * @param email the email to be sent.
+     * @throws ConnectionUnavailableException if none of the relays is available.
+     */
+    private void sendThroughRelays(RenderedEmail email) throws ConnectionUnavailableException {
+        long startTime = System.nanoTime();
+        int attempts = 0;
+        EmailRelay lastRelay = null;
+        ConnectionUnavailableException error = null;
+        for (EmailRelay relay : relayRouter.route(getRecipientDomain(email.getHeaders()))) {
+            if (email.isExpired()) {
+                break;
+            }
+            lastRelay = relay;
+            EmailCircuitBreaker circuitBreaker = relay.getCircuitBreaker();
+            if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+                error = new ConnectionUnavailableException("Circuit of the smtp server: " + relay + " is open.");
+                continue;
+            }
+            attempts++;
+            relay.getOutstandingSends().incrementAndGet();
+            long sendStartTime = System.nanoTime();
+            try {
+                String messageId = send(email, relay);
+                if (circuitBreaker != null) {
+                    circuitBreaker.onResult(System.nanoTime() - sendStartTime, null);
+                }
+                relay.onSendSuccess();
+                publishOutcome(email, messageId, relay, SMTP_OK, startTime, attempts);
+                return;
+            } catch (ConnectionUnavailableException e) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onResult(System.nanoTime() - sendStartTime, e);
+                }
+                relay.onSendFailure(relayFailureThreshold, relayRetryInterval);
+                if (Thread.currentThread().isInterrupted()) {
+                    publishOutcome(email, relay, EmailConcurrencyLimiter.getReturnCode(e), startTime, attempts);
+                    throw e;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to send the email through the smtp server: " + relay + ". " + e.getMessage());
+                }
+                error = e;
+            } catch (RuntimeException e) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onResult(System.nanoTime() - sendStartTime, e);
+                }
+                publishOutcome(email, relay, EmailConcurrencyLimiter.getReturnCode(e), startTime, attempts);
+                throw e;
+            } finally {
+                relay.getOutstandingSends().decrementAndGet();
+            }
+        }
+        if (email.isExpired()) {
+            if (lastRelay != null) {
+                publishOutcome(email, lastRelay, EmailConcurrencyLimiter.getReturnCode(error), startTime, attempts);
+            }
+            throw new RuntimeException("Deadline of the email with properties: " + email.getHeaders().toString()
+                    + " expired after " + attempts + " attempts.", error);
+        }
+        if (error != null) {
+            publishOutcome(email, lastRelay, EmailConcurrencyLimiter.getReturnCode(error), startTime, attempts);
+            throw error;
+        }
+    }
+
+    private void publishOutcome(RenderedEmail email, EmailRelay relay, int replyCode, long startTime, int attempts) {
+        publishOutcome(email, null, relay, replyCode, startTime, attempts);
+    }
+
+    /**
+     * Publish the delivery outcome of an email to the 'email-outcome' source of the sink asynchronously, if the
+     * sink has a 'sink.id'.
+     *
+     * @param messageId the 'Message-ID' header of the sent email, or null to identify the email by its
+     *                  'X-Siddhi-Message-Id' header.
+     */
+    private void publishOutcome(RenderedEmail email, String messageId, EmailRelay relay, int replyCode,
+                                long startTime, int attempts) {
+        if (sinkId == null) {
+            return;
+        }
+        List<String> recipients = new ArrayList<>();
+        for (String header : new String[]{EmailConstants.TRANSPORT_MAIL_HEADER_TO,
+                EmailConstants.TRANSPORT_MAIL_HEADER_CC, EmailConstants.TRANSPORT_MAIL_HEADER_BCC}) {
+            String addresses = email.getHeader(header);
+            if (addresses != null && !addresses.trim().isEmpty()) {
+                recipients.add(addresses.trim());
+            }
+        }
+        Object[] outcome = new Object[]{messageId != null ? messageId
+                : email.getHeader(EmailConstants.TRANSPORT_MAIL_HEADER_X_SIDDHI_MESSAGE_ID),
+                String.join(EmailConstants.COMMA_SEPERATOR + " ", recipients), relay.toString(), replyCode,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), attempts};
+        String siddhiAppName = siddhiAppContext.getName();
+        siddhiAppContext.getExecutorService().execute(() -> EmailOutcomeSource.publish(siddhiAppName, sinkId,
+                outcome));
+    }
+
+    /**
+     * Send an email to the smtp server of a relay through a connection of the pool.
+     *
+     * @param email the email to be sent.
+     * @param relay the relay through which the email is sent.
+     * @return the 'Message-ID' header of the email if it is sent by the non-blocking smtp client, else null.
+     * @throws ConnectionUnavailableException if the smtp server is unavailable.
+     */
+    private String send(RenderedEmail email, EmailRelay relay) throws ConnectionUnavailableException {
+        EmailRateLimiter rateLimiter = relay.getRateLimiter();
+        if (rateLimiter != null) {
+            try {
+                rateLimiter.acquire(getRecipientCount(email.getHeaders()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectionUnavailableException("Interrupted while waiting for the rate limit of the smtp"
+                        + " server: " + relay.getRelayKey() + ".", e);
+            }
+        }
+        EmailSmtpClient smtpClient = null;
+        EmailConnectionPool connectionPool = null;
+        if (smtpEventLoopGroup != null) {
+            smtpClient = relay.connect(smtpEventLoopGroup);
+        } else {
+            connectionPool = relay.getConnectionPool();
+            if (connectionPool == null) {
+                connectionPool = connectRelay(relay);
+            }
+        }
+        if (email.isExpired()) {
+            throw new RuntimeException("Deadline of the email with properties: " + email.getHeaders().toString()
+                    + " expired while waiting for the rate limit of the smtp server: " + relay.getRelayKey() + ".");
+        }
+        EmailPriorityGate priorityGate = relay.getPriorityGate();
+        if (priorityGate != null) {
+            try {
+                priorityGate.acquire(getPriorityLane(email));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectionUnavailableException("Interrupted while waiting for a connection to the smtp "
+                        + "server: " + relay.getRelayKey() + ".", e);
+            }
+        }
+        EmailConcurrencyLimiter concurrencyLimiter = relay.getConcurrencyLimiter();
+        if (concurrencyLimiter != null) {
+            try {
+                concurrencyLimiter.acquire();
+            } catch (InterruptedException e) {
+                if (priorityGate != null) {
+                    priorityGate.release();
+                }
+                Thread.currentThread().interrupt();
+                throw new ConnectionUnavailableException("Interrupted while waiting for a concurrent send to "
+                        + "the smtp server: " + relay.getRelayKey() + ".", e);
+            }
+        }
+        EmailConnectionPool.PooledConnection connection = null;
+        String messageId = null;
+        Exception sendError = null;
+        long sendStartTime = System.nanoTime();
+        try {
+            if (smtpClient != null) {
+                MimeMessage message = email.toMimeMessage(mimeSession);
+                messageId = message.getMessageID();
+                CompletableFuture<Void> future = smtpClient.send(message);
+                try {
+                    //The client times out the sessions and the queued emails. This bounds the wait in case it does not.
+                    future.get(smtpClient.getSendTimeout(getRecipientCount(email.getHeaders())),
+                            TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    //An email which is still queued is not sent once its future is cancelled.
+                    future.cancel(false);
+                    throw e;
+                }
+            } else {
+                connection = connectionPool.borrowObject();
+                connection.getConnector().send(email.toEmailBaseMessage());
+            }
+        } catch (Exception e) {
+            sendError = e;
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new ConnectionUnavailableException("Interrupted while waiting for a connection to the smtp "
+                        + "server: " + relay.getRelayKey() + ".", e);
+            } else if (e instanceof NoSuchElementException) {
+                throw new ConnectionUnavailableException("Timed out waiting for a connection to the smtp server: "
+                        + relay.getRelayKey() + ".", e);
+            } else if (e instanceof TimeoutException) {
+                throw new ConnectionUnavailableException("Timed out waiting for the smtp server: "
+                        + relay.getRelayKey() + " to accept the email.", e);
+            } else if (e instanceof ExecutionException && e.getCause() instanceof IOException) {
+                throw new ConnectionUnavailableException("Error is encountered while sending the email through the "
+                        + "smtp server: " + relay.getRelayKey() + ". " + e.getCause().getMessage(), e.getCause());
+            }
+            //calling super class logs the exception and retry
+            if (e.getCause() instanceof MailConnectException) {
+                if (e.getCause().getCause() instanceof ConnectException) {
+                    throw new ConnectionUnavailableException("Error is encountered while connecting the smtp"
+                            + " server by the email ClientConnector.", e);
+                } else {
+                    throw new RuntimeException("Error is encountered while sending the message by the email"
+                            + " ClientConnector with properties: " + email.getHeaders().toString(), e);
+                }
+            } else if (e.getCause() instanceof SMTPSendFailedException) {
+                throw new ConnectionUnavailableException("Error encountered while connecting " +
+                        "to the mail server by the email client connector.", e);
+            } else {
+                throw new RuntimeException("Error is encountered while sending the message by the email"
+                        + " ClientConnector with properties: " + email.getHeaders().toString(), e);
+            }
+        } finally {
+            if (connection != null) {
+                try {
+                    connectionPool.returnObject(connection);
+                } catch (RuntimeException e) {
+                    log.error("Error in returning the email client connection object to the pool. " +
+                            e.getMessage(), e);
+                }
+            }
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.release(System.nanoTime() - sendStartTime, sendError);
+            }
+            if (priorityGate != null) {
+                priorityGate.release();
+            }
+        }
+        return messageId;
+    }
+
+    /**
+     * Put the properties of the transport security and the port of the smtp server. If the port is not given, it
+     * is '465' for SSL, '587' for STARTTLS and '25' for plain connections.
+     *
+     * @param properties     the properties of the email connector.
+     * @param sslEnable      whether the connections use SSL.
+     * @param starttlsEnable whether the connections are upgraded to TLS with the 'STARTTLS' command. The upgrade
+     *                       is required, so that the emails are not sent in plain text if the server does not
+     *                       support it.
+     * @param port           the port of the smtp server, or empty if it is not given.
+     * @return the port of the smtp server.
+     */
+    static String putTransportSecurityProperties(Map<String, String> properties, boolean sslEnable,
+                                                 boolean starttlsEnable, String port) {
+        properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_SSL_ENABLE, String.valueOf(sslEnable));
+        if (starttlsEnable) {
+            properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_STARTTLS_ENABLE, "true");
+            properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_STARTTLS_REQUIRED, "true");
+        }
+        if (port.isEmpty()) {
+            if (sslEnable) {
+                port = EmailConstants.MAIL_PUBLISHER_DEFAULT_PORT;
+            } else if (starttlsEnable) {
+                port = EmailConstants.MAIL_PUBLISHER_DEFAULT_STARTTLS_PORT;
+            } else {
+                port = EmailConstants.MAIL_PUBLISHER_DEFAULT_PLAIN_PORT;
+            }
+        }
+        properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_PORT, port);
+        return port;
+    }
+
+    /**
+     * Get the email parameters and validate them. If they are defined in correct way then they are put into the
+     * email property map else throw SiddhiAppCreation exception.
+     */
+    private void validateAndGetRequiredParameters() {
+        String username = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_USERNAME,
+                configReader.readConfig(EmailConstants.MAIL_PUBLISHER_USERNAME, EmailConstants.EMPTY_STRING));
+        if (username.isEmpty()) {
+           throw new SiddhiAppCreationException(EmailConstants.MAIL_PUBLISHER_USERNAME + " is a mandatory parameter. "
+                   + "It should be defined in either stream definition or deployment 'yaml' file.");
+        }
+        initProperties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_USERNAME, username);
+
+        String address = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_ADDRESS,
+                configReader.readConfig(EmailConstants.MAIL_PUBLISHER_ADDRESS, EmailConstants.EMPTY_STRING));
+        if (address.isEmpty()) {
+            throw new SiddhiAppCreationException(EmailConstants.MAIL_PUBLISHER_ADDRESS + " is a mandatory parameter. "
+                    + "It should be defined in either stream definition or deployment 'yaml' file.");
+        }
+        commonEmailProperties.put(EmailConstants.TRANSPORT_MAIL_HEADER_FROM, address);
+
+        String password = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_PASSWORD,
                 configReader.readConfig(EmailConstants.MAIL_PUBLISHER_PASSWORD, ""));
         if (password.isEmpty()) {
             throw new SiddhiAppCreationException(EmailConstants.MAIL_PUBLISHER_PASSWORD + " is a mandatory parameter. "
@@ -629,15 +1883,21 @@ public class EmailSink extends Sink {
                 .readConfig(EmailConstants.MAIL_PUBLISHER_HOST_NAME, EmailConstants.MAIL_PUBLISHER_DEFAULT_HOST));
         initProperties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_HOST_NAME, host);
 
+        boolean starttlsEnable = getBooleanValue(EmailConstants.MAIL_PUBLISHER_STARTTLS_ENABLE,
+                EmailConstants.MAIL_PUBLISHER_DEFAULT_STARTTLS_ENABLE);
         String sslEnable = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_SSL_ENABLE,
                 configReader.readConfig(EmailConstants.MAIL_PUBLISHER_SSL_ENABLE,
-                        EmailConstants.MAIL_PUBLISHER_DEFAULT_SSL_ENABLE));
+                        starttlsEnable ? "false" : EmailConstants.MAIL_PUBLISHER_DEFAULT_SSL_ENABLE));
         //validate string value of sslEnable is either true or false
         if (!(sslEnable.equals("true") || sslEnable.equals("false"))) {
             throw new SiddhiAppCreationException("Value of the " + EmailConstants.MAIL_PUBLISHER_SSL_ENABLE +
                     "should be either 'true' or 'false'.");
         }
-        initProperties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_SSL_ENABLE, sslEnable);
+        if (starttlsEnable && sslEnable.equals("true")) {
+            throw new SiddhiAppCreationException(EmailConstants.MAIL_PUBLISHER_SSL_ENABLE + " should be 'false' if "
+                    + EmailConstants.MAIL_PUBLISHER_STARTTLS_ENABLE + " is 'true', since the connection is upgraded "
+                    + "to TLS after it is established.");
+        }
 
         String auth = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_AUTH,
                 configReader.readConfig(EmailConstants.MAIL_PUBLISHER_AUTH,
@@ -651,22 +1911,44 @@ public class EmailSink extends Sink {
 
         String port = optionHolder.validateAndGetStaticValue(EmailConstants.MAIL_PUBLISHER_PORT,
                 configReader.readConfig(EmailConstants.MAIL_PUBLISHER_PORT, EmailConstants.EMPTY_STRING));
-        //validate string value of auth enable is either true or false
-        if (port.isEmpty()) {
-            if (sslEnable.equalsIgnoreCase("true")) {
-                port = EmailConstants.MAIL_PUBLISHER_DEFAULT_PORT;
-            } else {
-                throw new SiddhiAppCreationException("The default port: " + EmailConstants.MAIL_PUBLISHER_DEFAULT_PORT
-                        + " can only be used if ssl enable.");
-            }
-        }
-        initProperties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_PORT, port);
+        port = putTransportSecurityProperties(initProperties, sslEnable.equals("true"), starttlsEnable, port);
 
         //Default we trust all the hosts (smtp servers). If user need to trust set of hosts then, it is required to
         //set 'ssl.trust' system property in deployment yaml under email sink configuration.
         String trust = configReader.readConfig(EmailConstants.MAIL_PUBLISHER_TRUST,
                 EmailConstants.EMAIL_RECEIVER_DEFAULT_TRUST);
         initProperties.put(EmailConstants.MAIL_PUBLISHER_TRUST, trust);
+        initProperties.putIfAbsent(EmailConstants.TRANSPORT_MAIL_PUBLISHER_CONNECTION_TIMEOUT, String.valueOf(
+                getLongValue(EmailConstants.CONNECTION_TIMEOUT, EmailConstants.DEFAULT_CONNECTION_TIMEOUT)));
+        initProperties.putIfAbsent(EmailConstants.TRANSPORT_MAIL_PUBLISHER_TIMEOUT, String.valueOf(
+                getLongValue(EmailConstants.READ_TIMEOUT, EmailConstants.DEFAULT_READ_TIMEOUT)));
+        initProperties.putIfAbsent(EmailConstants.TRANSPORT_MAIL_PUBLISHER_WRITE_TIMEOUT, String.valueOf(
+                getLongValue(EmailConstants.WRITE_TIMEOUT, EmailConstants.DEFAULT_WRITE_TIMEOUT)));
+        initProperties.put(EmailConstants.POOL_WAIT_TIMEOUT, String.valueOf(
+                getLongValue(EmailConstants.POOL_WAIT_TIMEOUT, EmailConstants.DEFAULT_POOL_WAIT_TIMEOUT)));
+        long maxMessages = getLongValue(EmailConstants.CONNECTION_MAX_MESSAGES,
+                EmailConstants.DEFAULT_CONNECTION_MAX_MESSAGES);
+        long maxLifetime = getLongValue(EmailConstants.CONNECTION_MAX_LIFETIME,
+                EmailConstants.DEFAULT_CONNECTION_MAX_LIFETIME);
+        if (maxMessages < 0 || maxLifetime < 0) {
+            throw new SiddhiAppCreationException(EmailConstants.CONNECTION_MAX_MESSAGES + " and "
+                    + EmailConstants.CONNECTION_MAX_LIFETIME + " should be positive values or 0. But found: "
+                    + maxMessages + " and " + maxLifetime + ".");
+        }
+        initProperties.put(EmailConstants.CONNECTION_MAX_MESSAGES, String.valueOf(maxMessages));
+        initProperties.put(EmailConstants.CONNECTION_MAX_LIFETIME, String.valueOf(maxLifetime));
+        sendDeadline = getLongValue(EmailConstants.SEND_DEADLINE, EmailConstants.DEFAULT_SEND_DEADLINE);
+        if (sendDeadline < 0) {
+            throw new SiddhiAppCreationException(EmailConstants.SEND_DEADLINE + " should be a positive value or 0."
+                    + " But found: " + sendDeadline + ".");
+        }
+        if (getBooleanValue(EmailConstants.MIME_8BIT_ENABLE, EmailConstants.DEFAULT_MIME_8BIT_ENABLE)) {
+            initProperties.putIfAbsent(EmailConstants.TRANSPORT_MAIL_PUBLISHER_ALLOW_8BITMIME, "true");
+        }
+        if ((sslEnable.equals("true") || starttlsEnable) && getBooleanValue(EmailConstants.SSL_SESSION_REUSE,
+                EmailConstants.DEFAULT_SSL_SESSION_REUSE)) {
+            EmailSSLSocketFactory.configure(initProperties, "smtp", trust);
+        }
 
         //to is a dynamic variable, if that option is not exist,
         // check whether default value for the 'to' is given in the configurations.
@@ -743,12 +2025,433 @@ public class EmailSink extends Sink {
         }
         String connectionPoolSize = optionHolder.validateAndGetStaticValue(EmailConstants.PUBLISHER_POOL_SIZE,
                 configReader.readConfig(EmailConstants.PUBLISHER_POOL_SIZE, "1"));
+        int poolSize;
         try {
+            poolSize = Integer.parseInt(connectionPoolSize);
             this.initProperties.put(EmailConstants.PUBLISHER_POOL_SIZE, connectionPoolSize);
         } catch (NumberFormatException e) {
             throw new SiddhiAppCreationException(EmailConstants.PUBLISHER_POOL_SIZE
                     + " parameter only excepts an Integer value.", e);
         }
+
+        if (getBooleanValue(EmailConstants.OUTBOX_ENABLE, EmailConstants.DEFAULT_OUTBOX_ENABLE)) {
+            outboxDirectory = optionHolder.validateAndGetStaticValue(EmailConstants.OUTBOX_DIRECTORY,
+                    configReader.readConfig(EmailConstants.OUTBOX_DIRECTORY, EmailConstants.EMPTY_STRING));
+            if (outboxDirectory.isEmpty()) {
+                throw new SiddhiAppCreationException(EmailConstants.OUTBOX_DIRECTORY + " is a mandatory parameter "
+                        + "if " + EmailConstants.OUTBOX_ENABLE + " is 'true'. It should be defined in either stream "
+                        + "definition or deployment 'yaml' file.");
+            }
+            long segmentSize = getLongValue(EmailConstants.OUTBOX_SEGMENT_SIZE,
+                    EmailConstants.DEFAULT_OUTBOX_SEGMENT_SIZE);
+            long fsyncInterval = getLongValue(EmailConstants.OUTBOX_FSYNC_INTERVAL,
+                    EmailConstants.DEFAULT_OUTBOX_FSYNC_INTERVAL);
+            outboxWorkers = (int) getLongValue(EmailConstants.OUTBOX_WORKERS, EmailConstants.DEFAULT_OUTBOX_WORKERS);
+            if (segmentSize <= 0 || fsyncInterval <= 0 || outboxWorkers <= 0) {
+                throw new SiddhiAppCreationException(EmailConstants.OUTBOX_SEGMENT_SIZE + ", "
+                        + EmailConstants.OUTBOX_FSYNC_INTERVAL + " and " + EmailConstants.OUTBOX_WORKERS
+                        + " should be positive values.");
+            }
+            String fsync = optionHolder.validateAndGetStaticValue(EmailConstants.OUTBOX_FSYNC,
+                    configReader.readConfig(EmailConstants.OUTBOX_FSYNC, EmailConstants.DEFAULT_OUTBOX_FSYNC));
+            EmailOutbox.FsyncPolicy fsyncPolicy;
+            try {
+                fsyncPolicy = EmailOutbox.FsyncPolicy.valueOf(fsync.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new SiddhiAppCreationException(EmailConstants.OUTBOX_FSYNC + " could be 'always', "
+                        + "'interval' or 'never'. But found: " + fsync + ".", e);
+            }
+            outbox = new EmailOutbox(new File(outboxDirectory), segmentSize, fsyncPolicy, fsyncInterval);
+        }
+
+        long suppressionWindow = getLongValue(EmailConstants.SUPPRESSION_WINDOW,
+                EmailConstants.DEFAULT_SUPPRESSION_WINDOW);
+        if (suppressionWindow < 0) {
+            throw new SiddhiAppCreationException(EmailConstants.SUPPRESSION_WINDOW + " should be a positive value. "
+                    + "But found: " + suppressionWindow + ".");
+        } else if (suppressionWindow > 0) {
+            int suppressionCacheSize = (int) getLongValue(EmailConstants.SUPPRESSION_CACHE_SIZE,
+                    EmailConstants.DEFAULT_SUPPRESSION_CACHE_SIZE);
+            if (suppressionCacheSize <= 0) {
+                throw new SiddhiAppCreationException(EmailConstants.SUPPRESSION_CACHE_SIZE + " should be a positive "
+                        + "value. But found: " + suppressionCacheSize + ".");
+            }
+            if (getBooleanValue(EmailConstants.SUPPRESSION_SUMMARY_ENABLE,
+                    EmailConstants.DEFAULT_SUPPRESSION_SUMMARY_ENABLE)) {
+                suppressionCache = new EmailSuppressionCache(suppressionWindow, suppressionCacheSize,
+                        siddhiAppContext.getScheduledExecutorService(), this::dispatchAsync);
+            } else {
+                suppressionCache = new EmailSuppressionCache(suppressionWindow, suppressionCacheSize, null, null);
+            }
+        }
+
+        String htmlTemplatePath = optionHolder.validateAndGetStaticValue(EmailConstants.BODY_TEMPLATE_HTML,
+                configReader.readConfig(EmailConstants.BODY_TEMPLATE_HTML, EmailConstants.EMPTY_STRING));
+        if (!htmlTemplatePath.isEmpty()) {
+            htmlTemplate = EmailTemplate.load(htmlTemplatePath, streamDefinition, true);
+        }
+        String textTemplatePath = optionHolder.validateAndGetStaticValue(EmailConstants.BODY_TEMPLATE_TEXT,
+                configReader.readConfig(EmailConstants.BODY_TEMPLATE_TEXT, EmailConstants.EMPTY_STRING));
+        if (!textTemplatePath.isEmpty()) {
+            textTemplate = EmailTemplate.load(textTemplatePath, streamDefinition, false);
+        }
+
+        long mergeWindow = getLongValue(EmailConstants.MERGE_WINDOW, EmailConstants.DEFAULT_MERGE_WINDOW);
+        int mergeMaxRecipients = (int) getLongValue(EmailConstants.MERGE_MAX_RECIPIENTS,
+                EmailConstants.DEFAULT_MERGE_MAX_RECIPIENTS);
+        if (mergeWindow < 0 || mergeMaxRecipients <= 0) {
+            throw new SiddhiAppCreationException(EmailConstants.MERGE_WINDOW + " and "
+                    + EmailConstants.MERGE_MAX_RECIPIENTS + " should be positive values.");
+        } else if (mergeWindow > 0) {
+            mergeBuffer = new EmailMergeBuffer(mergeWindow, mergeMaxRecipients,
+                    siddhiAppContext.getScheduledExecutorService(), this::dispatchAsync);
+        }
+
+        recipientChunkSize = (int) getLongValue(EmailConstants.RECIPIENT_CHUNK_SIZE,
+                EmailConstants.DEFAULT_RECIPIENT_CHUNK_SIZE);
+        if (recipientChunkSize < 0) {
+            throw new SiddhiAppCreationException(EmailConstants.RECIPIENT_CHUNK_SIZE + " should be a positive value. "
+                    + "But found: " + recipientChunkSize + ".");
+        } else if (recipientChunkSize > 0) {
+            envelopeSender = new EmailEnvelopeSender(recipientChunkSize, this::sendThroughRelays);
+        }
+
+        if (optionHolder.isOptionExists(EmailConstants.SEND_AT)) {
+            optionSendAt = optionHolder.validateAndGetOption(EmailConstants.SEND_AT);
+        }
+        if (optionHolder.isOptionExists(EmailConstants.DELAY)) {
+            optionDelay = optionHolder.validateAndGetOption(EmailConstants.DELAY);
+        }
+        if (optionSendAt != null || optionDelay != null) {
+            long scheduleTick = getLongValue(EmailConstants.SCHEDULE_TICK, EmailConstants.DEFAULT_SCHEDULE_TICK);
+            if (scheduleTick <= 0) {
+                throw new SiddhiAppCreationException(EmailConstants.SCHEDULE_TICK + " should be a positive value. "
+                        + "But found: " + scheduleTick + ".");
+            }
+            timerWheel = new EmailTimerWheel<>(scheduleTick, SCHEDULE_WHEEL_SIZE, this::releaseAsync,
+                    "EmailSinkScheduler-" + streamDefinition.getId());
+            schedulePersist = getBooleanValue(EmailConstants.SCHEDULE_PERSIST,
+                    EmailConstants.DEFAULT_SCHEDULE_PERSIST);
+        }
+
+        sinkId = optionHolder.validateAndGetStaticValue(EmailConstants.SINK_ID, EmailConstants.EMPTY_STRING);
+        if (sinkId.isEmpty()) {
+            sinkId = null;
+        }
+
+        createRelays(username, host, port, poolSize);
+        if (timerWheel != null) {
+            //The scheduled emails are sent by as many threads as there are connections to the relays.
+            scheduleSenders = poolSize * relayRouter.getRelays().size();
+        }
+
+        String smtpClient = optionHolder.validateAndGetStaticValue(EmailConstants.SMTP_CLIENT,
+                configReader.readConfig(EmailConstants.SMTP_CLIENT, EmailConstants.DEFAULT_SMTP_CLIENT));
+        //The 'nio' client sends the emails on its event loops. Therefore, the publishing threads do not wait for it
+        //unless the 'caller' executor is set explicitly.
+        String executor = optionHolder.validateAndGetStaticValue(EmailConstants.SEND_EXECUTOR,
+                configReader.readConfig(EmailConstants.SEND_EXECUTOR,
+                        smtpClient.equalsIgnoreCase(EmailConstants.SMTP_CLIENT_NIO)
+                                ? EmailConstants.SEND_EXECUTOR_VIRTUAL_THREAD : EmailConstants.DEFAULT_SEND_EXECUTOR));
+        if (executor.equalsIgnoreCase(EmailConstants.SEND_EXECUTOR_VIRTUAL_THREAD)) {
+            if (EmailExecutors.isVirtualThreadSupported()) {
+                virtualThreadSends = true;
+                //The sends waiting for a virtual thread are ordered by their priority lanes as well, since they
+                //would otherwise reach the priority gates of the relays in the order in which they were published.
+                int relayCount = relayRouter.getRelays().size();
+                sendPermits = optionPriority != null
+                        ? new EmailPriorityGate(poolSize * relayCount, reservedConnections * relayCount,
+                        priorityPolicy, priorityWeights)
+                        : new EmailPriorityGate(poolSize * relayCount, 0, EmailPriorityGate.Policy.STRICT,
+                        priorityWeights);
+            } else {
+                log.warn("Virtual threads are supported from Java 21. Therefore, the emails of the stream: "
+                        + streamDefinition.getId() + " are sent on the publishing threads.");
+            }
+        } else if (!executor.equalsIgnoreCase(EmailConstants.SEND_EXECUTOR_CALLER)) {
+            throw new SiddhiAppCreationException(EmailConstants.SEND_EXECUTOR + " could be 'caller' or "
+                    + "'virtual.thread'. But found: " + executor + ".");
+        }
+
+        if (smtpClient.equalsIgnoreCase(EmailConstants.SMTP_CLIENT_NIO)) {
+            if (Boolean.parseBoolean(initProperties.get(EmailConstants.TRANSPORT_MAIL_PUBLISHER_SSL_ENABLE))
+                    || initProperties.containsKey(EmailConstants.TRANSPORT_MAIL_PUBLISHER_STARTTLS_ENABLE)) {
+                throw new SiddhiAppCreationException("The '" + EmailConstants.SMTP_CLIENT_NIO + "' "
+                        + EmailConstants.SMTP_CLIENT + " does not support " + EmailConstants.MAIL_PUBLISHER_SSL_ENABLE
+                        + " or " + EmailConstants.MAIL_PUBLISHER_STARTTLS_ENABLE + ". Set "
+                        + EmailConstants.MAIL_PUBLISHER_SSL_ENABLE + " to 'false', or use the '"
+                        + EmailConstants.SMTP_CLIENT_BLOCKING + "' " + EmailConstants.SMTP_CLIENT + ".");
+            }
+            smtpClientThreads = (int) getLongValue(EmailConstants.SMTP_CLIENT_THREADS,
+                    EmailConstants.DEFAULT_SMTP_CLIENT_THREADS);
+            if (smtpClientThreads < 1) {
+                throw new SiddhiAppCreationException(EmailConstants.SMTP_CLIENT_THREADS + " should be a positive "
+                        + "integer. But found: " + smtpClientThreads + ".");
+            }
+            mimeSession = Session.getInstance(new Properties());
+        } else if (!smtpClient.equalsIgnoreCase(EmailConstants.SMTP_CLIENT_BLOCKING)) {
+            throw new SiddhiAppCreationException(EmailConstants.SMTP_CLIENT + " could be 'blocking' or 'nio'. But "
+                    + "found: " + smtpClient + ".");
+        }
+    }
+
+    /**
+     * Create the relays of the email sink, along with their rate limiters and concurrency limiters, and the router
+     * which routes the emails across them.
+     *
+     * @param username username used to send the emails.
+     * @param host     host name of the default relay.
+     * @param port     port of the default relay.
+     * @param poolSize connection pool size of each relay.
+     */
+    private void createRelays(String username, String host, String port, int poolSize) {
+        double messagesPerSecond = getDoubleValue(EmailConstants.RATE_LIMIT_MESSAGES_PER_SECOND,
+                EmailConstants.DEFAULT_RATE_LIMIT_MESSAGES_PER_SECOND);
+        double recipientsPerMinute = getDoubleValue(EmailConstants.RATE_LIMIT_RECIPIENTS_PER_MINUTE,
+                EmailConstants.DEFAULT_RATE_LIMIT_RECIPIENTS_PER_MINUTE);
+        int burst = (int) getLongValue(EmailConstants.RATE_LIMIT_BURST_SIZE,
+                EmailConstants.DEFAULT_RATE_LIMIT_BURST_SIZE);
+        if (messagesPerSecond < 0 || recipientsPerMinute < 0 || burst < 1) {
+            throw new SiddhiAppCreationException("Rate limits of the email sink should be positive values. But found: "
+                    + EmailConstants.RATE_LIMIT_MESSAGES_PER_SECOND + "=" + messagesPerSecond + ", "
+                    + EmailConstants.RATE_LIMIT_RECIPIENTS_PER_MINUTE + "=" + recipientsPerMinute + ", "
+                    + EmailConstants.RATE_LIMIT_BURST_SIZE + "=" + burst + ".");
+        }
+        boolean adaptiveConcurrency = getBooleanValue(EmailConstants.ADAPTIVE_CONCURRENCY_ENABLE,
+                EmailConstants.DEFAULT_ADAPTIVE_CONCURRENCY_ENABLE);
+        double latencyTolerance = getDoubleValue(EmailConstants.ADAPTIVE_CONCURRENCY_LATENCY_TOLERANCE,
+                EmailConstants.DEFAULT_ADAPTIVE_CONCURRENCY_LATENCY_TOLERANCE);
+        if (adaptiveConcurrency && latencyTolerance <= 1) {
+            throw new SiddhiAppCreationException(EmailConstants.ADAPTIVE_CONCURRENCY_LATENCY_TOLERANCE
+                    + " should be greater than 1. But found: " + latencyTolerance + ".");
+        }
+
+        if (optionHolder.isOptionExists(EmailConstants.PRIORITY)) {
+            optionPriority = optionHolder.validateAndGetOption(EmailConstants.PRIORITY);
+            if (optionPriority.isStatic()) {
+                getPriorityHeader(optionPriority.getValue());
+            }
+        }
+        String scheduling = optionHolder.validateAndGetStaticValue(EmailConstants.PRIORITY_SCHEDULING,
+                configReader.readConfig(EmailConstants.PRIORITY_SCHEDULING,
+                        EmailConstants.DEFAULT_PRIORITY_SCHEDULING));
+        try {
+            priorityPolicy = EmailPriorityGate.Policy.valueOf(scheduling.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new SiddhiAppCreationException(EmailConstants.PRIORITY_SCHEDULING + " could be 'strict' or "
+                    + "'weighted'. But found: " + scheduling + ".", e);
+        }
+        String weights = optionHolder.validateAndGetStaticValue(EmailConstants.PRIORITY_WEIGHTS,
+                configReader.readConfig(EmailConstants.PRIORITY_WEIGHTS, EmailConstants.DEFAULT_PRIORITY_WEIGHTS));
+        String[] weightValues = weights.split(EmailConstants.COMMA_SEPERATOR);
+        priorityWeights = new int[EmailPriorityGate.Lane.values().length];
+        try {
+            if (weightValues.length != priorityWeights.length) {
+                throw new NumberFormatException("Expected " + priorityWeights.length + " weights.");
+            }
+            for (int i = 0; i < priorityWeights.length; i++) {
+                priorityWeights[i] = Integer.parseInt(weightValues[i].trim());
+                if (priorityWeights[i] < 1) {
+                    throw new NumberFormatException("Weights should be positive.");
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new SiddhiAppCreationException(EmailConstants.PRIORITY_WEIGHTS + " should be three comma-separated"
+                    + " positive integers. But found: " + weights + ".", e);
+        }
+        reservedConnections = (int) getLongValue(EmailConstants.PRIORITY_RESERVED_CONNECTIONS,
+                EmailConstants.DEFAULT_PRIORITY_RESERVED_CONNECTIONS);
+        if (reservedConnections < 0 || reservedConnections >= poolSize) {
+            throw new SiddhiAppCreationException(EmailConstants.PRIORITY_RESERVED_CONNECTIONS + " should be less "
+                    + "than " + EmailConstants.PUBLISHER_POOL_SIZE + ": " + poolSize + ". But found: "
+                    + reservedConnections + ".");
+        }
+
+        boolean circuitBreakerEnabled = getBooleanValue(EmailConstants.CIRCUIT_BREAKER_ENABLE,
+                EmailConstants.DEFAULT_CIRCUIT_BREAKER_ENABLE);
+        int windowSize = (int) getLongValue(EmailConstants.CIRCUIT_BREAKER_WINDOW_SIZE,
+                EmailConstants.DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE);
+        double failureRateThreshold = getDoubleValue(EmailConstants.CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD,
+                EmailConstants.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD);
+        double slowCallRateThreshold = getDoubleValue(EmailConstants.CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD,
+                EmailConstants.DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD);
+        long slowCallDuration = getLongValue(EmailConstants.CIRCUIT_BREAKER_SLOW_CALL_DURATION,
+                EmailConstants.DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION);
+        long openDuration = getLongValue(EmailConstants.CIRCUIT_BREAKER_OPEN_DURATION,
+                EmailConstants.DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION);
+        int trialSends = (int) getLongValue(EmailConstants.CIRCUIT_BREAKER_TRIAL_SENDS,
+                EmailConstants.DEFAULT_CIRCUIT_BREAKER_TRIAL_SENDS);
+        if (circuitBreakerEnabled && (windowSize < 1 || trialSends < 1 || slowCallDuration <= 0 || openDuration <= 0
+                || failureRateThreshold <= 0 || failureRateThreshold > 100 || slowCallRateThreshold <= 0
+                || slowCallRateThreshold > 100)) {
+            throw new SiddhiAppCreationException("Circuit breaker of the email sink should have a positive window "
+                    + "size, trial sends and durations, and thresholds between 0 and 100. But found: "
+                    + EmailConstants.CIRCUIT_BREAKER_WINDOW_SIZE + "=" + windowSize + ", "
+                    + EmailConstants.CIRCUIT_BREAKER_TRIAL_SENDS + "=" + trialSends + ", "
+                    + EmailConstants.CIRCUIT_BREAKER_SLOW_CALL_DURATION + "=" + slowCallDuration + ", "
+                    + EmailConstants.CIRCUIT_BREAKER_OPEN_DURATION + "=" + openDuration + ", "
+                    + EmailConstants.CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD + "=" + failureRateThreshold + ", "
+                    + EmailConstants.CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD + "=" + slowCallRateThreshold + ".");
+        }
+
+        String relayAddresses = optionHolder.validateAndGetStaticValue(EmailConstants.RELAYS,
+                configReader.readConfig(EmailConstants.RELAYS, host + ":" + port));
+        List<EmailRelay> relays = new ArrayList<>();
+        Map<String, EmailRelay> relaysByAddress = new HashMap<>();
+        for (String relayAddress : relayAddresses.split(EmailConstants.COMMA_SEPERATOR)) {
+            relayAddress = relayAddress.trim();
+            int separator = relayAddress.lastIndexOf(':');
+            if (separator <= 0 || separator == relayAddress.length() - 1) {
+                throw new SiddhiAppCreationException("Relays of the email sink should be defined in the 'host:port'"
+                        + " format. But found: " + relayAddress + ".");
+            }
+            String relayHost = relayAddress.substring(0, separator);
+            String relayPort = relayAddress.substring(separator + 1);
+            String relayKey = username + "@" + relayHost + ":" + relayPort;
+            Map<String, String> relayProperties = new HashMap<>(initProperties);
+            relayProperties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_HOST_NAME, relayHost);
+            relayProperties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_PORT, relayPort);
+            EmailRelay relay = new EmailRelay(relayHost, relayPort, relayKey, relayProperties);
+            if (messagesPerSecond > 0 || recipientsPerMinute > 0) {
+                relay.setRateLimiter(EmailRateLimiter.getRateLimiter(relayKey, messagesPerSecond,
+                        recipientsPerMinute, burst));
+            }
+            if (adaptiveConcurrency) {
+                relay.setConcurrencyLimiter(new EmailConcurrencyLimiter(poolSize, latencyTolerance));
+            }
+            if (circuitBreakerEnabled) {
+                relay.setCircuitBreaker(new EmailCircuitBreaker(relayAddress, windowSize, failureRateThreshold,
+                        slowCallRateThreshold, slowCallDuration, openDuration, trialSends));
+            }
+            if (optionPriority != null) {
+                relay.setPriorityGate(new EmailPriorityGate(poolSize, reservedConnections, priorityPolicy,
+                        priorityWeights));
+            }
+            relays.add(relay);
+            relaysByAddress.put(relayAddress, relay);
+        }
+
+        String strategy = optionHolder.validateAndGetStaticValue(EmailConstants.RELAY_STRATEGY,
+                configReader.readConfig(EmailConstants.RELAY_STRATEGY, EmailConstants.DEFAULT_RELAY_STRATEGY));
+        EmailRelayRouter.Strategy relayStrategy;
+        try {
+            relayStrategy = EmailRelayRouter.Strategy.valueOf(strategy.replace('.', '_').toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new SiddhiAppCreationException(EmailConstants.RELAY_STRATEGY + " could be 'round.robin', "
+                    + "'least.outstanding', 'domain' or 'failover'. But found: " + strategy + ".", e);
+        }
+
+        Map<String, EmailRelay> domainRoutes = new HashMap<>();
+        String routes = optionHolder.validateAndGetStaticValue(EmailConstants.RELAY_DOMAIN_ROUTES,
+                configReader.readConfig(EmailConstants.RELAY_DOMAIN_ROUTES, EmailConstants.EMPTY_STRING));
+        if (!routes.trim().isEmpty()) {
+            for (String route : routes.split(EmailConstants.COMMA_SEPERATOR)) {
+                String[] domainAndRelay = route.split("=");
+                EmailRelay relay = domainAndRelay.length == 2 ? relaysByAddress.get(domainAndRelay[1].trim()) : null;
+                if (relay == null) {
+                    throw new SiddhiAppCreationException("Routes of " + EmailConstants.RELAY_DOMAIN_ROUTES
+                            + " should be in the 'domain=host:port' format, where the relay is one of the "
+                            + EmailConstants.RELAYS + ". But found: " + route + ".");
+                }
+                domainRoutes.put(domainAndRelay[0].trim().toLowerCase(Locale.ENGLISH), relay);
+            }
+        }
+
+        relayFailureThreshold = (int) getLongValue(EmailConstants.RELAY_FAILURE_THRESHOLD,
+                EmailConstants.DEFAULT_RELAY_FAILURE_THRESHOLD);
+        relayRetryInterval = getLongValue(EmailConstants.RELAY_RETRY_INTERVAL,
+                EmailConstants.DEFAULT_RELAY_RETRY_INTERVAL);
+        if (relayFailureThreshold <= 0 || relayRetryInterval < 0) {
+            throw new SiddhiAppCreationException(EmailConstants.RELAY_FAILURE_THRESHOLD + " and "
+                    + EmailConstants.RELAY_RETRY_INTERVAL + " should be positive values.");
+        }
+        relayRouter = new EmailRelayRouter(relays, relayStrategy, domainRoutes);
+    }
+
+    /**
+     * Read an integral parameter from the stream definition or the deployment 'yaml' file.
+     *
+     * @param key          name of the parameter.
+     * @param defaultValue value used when the parameter is not defined in either place.
+     * @return the value of the parameter.
+     */
+    private long getLongValue(String key, String defaultValue) {
+        String value = optionHolder.validateAndGetStaticValue(key, configReader.readConfig(key, defaultValue));
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new SiddhiAppCreationException(key + " parameter only excepts an Integer value.", e);
+        }
+    }
+
+    /**
+     * Read a decimal parameter from the stream definition or the deployment 'yaml' file.
+     *
+     * @param key          name of the parameter.
+     * @param defaultValue value used when the parameter is not defined in either place.
+     * @return the value of the parameter.
+     */
+    private double getDoubleValue(String key, String defaultValue) {
+        String value = optionHolder.validateAndGetStaticValue(key, configReader.readConfig(key, defaultValue));
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new SiddhiAppCreationException(key + " parameter only excepts a numeric value.", e);
+        }
+    }
+
+    /**
+     * Read a boolean parameter from the stream definition or the deployment 'yaml' file.
+     *
+     * @param key          name of the parameter.
+     * @param defaultValue value used when the parameter is not defined in either place.
+     * @return the value of the parameter.
+     */
+    private boolean getBooleanValue(String key, String defaultValue) {
+        String value = optionHolder.validateAndGetStaticValue(key, configReader.readConfig(key, defaultValue));
+        if (!(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"))) {
+            throw new SiddhiAppCreationException("Value of the " + key + " should be either 'true' or 'false'.");
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Count the 'to', 'cc' and 'bcc' recipients of an email.
+     *
+     * @param headers headers of the email.
+     * @return number of recipients.
+     */
+    private int getRecipientCount(Map<String, String> headers) {
+        int count = 0;
+        for (String header : new String[]{EmailConstants.TRANSPORT_MAIL_HEADER_TO,
+                EmailConstants.TRANSPORT_MAIL_HEADER_CC, EmailConstants.TRANSPORT_MAIL_HEADER_BCC}) {
+            String addresses = headers.get(header);
+            if (addresses != null && !addresses.trim().isEmpty()) {
+                count += addresses.split(EmailConstants.COMMA_SEPERATOR).length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the domain of the first 'to', 'cc' or 'bcc' recipient of an email.
+     *
+     * @param headers headers of the email.
+     * @return the domain, or null if the email has no recipient with a domain.
+     */
+    private String getRecipientDomain(Map<String, String> headers) {
+        for (String header : new String[]{EmailConstants.TRANSPORT_MAIL_HEADER_TO,
+                EmailConstants.TRANSPORT_MAIL_HEADER_CC, EmailConstants.TRANSPORT_MAIL_HEADER_BCC}) {
+            String addresses = headers.get(header);
+            if (addresses != null && !addresses.trim().isEmpty()) {
+                String address = addresses.split(EmailConstants.COMMA_SEPERATOR)[0].trim();
+                int separator = address.lastIndexOf('@');
+                if (separator >= 0) {
+                    return address.substring(separator + 1).replace(">", "").trim();
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -756,7 +2459,54 @@ public class EmailSink extends Sink {
      * Implementation of this method should contain the steps needed to disconnect from the sink.
      */
     @Override public void disconnect() {
-        EmailClientConnectionPoolManager.uninitializeConnectionPool();
+        if (timerWheel != null) {
+            timerWheel.stop();
+        }
+        ExecutorService releaseExecutor = scheduleExecutor;
+        if (releaseExecutor != null) {
+            scheduleExecutor = null;
+            releaseExecutor.shutdown();
+            //Wakes up the emails which wait to be retried, so that they are scheduled again.
+            synchronized (scheduleRetryLock) {
+                scheduleRetryLock.notifyAll();
+            }
+            try {
+                if (!releaseExecutor.awaitTermination(SEND_EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    log.warn("Scheduled emails which are being sent did not complete in time.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mergeBuffer != null) {
+            mergeBuffer.flush();
+        }
+        if (outbox != null) {
+            outbox.stop();
+        }
+        ExecutorService executor = sendExecutor;
+        if (executor != null) {
+            sendExecutor = null;
+            executor.shutdown();
+            //Wakes up the emails which wait to be retried, so that the virtual threads complete.
+            synchronized (sendRetryLock) {
+                sendRetryLock.notifyAll();
+            }
+            try {
+                if (!executor.awaitTermination(SEND_EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    log.warn("Emails which are being sent on virtual threads did not complete in time.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (EmailRelay relay : relayRouter.getRelays()) {
+            relay.disconnect();
+        }
+        if (smtpEventLoopGroup != null) {
+            smtpEventLoopGroup.shutdown(SMTP_CLIENT_SHUTDOWN_TIMEOUT);
+            smtpEventLoopGroup = null;
+        }
     }
 
     /**
@@ -764,6 +2514,16 @@ public class EmailSink extends Sink {
      * The cleanups that has to be done when removing the receiver has to be done here.
      */
     @Override public void destroy() {
+        if (timerWheel != null) {
+            timerWheel.stop();
+            timerWheel.clear();
+        }
+        for (EmailRelay relay : relayRouter.getRelays()) {
+            if (relay.getRateLimiter() != null) {
+                EmailRateLimiter.releaseRateLimiter(relay.getRelayKey());
+                relay.setRateLimiter(null);
+            }
+        }
     }
 
     /**
@@ -776,7 +2536,8 @@ public class EmailSink extends Sink {
     public String[] getSupportedDynamicOptions() {
         return new String[]{EmailConstants.SUBJECT, EmailConstants.TO,
                 EmailConstants.CC, EmailConstants.BCC, EmailConstants.ATTACHMENTS,
-                EmailConstants.MAIL_PUBLISHER_CONTENT_TYPE};
+                EmailConstants.MAIL_PUBLISHER_CONTENT_TYPE, EmailConstants.SEND_AT, EmailConstants.DELAY,
+                EmailConstants.PRIORITY};
     }
 
     /**
@@ -787,11 +2548,59 @@ public class EmailSink extends Sink {
      */
     @Override
     public Class[] getSupportedInputEventClasses() {
-        return new Class[]{String.class};
+        return new Class[]{String.class, byte[].class, ByteBuffer.class};
     }
 
     @Override
     protected ServiceDeploymentInfo exposeServiceDeploymentInfo() {
         return null;
     }
+
+    /**
+     * State of the email sink, which holds the scheduled emails that are not sent yet when the state snapshot of
+     * the Siddhi application is taken.
+     */
+    class ScheduleState extends State {
+        private static final String SCHEDULED_EMAILS = "scheduledEmails";
+
+        @Override
+        public boolean canDestroy() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            ArrayList<Object[]> scheduledEmails = new ArrayList<>();
+            for (EmailTimerWheel.Timeout<RenderedEmail> timeout : timerWheel.getPending()) {
+                scheduledEmails.add(toScheduledEmail(timeout.getItem(), timeout.getDueTime()));
+            }
+            //The emails which are being sent or retried are scheduled again on restore, if they are not sent yet.
+            releasingEmails.forEach((email, dueTime) -> scheduledEmails.add(toScheduledEmail(email, dueTime)));
+            Map<String, Object> state = new HashMap<>();
+            state.put(SCHEDULED_EMAILS, scheduledEmails);
+            return state;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void restore(Map<String, Object> state) {
+            timerWheel.clear();
+            List<Object[]> scheduledEmails = (List<Object[]>) state.get(SCHEDULED_EMAILS);
+            if (scheduledEmails != null) {
+                for (Object[] scheduledEmail : scheduledEmails) {
+                    //The snapshots taken before the raw content was introduced have no raw content.
+                    byte[] rawContent = scheduledEmail.length > 4 ? (byte[]) scheduledEmail[4] : null;
+                    timerWheel.schedule(new RenderedEmail((Map<String, String>) scheduledEmail[1],
+                            (String) scheduledEmail[2], rawContent, (List<String>) scheduledEmail[3], 0),
+                            (Long) scheduledEmail[0]);
+                }
+            }
+        }
+
+        private Object[] toScheduledEmail(RenderedEmail email, long dueTime) {
+            return new Object[]{dueTime, new HashMap<>(email.getHeaders()), email.getContent(),
+                    email.getAttachments() != null ? new ArrayList<>(email.getAttachments()) : null,
+                    email.getRawContent() != null ? email.getRawContent().clone() : null};
+        }
+    }
 }
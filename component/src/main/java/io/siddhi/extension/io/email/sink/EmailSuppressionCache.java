@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import io.siddhi.extension.io.email.util.EmailConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, time expiring cache which suppresses duplicate emails, i.e., emails with the same headers, content and
+ * attachments, sent within a suppression window. Optionally, a summary email with the number of suppressed repeats
+ * is sent when the window of an email closes.
+ */
+class EmailSuppressionCache {
+    private final long window;
+    private final int maxSize;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<RenderedEmail> summarySender;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * @param window        the suppression window in milliseconds.
+     * @param maxSize       the maximum number of distinct emails tracked by the cache.
+     * @param scheduler     scheduler used to close the windows, or null if summary emails are not sent.
+     * @param summarySender sender of the summary emails, or null if summary emails are not sent.
+     */
+    EmailSuppressionCache(long window, int maxSize, ScheduledExecutorService scheduler,
+                          Consumer<RenderedEmail> summarySender) {
+        this.window = window;
+        this.maxSize = maxSize;
+        this.scheduler = scheduler;
+        this.summarySender = summarySender;
+    }
+
+    /**
+     * Check whether the email is a duplicate of an email sent within the suppression window, and count it as a
+     * suppressed repeat if so.
+     *
+     * @param email the email to be sent.
+     * @return true if the email should be dropped.
+     */
+    boolean suppress(RenderedEmail email) {
+        String key = EmailFingerprint.of(email, Collections.<String>emptySet());
+        long now = System.currentTimeMillis();
+        List<RenderedEmail> summaries = new ArrayList<>();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiryTime > now) {
+                entry.repeats++;
+                return true;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                addSummary(entry, summaries);
+            }
+            if (entries.size() >= maxSize) {
+                evict(now, summaries);
+            }
+            entry = new Entry(email, now + window);
+            entries.put(key, entry);
+            if (summarySender != null) {
+                Entry scheduledEntry = entry;
+                scheduler.schedule(() -> close(key, scheduledEntry), window, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (summarySender != null) {
+            summaries.forEach(summarySender);
+        }
+        return false;
+    }
+
+    /**
+     * Evict the entries at the head of the cache. Since all the entries have the same window, the head of the
+     * insertion order holds the entries which expire first.
+     */
+    private void evict(long now, List<RenderedEmail> summaries) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.expiryTime > now && entries.size() < maxSize) {
+                break;
+            }
+            iterator.remove();
+            addSummary(entry, summaries);
+        }
+    }
+
+    private void addSummary(Entry entry, List<RenderedEmail> summaries) {
+        if (summarySender != null && entry.repeats > 0) {
+            summaries.add(createSummary(entry));
+        }
+    }
+
+    private void close(String key, Entry entry) {
+        synchronized (this) {
+            if (entries.get(key) != entry) {
+                return;
+            }
+            entries.remove(key);
+        }
+        List<RenderedEmail> summaries = new ArrayList<>(1);
+        addSummary(entry, summaries);
+        summaries.forEach(summarySender);
+    }
+
+    private static RenderedEmail createSummary(Entry entry) {
+        RenderedEmail email = entry.email;
+        String contentType = email.getHeader(EmailConstants.TRANSPORT_MAIL_HEADER_CONTENT_TYPE);
+        String summary = entry.repeats + " repeats suppressed";
+        if (contentType != null && contentType.toLowerCase(Locale.ENGLISH).contains("html")) {
+            summary = "<p>" + summary + "</p>";
+        } else {
+            summary = "\n\n" + summary;
+        }
+        return new RenderedEmail(email.getHeaders(), email.getContent() + summary, email.getAttachments());
+    }
+
+    /**
+     * Suppression window of a distinct email.
+     */
+    private static class Entry {
+        private final RenderedEmail email;
+        private final long expiryTime;
+        private int repeats = 0;
+
+        Entry(RenderedEmail email, long expiryTime) {
+            this.email = email;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
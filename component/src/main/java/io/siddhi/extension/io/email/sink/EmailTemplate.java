@@ -0,0 +1,172 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Email body template which is compiled once, and filled in with the attributes of each event. Placeholders are
+ * given as '{{attribute}}', as in the other Siddhi templates.
+ */
+final class EmailTemplate {
+    private static final String PLACEHOLDER_START = "{{";
+    private static final String PLACEHOLDER_END = "}}";
+    //Parsed template files shared by the email sinks, keyed by the file path and its last modified time.
+    private static final Map<String, List<String>> PARSED_TEMPLATES = new ConcurrentHashMap<>();
+
+    private final String[] literals;
+    private final int[] attributePositions;
+    private final boolean html;
+    private final int estimatedLength;
+
+    private EmailTemplate(String[] literals, int[] attributePositions, boolean html) {
+        this.literals = literals;
+        this.attributePositions = attributePositions;
+        this.html = html;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.estimatedLength = length + attributePositions.length * 16;
+    }
+
+    /**
+     * Load a template file, and bind its placeholders to the attributes of the stream.
+     *
+     * @param path             path of the template file.
+     * @param streamDefinition definition of the stream whose events fill in the template.
+     * @param html             whether the template is an HTML template, in which case the values are escaped.
+     * @return the compiled template.
+     */
+    static EmailTemplate load(String path, StreamDefinition streamDefinition, boolean html) {
+        File file = new File(path);
+        List<String> tokens;
+        try {
+            String key = file.getCanonicalPath() + ":" + file.lastModified();
+            tokens = PARSED_TEMPLATES.get(key);
+            if (tokens == null) {
+                tokens = parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                PARSED_TEMPLATES.put(key, tokens);
+            }
+        } catch (IOException e) {
+            throw new SiddhiAppCreationException("Error is encountered while reading the email template: " + path
+                    + ". " + e.getMessage(), e);
+        }
+        List<String> attributeNames = Arrays.asList(streamDefinition.getAttributeNameArray());
+        String[] literals = new String[tokens.size() / 2 + 1];
+        int[] attributePositions = new int[tokens.size() / 2];
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i % 2 == 0) {
+                literals[i / 2] = tokens.get(i);
+            } else {
+                int position = attributeNames.indexOf(tokens.get(i));
+                if (position < 0) {
+                    throw new SiddhiAppCreationException("The placeholder '" + tokens.get(i) + "' of the email " +
+                            "template: " + path + " is not an attribute of the stream: " + streamDefinition.getId()
+                            + ".");
+                }
+                attributePositions[i / 2] = position;
+            }
+        }
+        return new EmailTemplate(literals, attributePositions, html);
+    }
+
+    /**
+     * Split a template into literals and placeholders.
+     *
+     * @return the literals at even indexes, and the attribute names of the placeholders in between.
+     */
+    private static List<String> parse(String template) {
+        List<String> tokens = new ArrayList<>();
+        int index = 0;
+        while (true) {
+            int start = template.indexOf(PLACEHOLDER_START, index);
+            int end = start < 0 ? -1 : template.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (end < 0) {
+                tokens.add(template.substring(index));
+                return Collections.unmodifiableList(tokens);
+            }
+            tokens.add(template.substring(index, start));
+            tokens.add(template.substring(start + PLACEHOLDER_START.length(), end).trim());
+            index = end + PLACEHOLDER_END.length();
+        }
+    }
+
+    /**
+     * Fill in the template with the attributes of an event.
+     *
+     * @param data attribute values of the event.
+     * @return the email body.
+     */
+    String render(Object[] data) {
+        StringBuilder body = new StringBuilder(estimatedLength);
+        body.append(literals[0]);
+        for (int i = 0; i < attributePositions.length; i++) {
+            String value = String.valueOf(data[attributePositions[i]]);
+            if (html) {
+                appendEscaped(body, value);
+            } else {
+                body.append(value);
+            }
+            body.append(literals[i + 1]);
+        }
+        return body.toString();
+    }
+
+    boolean isHtml() {
+        return html;
+    }
+
+    private static void appendEscaped(StringBuilder body, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    body.append("&lt;");
+                    break;
+                case '>':
+                    body.append("&gt;");
+                    break;
+                case '&':
+                    body.append("&amp;");
+                    break;
+                case '"':
+                    body.append("&quot;");
+                    break;
+                case '\'':
+                    body.append("&#39;");
+                    break;
+                default:
+                    body.append(c);
+            }
+        }
+    }
+}
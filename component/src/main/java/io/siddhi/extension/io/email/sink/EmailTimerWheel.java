@@ -0,0 +1,241 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel which holds the emails scheduled to be sent at a later time. Scheduling an email is a
+ * constant time enqueue, and a single worker thread moves the scheduled emails into the buckets of the wheel and
+ * releases the emails of a bucket when the wheel turns to it, so that a large number of pending emails is held
+ * without a timer task per email.
+ *
+ * @param <T> type of the scheduled items.
+ */
+class EmailTimerWheel<T> {
+    private static final Logger log = LogManager.getLogger(EmailTimerWheel.class);
+
+    private final long tickDuration;
+    private final Timeout<T>[] buckets;
+    private final int mask;
+    private final Consumer<T> consumer;
+    private final String name;
+    private final Queue<Timeout<T>> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+    private long startTime;
+    private long tick;
+    private int size;
+    private Thread worker;
+
+    /**
+     * @param tickDuration the duration of a tick of the wheel in milliseconds, i.e., the precision of the timer.
+     * @param wheelSize    the number of buckets of the wheel, which is rounded up to a power of two.
+     * @param consumer     consumer of the items when they are due.
+     * @param name         name of the worker thread.
+     */
+    @SuppressWarnings("unchecked")
+    EmailTimerWheel(long tickDuration, int wheelSize, Consumer<T> consumer, String name) {
+        int bucketCount = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.tickDuration = tickDuration;
+        this.buckets = new Timeout[bucketCount];
+        this.mask = bucketCount - 1;
+        this.consumer = consumer;
+        this.name = name;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Schedule an item.
+     *
+     * @param item    the item.
+     * @param dueTime the time in epoch milliseconds at which the item is due.
+     */
+    void schedule(T item, long dueTime) {
+        scheduledTimeouts.add(new Timeout<>(item, dueTime));
+    }
+
+    /**
+     * Start the worker thread which turns the wheel. The items which became due while the wheel was stopped are
+     * released on the first tick.
+     */
+    synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stop the worker thread. The pending items remain in the wheel.
+     */
+    void stop() {
+        Thread currentWorker;
+        synchronized (this) {
+            currentWorker = worker;
+            worker = null;
+        }
+        if (currentWorker != null) {
+            currentWorker.interrupt();
+            try {
+                currentWorker.join(tickDuration * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Get the pending items along with their due times.
+     *
+     * @return a list of the pending timeouts.
+     */
+    synchronized List<Timeout<T>> getPending() {
+        List<Timeout<T>> pending = new ArrayList<>(size + scheduledTimeouts.size());
+        for (Timeout<T> bucket : buckets) {
+            for (Timeout<T> timeout = bucket; timeout != null; timeout = timeout.next) {
+                pending.add(timeout);
+            }
+        }
+        pending.addAll(scheduledTimeouts);
+        return pending;
+    }
+
+    /**
+     * Remove all the pending items.
+     */
+    synchronized void clear() {
+        scheduledTimeouts.clear();
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = null;
+        }
+        size = 0;
+    }
+
+    private void run() {
+        synchronized (this) {
+            //Restart the ticks from now. The bucket of a timeout is derived from its due time, so the timeouts in the
+            //wheel are moved to their buckets again.
+            List<Timeout<T>> pending = new ArrayList<>(size);
+            for (int i = 0; i < buckets.length; i++) {
+                for (Timeout<T> timeout = buckets[i]; timeout != null; timeout = timeout.next) {
+                    pending.add(timeout);
+                }
+                buckets[i] = null;
+            }
+            size = 0;
+            startTime = System.currentTimeMillis();
+            tick = 0;
+            pending.forEach(this::add);
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            long sleepTime = startTime + (tick + 1) * tickDuration - System.currentTimeMillis();
+            if (sleepTime > 0) {
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            List<T> dueItems = new ArrayList<>();
+            synchronized (this) {
+                if (worker != Thread.currentThread()) {
+                    return;
+                }
+                Timeout<T> timeout;
+                while ((timeout = scheduledTimeouts.poll()) != null) {
+                    add(timeout);
+                }
+                expire(dueItems);
+                tick++;
+            }
+            for (T item : dueItems) {
+                try {
+                    consumer.accept(item);
+                } catch (RuntimeException e) {
+                    log.error("Error is encountered while releasing a scheduled email. " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void add(Timeout<T> timeout) {
+        long ticks = Math.max((timeout.dueTime - startTime) / tickDuration, tick);
+        timeout.remainingRounds = (ticks - tick) / buckets.length;
+        int index = (int) (ticks & mask);
+        timeout.next = buckets[index];
+        buckets[index] = timeout;
+        size++;
+    }
+
+    private void expire(List<T> dueItems) {
+        int index = (int) (tick & mask);
+        Timeout<T> previous = null;
+        Timeout<T> timeout = buckets[index];
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                if (previous == null) {
+                    buckets[index] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+                size--;
+                dueItems.add(timeout.item);
+            } else {
+                timeout.remainingRounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * An item scheduled in the wheel.
+     *
+     * @param <T> type of the item.
+     */
+    static class Timeout<T> {
+        private final T item;
+        private final long dueTime;
+        private long remainingRounds;
+        private Timeout<T> next;
+
+        Timeout(T item, long dueTime) {
+            this.item = item;
+            this.dueTime = dueTime;
+        }
+
+        T getItem() {
+            return item;
+        }
+
+        long getDueTime() {
+            return dueTime;
+        }
+    }
+}
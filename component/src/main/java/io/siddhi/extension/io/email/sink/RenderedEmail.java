@@ -0,0 +1,250 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import io.siddhi.extension.io.email.util.EmailConstants;
+import org.wso2.transport.email.contract.message.EmailBaseMessage;
+import org.wso2.transport.email.contract.message.EmailMultipartMessage;
+import org.wso2.transport.email.contract.message.EmailTextMessage;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.activation.DataHandler;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+
+/**
+ * An email of the email sink whose headers and content are resolved from an event, and which is ready to be
+ * handed over to the email client connector.
+ */
+public class RenderedEmail {
+    private final Map<String, String> headers;
+    private final String content;
+    private final byte[] rawContent;
+    private final List<String> attachments;
+    private final long deadline;
+    private final BitSet undeliveredEnvelopes;
+
+    /**
+     * @param headers     the resolved email headers such as 'To', 'Subject' and 'Content-Type'.
+     * @param content     the content of the email.
+     * @param attachments file paths of the attachments, or null if the email is not a multipart email.
+     */
+    public RenderedEmail(Map<String, String> headers, String content, List<String> attachments) {
+        this(headers, content, attachments, 0);
+    }
+
+    /**
+     * @param headers     the resolved email headers such as 'To', 'Subject' and 'Content-Type'.
+     * @param content     the content of the email.
+     * @param attachments file paths of the attachments, or null if the email is not a multipart email.
+     * @param deadline    the time in epoch milliseconds after which the email should not be sent, or zero if there
+     *                    is no deadline.
+     */
+    public RenderedEmail(Map<String, String> headers, String content, List<String> attachments, long deadline) {
+        this(headers, content, null, attachments, deadline);
+    }
+
+    /**
+     * @param headers     the resolved email headers such as 'To', 'Subject' and 'Content-Type'.
+     * @param content     the content of the email.
+     * @param rawContent  the content as given by a binary payload, which is encoded with the charset of the content
+     *                    type, or null if the content is not given as bytes.
+     * @param attachments file paths of the attachments, or null if the email is not a multipart email.
+     * @param deadline    the time in epoch milliseconds after which the email should not be sent, or zero if there
+     *                    is no deadline.
+     */
+    public RenderedEmail(Map<String, String> headers, String content, byte[] rawContent, List<String> attachments,
+                         long deadline) {
+        this(headers, content, rawContent, attachments, deadline, null);
+    }
+
+    private RenderedEmail(Map<String, String> headers, String content, byte[] rawContent, List<String> attachments,
+                          long deadline, BitSet undeliveredEnvelopes) {
+        this.headers = Collections.unmodifiableMap(new HashMap<>(headers));
+        this.content = content;
+        this.rawContent = rawContent;
+        this.attachments = attachments;
+        this.deadline = deadline;
+        this.undeliveredEnvelopes = undeliveredEnvelopes;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public byte[] getRawContent() {
+        return rawContent;
+    }
+
+    public List<String> getAttachments() {
+        return attachments;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return the indexes of the envelopes of the split email which are not delivered by the previous send of this
+     * retry, or null if all the envelopes are to be sent.
+     */
+    BitSet getUndeliveredEnvelopes() {
+        return undeliveredEnvelopes == null ? null : (BitSet) undeliveredEnvelopes.clone();
+    }
+
+    /**
+     * Check whether the deadline of the email has passed.
+     *
+     * @return true if the email has a deadline, and it has passed.
+     */
+    public boolean isExpired() {
+        return deadline > 0 && System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * Create a copy of the email with a deadline.
+     *
+     * @param deadline the time in epoch milliseconds after which the email should not be sent.
+     * @return the copy of the email.
+     */
+    public RenderedEmail withDeadline(long deadline) {
+        return new RenderedEmail(headers, content, rawContent, attachments, deadline, undeliveredEnvelopes);
+    }
+
+    /**
+     * Create a copy of the email to be retried, which is sent only to the envelopes which are not delivered.
+     *
+     * @param undeliveredEnvelopes the indexes of the envelopes of the split email which are not delivered.
+     * @return the copy of the email.
+     */
+    RenderedEmail withUndeliveredEnvelopes(BitSet undeliveredEnvelopes) {
+        return new RenderedEmail(headers, content, rawContent, attachments, deadline,
+                (BitSet) undeliveredEnvelopes.clone());
+    }
+
+    /**
+     * Create a copy of the email with other headers.
+     *
+     * @param headers the headers of the copy.
+     * @return the copy of the email.
+     */
+    public RenderedEmail withHeaders(Map<String, String> headers) {
+        return new RenderedEmail(headers, content, rawContent, attachments, deadline, undeliveredEnvelopes);
+    }
+
+    /**
+     * Create the message of the email client connector for this email.
+     *
+     * @return a multipart message if the email has attachments, else a text message.
+     */
+    public EmailBaseMessage toEmailBaseMessage() {
+        EmailBaseMessage emailBaseMessage;
+        if (attachments != null) {
+            emailBaseMessage = new EmailMultipartMessage(content, attachments);
+        } else {
+            emailBaseMessage = new EmailTextMessage(content);
+        }
+        emailBaseMessage.setHeaders(new HashMap<>(headers));
+        return emailBaseMessage;
+    }
+
+    /**
+     * Create the MIME message of this email, which is sent by the non-blocking SMTP client. The headers and the
+     * parts are set in the same way as the email client connector sets them. If the content is given as bytes, the
+     * bytes are sent as they are instead of encoding the decoded content again.
+     *
+     * @param session the mail session of the message.
+     * @return the MIME message.
+     * @throws MessagingException if a header or an address is invalid.
+     * @throws IOException        if an attachment cannot be read.
+     */
+    public MimeMessage toMimeMessage(Session session) throws MessagingException, IOException {
+        MimeMessage message = new MimeMessage(session);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String value = header.getValue();
+            if (value == null) {
+                continue;
+            }
+            switch (header.getKey()) {
+                case EmailConstants.TRANSPORT_MAIL_HEADER_FROM:
+                    message.setFrom(new InternetAddress(value));
+                    break;
+                case EmailConstants.TRANSPORT_MAIL_HEADER_TO:
+                    message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(value));
+                    break;
+                case EmailConstants.TRANSPORT_MAIL_HEADER_CC:
+                    message.setRecipients(Message.RecipientType.CC, InternetAddress.parse(value));
+                    break;
+                case EmailConstants.TRANSPORT_MAIL_HEADER_BCC:
+                    message.setRecipients(Message.RecipientType.BCC, InternetAddress.parse(value));
+                    break;
+                case EmailConstants.TRANSPORT_MAIL_HEADER_SUBJECT:
+                    message.setSubject(value);
+                    break;
+                case EmailConstants.TRANSPORT_MAIL_HEADER_CONTENT_TYPE:
+                    break;
+                default:
+                    message.setHeader(header.getKey(), value);
+            }
+        }
+        String contentType = headers.getOrDefault(EmailConstants.TRANSPORT_MAIL_HEADER_CONTENT_TYPE,
+                EmailConstants.MAIL_PUBLISHER_DEFAULT_CONTENT_TYPE);
+        if (attachments != null) {
+            MimeMultipart multipart = new MimeMultipart();
+            MimeBodyPart body = new MimeBodyPart();
+            if (rawContent != null) {
+                body.setDataHandler(new DataHandler(new ByteArrayDataSource(rawContent, contentType)));
+            } else {
+                body.setContent(content, contentType);
+            }
+            multipart.addBodyPart(body);
+            for (String attachment : attachments) {
+                MimeBodyPart attachmentPart = new MimeBodyPart();
+                attachmentPart.attachFile(attachment.trim());
+                multipart.addBodyPart(attachmentPart);
+            }
+            message.setContent(multipart);
+        } else if (rawContent != null) {
+            message.setDataHandler(new DataHandler(new ByteArrayDataSource(rawContent, contentType)));
+        } else {
+            message.setContent(content, contentType);
+        }
+        message.saveChanges();
+        return message;
+    }
+}
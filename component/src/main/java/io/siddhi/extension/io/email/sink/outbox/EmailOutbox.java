@@ -0,0 +1,268 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.outbox;
+
+import io.siddhi.core.exception.ConnectionUnavailableException;
+import io.siddhi.extension.io.email.sink.RenderedEmail;
+import io.siddhi.extension.io.email.sink.transport.EmailPriorityGate;
+import io.siddhi.extension.io.email.util.EmailConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable outbox of the email sink. Emails are appended to a journal on disk when they are published, and sender
+ * workers drain the journal and send them to the SMTP server. An email is acknowledged in the journal only after
+ * it is sent, so the emails which are not sent yet survive a restart of the Siddhi application. The workers take
+ * the pending emails by their priority lanes, and in the order in which they were appended within a lane.
+ */
+public class EmailOutbox {
+    private static final Logger log = LogManager.getLogger(EmailOutbox.class);
+    private static final long INITIAL_RETRY_INTERVAL = 1000;
+    private static final long MAX_RETRY_INTERVAL = 60000;
+
+    private final EmailOutboxJournal journal;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncInterval;
+    private final BlockingQueue<PendingEntry> pendingEntries = new PriorityBlockingQueue<>();
+    private ExecutorService workers;
+    private ScheduledExecutorService fsyncScheduler;
+
+    /**
+     * Policy on when the journal is flushed to the storage device.
+     */
+    public enum FsyncPolicy {
+        ALWAYS, INTERVAL, NEVER
+    }
+
+    /**
+     * Sends the emails drained from the outbox.
+     */
+    public interface EmailSender {
+        /**
+         * Send an email.
+         *
+         * @param email the email to be sent.
+         * @throws ConnectionUnavailableException if the SMTP server is unavailable. The email is retried later.
+         */
+        void send(RenderedEmail email) throws ConnectionUnavailableException;
+    }
+
+    /**
+     * @param directory     the directory holding the journal segments.
+     * @param segmentSize   the maximum size of a journal segment in bytes.
+     * @param fsyncPolicy   the policy on when the journal is flushed to the storage device.
+     * @param fsyncInterval the interval in milliseconds at which the journal is flushed, if the policy is
+     *                      {@link FsyncPolicy#INTERVAL}.
+     */
+    public EmailOutbox(File directory, long segmentSize, FsyncPolicy fsyncPolicy, long fsyncInterval) {
+        this.journal = new EmailOutboxJournal(directory, segmentSize);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncInterval = fsyncInterval;
+    }
+
+    /**
+     * Open the journal and start the sender workers. The emails which were not sent before the outbox was stopped
+     * are sent first within their priority lanes.
+     *
+     * @param sender      sender used by the workers to send the emails.
+     * @param workerCount number of concurrent sender workers.
+     * @throws IOException if the journal cannot be opened.
+     */
+    public synchronized void start(EmailSender sender, int workerCount) throws IOException {
+        start(sender, workerCount, Executors.newFixedThreadPool(workerCount));
+    }
+
+    /**
+     * Open the journal and start the sender workers on the given executor. The emails which were not sent before
+     * the outbox was stopped are sent first within their priority lanes.
+     *
+     * @param sender      sender used by the workers to send the emails.
+     * @param workerCount number of concurrent sender workers.
+     * @param executor    executor which runs the workers, and which is shut down when the outbox is stopped.
+     * @throws IOException if the journal cannot be opened.
+     */
+    public synchronized void start(EmailSender sender, int workerCount, ExecutorService executor)
+            throws IOException {
+        if (workers != null) {
+            executor.shutdown();
+            return;
+        }
+        List<EmailOutboxJournal.Entry> recoveredEntries;
+        try {
+            recoveredEntries = journal.open();
+        } catch (IOException e) {
+            executor.shutdown();
+            throw e;
+        }
+        if (!recoveredEntries.isEmpty()) {
+            log.info("Recovered " + recoveredEntries.size() + " unsent emails from the outbox.");
+        }
+        for (EmailOutboxJournal.Entry entry : recoveredEntries) {
+            EmailPriorityGate.Lane lane;
+            try {
+                lane = getLane(journal.read(entry));
+            } catch (IOException e) {
+                //The email is dropped when a worker fails to read it again.
+                lane = EmailPriorityGate.Lane.NORMAL;
+            }
+            pendingEntries.add(new PendingEntry(entry, lane));
+        }
+        workers = executor;
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(() -> drain(sender));
+        }
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            fsyncScheduler = Executors.newSingleThreadScheduledExecutor();
+            fsyncScheduler.scheduleWithFixedDelay(this::sync, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Append an email to the outbox. The email is sent asynchronously by the sender workers.
+     *
+     * @param email the email to be sent.
+     * @throws IOException if the email cannot be written to the journal.
+     */
+    public void append(RenderedEmail email) throws IOException {
+        EmailOutboxJournal.Entry entry = journal.append(email);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            journal.sync();
+        }
+        pendingEntries.add(new PendingEntry(entry, getLane(email)));
+    }
+
+    /**
+     * Stop the sender workers and close the journal. The emails which are not sent yet remain in the journal.
+     */
+    public synchronized void stop() {
+        if (workers == null) {
+            return;
+        }
+        workers.shutdownNow();
+        try {
+            if (!workers.awaitTermination(MAX_RETRY_INTERVAL, TimeUnit.MILLISECONDS)) {
+                log.warn("Outbox sender workers did not stop in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers = null;
+        if (fsyncScheduler != null) {
+            fsyncScheduler.shutdownNow();
+            fsyncScheduler = null;
+        }
+        sync();
+        pendingEntries.clear();
+        journal.close();
+    }
+
+    public int getPendingCount() {
+        return pendingEntries.size();
+    }
+
+    private void drain(EmailSender sender) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                EmailOutboxJournal.Entry entry = pendingEntries.take().entry;
+                RenderedEmail email;
+                try {
+                    email = journal.read(entry);
+                } catch (IOException e) {
+                    log.error("Dropping the email " + entry.getEmailId() + " since it cannot be read from the "
+                            + "outbox. " + e.getMessage(), e);
+                    acknowledge(entry);
+                    continue;
+                }
+                long retryInterval = INITIAL_RETRY_INTERVAL;
+                while (true) {
+                    try {
+                        sender.send(email);
+                        break;
+                    } catch (ConnectionUnavailableException e) {
+                        log.warn("Unable to send the email " + entry.getEmailId() + " from the outbox. Retrying in "
+                                + retryInterval + " ms. " + e.getMessage());
+                        Thread.sleep(retryInterval);
+                        retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL);
+                    } catch (RuntimeException e) {
+                        //The email cannot be sent even if it is retried. Therefore, it is dropped from the outbox.
+                        log.error("Dropping the email " + entry.getEmailId() + " from the outbox since it cannot be"
+                                + " sent. " + e.getMessage(), e);
+                        break;
+                    }
+                }
+                acknowledge(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acknowledge(EmailOutboxJournal.Entry entry) {
+        try {
+            journal.acknowledge(entry);
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                journal.sync();
+            }
+        } catch (IOException e) {
+            log.error("Error while acknowledging the email " + entry.getEmailId() + " in the outbox. The email "
+                    + "may be sent again after a restart. " + e.getMessage(), e);
+        }
+    }
+
+    private static EmailPriorityGate.Lane getLane(RenderedEmail email) {
+        return EmailPriorityGate.Lane.of(email.getHeader(EmailConstants.TRANSPORT_MAIL_HEADER_X_PRIORITY));
+    }
+
+    private void sync() {
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            log.error("Error while flushing the email outbox. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * An email waiting to be sent, ordered by its priority lane and then by its id in the journal.
+     */
+    private static class PendingEntry implements Comparable<PendingEntry> {
+        private final EmailOutboxJournal.Entry entry;
+        private final EmailPriorityGate.Lane lane;
+
+        private PendingEntry(EmailOutboxJournal.Entry entry, EmailPriorityGate.Lane lane) {
+            this.entry = entry;
+            this.lane = lane;
+        }
+
+        @Override
+        public int compareTo(PendingEntry other) {
+            int order = lane.compareTo(other.lane);
+            return order != 0 ? order : Long.compare(entry.getEmailId(), other.entry.getEmailId());
+        }
+    }
+}
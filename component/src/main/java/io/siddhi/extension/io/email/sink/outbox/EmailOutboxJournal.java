@@ -0,0 +1,408 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.outbox;
+
+import io.siddhi.extension.io.email.sink.RenderedEmail;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the emails in the outbox. The journal is split into segment files, each holding a
+ * sequence of records. A record is either an email, or an acknowledgement of an email that was sent. Segments are
+ * deleted from the head of the journal once all the emails in them are acknowledged.
+ * <p>
+ * Record layout: length (int), CRC32 of the body (int), and the body which contains the record type (byte),
+ * the email id (long) and the serialized email. The serialized email holds the headers, the content, the
+ * attachments, the deadline and the raw bytes of a binary payload, each of the variable length values prefixed by
+ * its length, which is -1 for a null value.
+ */
+class EmailOutboxJournal {
+    private static final Logger log = LogManager.getLogger(EmailOutboxJournal.class);
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte EMAIL_RECORD = 1;
+    private static final byte ACK_RECORD = 2;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File directory;
+    private final long segmentSize;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment activeSegment;
+    private long nextEmailId = 0;
+    private boolean dirty = false;
+
+    EmailOutboxJournal(File directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Open the journal and recover the emails which were not acknowledged before the journal was closed.
+     *
+     * @return the unacknowledged emails in the order they were appended.
+     * @throws IOException if the journal cannot be read.
+     */
+    synchronized List<Entry> open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the outbox directory: " + directory.getAbsolutePath());
+        }
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX));
+        Map<Long, Entry> pendingEntries = new LinkedHashMap<>();
+        long lastSequence = -1;
+        if (files != null) {
+            TreeMap<Long, File> segmentFiles = new TreeMap<>();
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    segmentFiles.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring the unknown file '" + file.getAbsolutePath() + "' in the outbox directory.");
+                }
+            }
+            for (Map.Entry<Long, File> segmentFile : segmentFiles.entrySet()) {
+                Segment segment = new Segment(segmentFile.getKey(), segmentFile.getValue());
+                segments.put(segment.sequence, segment);
+                recover(segment, pendingEntries);
+                lastSequence = segment.sequence;
+            }
+        }
+        for (Entry entry : pendingEntries.values()) {
+            entry.segment.pendingEmails++;
+        }
+        activeSegment = createSegment(lastSequence + 1);
+        compact();
+        return new ArrayList<>(pendingEntries.values());
+    }
+
+    /**
+     * Append an email to the journal.
+     *
+     * @param email the email to be sent.
+     * @return the journal entry of the email.
+     * @throws IOException if the email cannot be written.
+     */
+    synchronized Entry append(RenderedEmail email) throws IOException {
+        if (activeSegment == null) {
+            throw new IOException("The outbox journal in " + directory.getAbsolutePath() + " is closed.");
+        }
+        long emailId = nextEmailId++;
+        byte[] body = encode(EMAIL_RECORD, emailId, email);
+        rollIfRequired(body.length);
+        long position = activeSegment.write(body);
+        activeSegment.pendingEmails++;
+        dirty = true;
+        return new Entry(emailId, activeSegment, position + RECORD_HEADER_SIZE, body.length);
+    }
+
+    /**
+     * Acknowledge an email which was sent, so that it is not recovered when the journal is opened again.
+     *
+     * @param entry the journal entry of the email.
+     * @throws IOException if the acknowledgement cannot be written.
+     */
+    synchronized void acknowledge(Entry entry) throws IOException {
+        byte[] body = encode(ACK_RECORD, entry.emailId, null);
+        rollIfRequired(body.length);
+        activeSegment.write(body);
+        entry.segment.pendingEmails--;
+        dirty = true;
+        compact();
+    }
+
+    /**
+     * Read the email of a journal entry.
+     *
+     * @param entry the journal entry of the email.
+     * @return the email.
+     * @throws IOException if the email cannot be read.
+     */
+    RenderedEmail read(Entry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        FileChannel channel = entry.segment.channel;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the outbox segment: " + entry.segment.file);
+            }
+        }
+        return decode(new DataInputStream(new ByteArrayInputStream(buffer.array())));
+    }
+
+    /**
+     * Flush the appended records to the storage device.
+     *
+     * @throws IOException if the records cannot be flushed.
+     */
+    synchronized void sync() throws IOException {
+        if (dirty && activeSegment != null) {
+            activeSegment.channel.force(false);
+            dirty = false;
+        }
+    }
+
+    synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        activeSegment = null;
+    }
+
+    private void rollIfRequired(int recordLength) throws IOException {
+        if (activeSegment.size > 0 && activeSegment.size + RECORD_HEADER_SIZE + recordLength > segmentSize) {
+            sync();
+            activeSegment = createSegment(activeSegment.sequence + 1);
+            compact();
+        }
+    }
+
+    private Segment createSegment(long sequence) throws IOException {
+        File file = new File(directory, String.format(Locale.ENGLISH, "%s%020d%s", SEGMENT_PREFIX, sequence,
+                SEGMENT_SUFFIX));
+        Segment segment = new Segment(sequence, file);
+        segments.put(sequence, segment);
+        return segment;
+    }
+
+    /**
+     * Delete the segments at the head of the journal which have no pending emails. Segments are only deleted from
+     * the head, so that the acknowledgements of the emails in the remaining segments are never lost.
+     */
+    private void compact() {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == activeSegment || segment.pendingEmails > 0) {
+                return;
+            }
+            segment.close();
+            if (!segment.file.delete()) {
+                log.warn("Unable to delete the outbox segment: " + segment.file.getAbsolutePath());
+            }
+            iterator.remove();
+        }
+    }
+
+    private void recover(Segment segment, Map<Long, Entry> pendingEntries) throws IOException {
+        long position = 0;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(segment.file))) {
+            DataInputStream dataInputStream = new DataInputStream(inputStream);
+            CRC32 crc32 = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = dataInputStream.readInt();
+                } catch (EOFException e) {
+                    if (position < segment.size) {
+                        throw new EOFException("Incomplete record header at position " + position);
+                    }
+                    break;
+                }
+                int checksum = dataInputStream.readInt();
+                if (length < 9 || position + RECORD_HEADER_SIZE + length > segment.size) {
+                    throw new IOException("Invalid record length " + length + " at position " + position);
+                }
+                byte[] body = new byte[length];
+                dataInputStream.readFully(body);
+                crc32.reset();
+                crc32.update(body, 0, length);
+                if ((int) crc32.getValue() != checksum) {
+                    throw new IOException("Checksum mismatch at position " + position);
+                }
+                long emailId = ByteBuffer.wrap(body, 1, 8).getLong();
+                if (body[0] == EMAIL_RECORD) {
+                    pendingEntries.put(emailId, new Entry(emailId, segment, position + RECORD_HEADER_SIZE, length));
+                } else {
+                    pendingEntries.remove(emailId);
+                }
+                nextEmailId = Math.max(nextEmailId, emailId + 1);
+                position += RECORD_HEADER_SIZE + length;
+            }
+        } catch (IOException e) {
+            //A record which was partially written when the process stopped is discarded.
+            log.warn("Discarding the incomplete records after position " + position + " of the outbox segment: "
+                    + segment.file.getAbsolutePath() + ". " + e.getMessage());
+            segment.channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    private static byte[] encode(byte type, long emailId, RenderedEmail email) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeByte(type);
+        dataOutputStream.writeLong(emailId);
+        if (email != null) {
+            dataOutputStream.writeInt(email.getHeaders().size());
+            for (Map.Entry<String, String> header : email.getHeaders().entrySet()) {
+                writeString(dataOutputStream, header.getKey());
+                writeString(dataOutputStream, header.getValue());
+            }
+            writeString(dataOutputStream, email.getContent());
+            List<String> attachments = email.getAttachments();
+            dataOutputStream.writeInt(attachments == null ? -1 : attachments.size());
+            if (attachments != null) {
+                for (String attachment : attachments) {
+                    writeString(dataOutputStream, attachment);
+                }
+            }
+            dataOutputStream.writeLong(email.getDeadline());
+            writeBytes(dataOutputStream, email.getRawContent());
+        }
+        dataOutputStream.flush();
+        return outputStream.toByteArray();
+    }
+
+    private static RenderedEmail decode(DataInputStream dataInputStream) throws IOException {
+        dataInputStream.readByte();
+        dataInputStream.readLong();
+        int headerCount = dataInputStream.readInt();
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readString(dataInputStream), readString(dataInputStream));
+        }
+        String content = readString(dataInputStream);
+        int attachmentCount = dataInputStream.readInt();
+        List<String> attachments = null;
+        if (attachmentCount >= 0) {
+            attachments = new ArrayList<>(attachmentCount);
+            for (int i = 0; i < attachmentCount; i++) {
+                attachments.add(readString(dataInputStream));
+            }
+        }
+        //The records written before the deadlines and the raw content were introduced end earlier.
+        long deadline = dataInputStream.available() >= Long.BYTES ? dataInputStream.readLong() : 0;
+        byte[] rawContent = dataInputStream.available() >= Integer.BYTES ? readBytes(dataInputStream) : null;
+        return new RenderedEmail(headers, content, rawContent, attachments, deadline);
+    }
+
+    private static void writeString(DataOutputStream dataOutputStream, String value) throws IOException {
+        writeBytes(dataOutputStream, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream dataInputStream) throws IOException {
+        byte[] bytes = readBytes(dataInputStream);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream dataOutputStream, byte[] value) throws IOException {
+        if (value == null) {
+            dataOutputStream.writeInt(-1);
+        } else {
+            dataOutputStream.writeInt(value.length);
+            dataOutputStream.write(value);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream dataInputStream) throws IOException {
+        int length = dataInputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        dataInputStream.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Location of an email in the journal.
+     */
+    static class Entry {
+        private final long emailId;
+        private final Segment segment;
+        private final long position;
+        private final int length;
+
+        private Entry(long emailId, Segment segment, long position, int length) {
+            this.emailId = emailId;
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+        }
+
+        long getEmailId() {
+            return emailId;
+        }
+    }
+
+    /**
+     * A segment file of the journal.
+     */
+    private static class Segment {
+        private final long sequence;
+        private final File file;
+        private final FileChannel channel;
+        private final CRC32 crc32 = new CRC32();
+        private long size;
+        private int pendingEmails = 0;
+
+        Segment(long sequence, File file) throws IOException {
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.size = channel.size();
+        }
+
+        long write(byte[] body) throws IOException {
+            crc32.reset();
+            crc32.update(body, 0, body.length);
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+            buffer.putInt(body.length).putInt((int) crc32.getValue()).put(body);
+            buffer.flip();
+            long position = size;
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer, size);
+            }
+            return position;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error while closing the outbox segment: " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.sink.smtp;
+
+import io.siddhi.extension.io.email.nio.EmailEventLoop;
+import io.siddhi.extension.io.email.util.EmailConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Non-blocking SMTP client of a relay of the email sink. The emails are sent through a bounded number of SMTP
+ * sessions, which are multiplexed on the thread of an event loop instead of holding a thread each, and the result
+ * of each send is returned as a future. The emails which are sent while all the sessions are busy are queued, and
+ * are sent through the first session which becomes ready. The futures are completed on the thread of the event
+ * loop, so that their dependent actions should not block.
+ * <p>
+ * The client sends the emails in plain text, and does not support SSL or STARTTLS.
+ */
+public class EmailSmtpClient implements EmailEventLoop.Ticker {
+    private static final Logger log = LogManager.getLogger(EmailSmtpClient.class);
+    private static final String[] IGNORED_HEADERS = {"Bcc", "Content-Length"};
+    private static final long IDLE_TIMEOUT = 60000;
+    //Replies awaited to open a session: the greeting, EHLO or HELO, and up to three replies of AUTH LOGIN.
+    private static final int SESSION_REPLIES = 6;
+    //Replies awaited to send an email, besides those of RCPT TO: RSET, MAIL FROM, DATA and the end of the content.
+    private static final int TRANSACTION_REPLIES = 4;
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final boolean authEnabled;
+    private final int maxSessions;
+    private final long connectTimeout;
+    private final long readTimeout;
+    private final long writeTimeout;
+    private final long waitTimeout;
+    private final long maxMessages;
+    private final long maxLifetime;
+    private final String localHost;
+    private final EmailEventLoop eventLoop;
+    private final Deque<Transaction> queuedTransactions = new ArrayDeque<>();
+    private final List<EmailSmtpSession> sessions = new ArrayList<>();
+    private final Deque<EmailSmtpSession> idleSessions = new ArrayDeque<>();
+    private boolean closed = false;
+
+    /**
+     * @param host       host name of the SMTP server.
+     * @param port       port of the SMTP server.
+     * @param properties properties of the email client connectors of the relay, which give the credentials, the
+     *                   timeouts, the number of sessions and their rotation.
+     * @param eventLoop  the event loop on which the sessions of the client are run.
+     */
+    public EmailSmtpClient(String host, int port, Map<String, String> properties, EmailEventLoop eventLoop) {
+        this.host = host;
+        this.port = port;
+        this.username = properties.get(EmailConstants.TRANSPORT_MAIL_PUBLISHER_USERNAME);
+        this.password = properties.get(EmailConstants.TRANSPORT_MAIL_PUBLISHER_PASSWORD);
+        this.authEnabled = Boolean.parseBoolean(properties.get(EmailConstants.TRANSPORT_MAIL_PUBLISHER_AUTH_ENABLE));
+        this.maxSessions = Integer.parseInt(properties.get(EmailConstants.PUBLISHER_POOL_SIZE));
+        this.connectTimeout = Long.parseLong(properties.getOrDefault(
+                EmailConstants.TRANSPORT_MAIL_PUBLISHER_CONNECTION_TIMEOUT, EmailConstants.DEFAULT_CONNECTION_TIMEOUT));
+        this.readTimeout = Long.parseLong(properties.getOrDefault(EmailConstants.TRANSPORT_MAIL_PUBLISHER_TIMEOUT,
+                EmailConstants.DEFAULT_READ_TIMEOUT));
+        this.writeTimeout = Long.parseLong(properties.getOrDefault(
+                EmailConstants.TRANSPORT_MAIL_PUBLISHER_WRITE_TIMEOUT, EmailConstants.DEFAULT_WRITE_TIMEOUT));
+        this.waitTimeout = Long.parseLong(properties.getOrDefault(EmailConstants.POOL_WAIT_TIMEOUT, "-1"));
+        this.maxMessages = Long.parseLong(properties.getOrDefault(EmailConstants.CONNECTION_MAX_MESSAGES,
+                EmailConstants.DEFAULT_CONNECTION_MAX_MESSAGES));
+        this.maxLifetime = Long.parseLong(properties.getOrDefault(EmailConstants.CONNECTION_MAX_LIFETIME,
+                EmailConstants.DEFAULT_CONNECTION_MAX_LIFETIME));
+        this.localHost = getLocalHostName();
+        this.eventLoop = eventLoop;
+        eventLoop.execute(() -> eventLoop.addTicker(this));
+    }
+
+    /**
+     * Send an email. The email is encoded on the calling thread, and it is sent on the event loop.
+     *
+     * @param message the email to be sent.
+     * @return future which is completed when the SMTP server accepts the email. It fails with an IOException if
+     * the server is unavailable or times out, with a SMTPSendFailedException if the server rejects a command,
+     * and with a SendFailedException if the server rejects a recipient permanently.
+     * @throws MessagingException if the email has no recipients, or it cannot be encoded.
+     * @throws IOException        if the content of the email cannot be read.
+     */
+    public CompletableFuture<Void> send(MimeMessage message) throws MessagingException, IOException {
+        Address[] recipientAddresses = message.getAllRecipients();
+        if (recipientAddresses == null || recipientAddresses.length == 0) {
+            throw new SendFailedException("No recipient addresses.");
+        }
+        List<String> recipients = new ArrayList<>(recipientAddresses.length);
+        for (Address recipient : recipientAddresses) {
+            recipients.add(getAddress(recipient));
+        }
+        Address[] from = message.getFrom();
+        String sender = from != null && from.length > 0 ? getAddress(from[0]) : "";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out, IGNORED_HEADERS);
+        Transaction transaction = new Transaction(sender, recipients, toDataContent(out.toByteArray()));
+        eventLoop.execute(() -> enqueue(transaction));
+        return transaction.getFuture();
+    }
+
+    /**
+     * Get the time within which a send through this client completes, unless the event loop stalls. It covers the
+     * wait for a session, the connect and the greeting of a new session, and a reply to each command of the email.
+     *
+     * @param recipients the number of recipients of the email.
+     * @return the time in milliseconds, or Long.MAX_VALUE if a send may wait indefinitely for a session.
+     */
+    public long getSendTimeout(int recipients) {
+        if (waitTimeout < 0) {
+            return Long.MAX_VALUE;
+        }
+        return waitTimeout + connectTimeout + writeTimeout
+                + readTimeout * (SESSION_REPLIES + TRANSACTION_REPLIES + recipients);
+    }
+
+    /**
+     * Close the client. The queued emails and the emails which are being sent fail, and the sessions are closed
+     * with QUIT.
+     */
+    public void close() {
+        eventLoop.execute(() -> {
+            closed = true;
+            eventLoop.removeTicker(this);
+            failQueuedTransactions(new IOException("SMTP client of the server: " + this + " is closed."));
+            for (EmailSmtpSession session : new ArrayList<>(sessions)) {
+                session.quit();
+            }
+            sessions.clear();
+            idleSessions.clear();
+        });
+    }
+
+    private void enqueue(Transaction transaction) {
+        if (closed) {
+            transaction.getFuture().completeExceptionally(new IOException("SMTP client of the server: " + this
+                    + " is closed."));
+            return;
+        }
+        queuedTransactions.add(transaction);
+        dispatch();
+    }
+
+    /**
+     * Hand over the queued emails to the idle sessions, and open new sessions for the rest, up to the maximum
+     * number of sessions.
+     */
+    private void dispatch() {
+        removeCancelledTransactions();
+        while (!queuedTransactions.isEmpty() && !idleSessions.isEmpty()) {
+            idleSessions.poll().begin(queuedTransactions.poll());
+            removeCancelledTransactions();
+        }
+        int connectingSessions = 0;
+        for (EmailSmtpSession session : sessions) {
+            if (!session.isEstablished()) {
+                connectingSessions++;
+            }
+        }
+        int newSessions = Math.min(queuedTransactions.size() - connectingSessions, maxSessions - sessions.size());
+        for (int i = 0; i < newSessions && !closed; i++) {
+            openSession();
+        }
+    }
+
+    private void openSession() {
+        EmailSmtpSession session = null;
+        try {
+            session = new EmailSmtpSession(this);
+            sessions.add(session);
+            session.connect(new InetSocketAddress(host, port));
+        } catch (IOException | RuntimeException e) {
+            if (session != null) {
+                sessions.remove(session);
+                session.quit();
+            }
+            if (!hasEstablishedSessions()) {
+                failQueuedTransactions(e instanceof IOException ? (IOException) e
+                        : new IOException("Unable to connect to the SMTP server: " + this + ". " + e.getMessage(), e));
+            }
+        }
+    }
+
+    /**
+     * Called by a session on the event loop when it becomes ready to send an email.
+     */
+    void onSessionReady(EmailSmtpSession session) {
+        long now = System.currentTimeMillis();
+        if (closed || (maxMessages > 0 && session.getSentMessages() >= maxMessages)
+                || (maxLifetime > 0 && now - session.getCreatedAt() >= maxLifetime)) {
+            sessions.remove(session);
+            session.quit();
+            if (!closed) {
+                dispatch();
+            }
+            return;
+        }
+        removeCancelledTransactions();
+        Transaction transaction = queuedTransactions.poll();
+        if (transaction != null) {
+            session.begin(transaction);
+        } else {
+            idleSessions.add(session);
+        }
+    }
+
+    /**
+     * Called by a session on the event loop when it fails. If none of the sessions could be established, the
+     * queued emails fail with the error, since the SMTP server is unavailable.
+     */
+    void onSessionFailed(EmailSmtpSession session, Exception error) {
+        sessions.remove(session);
+        idleSessions.remove(session);
+        if (closed) {
+            return;
+        }
+        if (!session.isEstablished() && !hasEstablishedSessions()) {
+            failQueuedTransactions(error);
+        } else {
+            dispatch();
+        }
+    }
+
+    /**
+     * Called by the event loop periodically to time out the sessions and the queued emails, and to close the idle
+     * sessions.
+     */
+    @Override
+    public void onTick(long now) {
+        for (EmailSmtpSession session : new ArrayList<>(sessions)) {
+            session.onTick(now);
+        }
+        Iterator<EmailSmtpSession> idle = idleSessions.iterator();
+        while (idle.hasNext()) {
+            EmailSmtpSession session = idle.next();
+            if (now - session.getLastUsed() >= IDLE_TIMEOUT
+                    || (maxLifetime > 0 && now - session.getCreatedAt() >= maxLifetime)) {
+                idle.remove();
+                sessions.remove(session);
+                session.quit();
+            }
+        }
+        while (waitTimeout >= 0 && !queuedTransactions.isEmpty()
+                && now - queuedTransactions.peek().getCreatedAt() >= waitTimeout) {
+            queuedTransactions.poll().getFuture().completeExceptionally(new SocketTimeoutException("Timed out "
+                    + "waiting for a session to the SMTP server: " + this + "."));
+        }
+    }
+
+    private boolean hasEstablishedSessions() {
+        for (EmailSmtpSession session : sessions) {
+            if (session.isEstablished()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the queued emails at the head of the queue whose futures are cancelled, since the sender stopped
+     * waiting for them and may send them again.
+     */
+    private void removeCancelledTransactions() {
+        while (!queuedTransactions.isEmpty() && queuedTransactions.peek().getFuture().isCancelled()) {
+            queuedTransactions.poll();
+        }
+    }
+
+    private void failQueuedTransactions(Exception error) {
+        Transaction transaction;
+        while ((transaction = queuedTransactions.poll()) != null) {
+            transaction.getFuture().completeExceptionally(error);
+        }
+    }
+
+    EmailEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    String getLocalHost() {
+        return localHost;
+    }
+
+    boolean isAuthEnabled() {
+        return authEnabled;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    String getPassword() {
+        return password;
+    }
+
+    long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    long getReadTimeout() {
+        return readTimeout;
+    }
+
+    long getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+
+    /**
+     * Convert an encoded email to the content of the DATA command. The line breaks are converted to CRLF, the lines
+     * starting with a dot are escaped with another dot, and the content is terminated with a line holding a single
+     * dot.
+     *
+     * @param message the encoded email.
+     * @return the content of the DATA command.
+     */
+    static ByteBuffer toDataContent(byte[] message) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(message.length + message.length / 64 + 8);
+        boolean lineStart = true;
+        for (int i = 0; i < message.length; i++) {
+            byte b = message[i];
+            if (b == '\r' || b == '\n') {
+                if (b == '\r' && i + 1 < message.length && message[i + 1] == '\n') {
+                    i++;
+                }
+                content.write('\r');
+                content.write('\n');
+                lineStart = true;
+                continue;
+            }
+            if (lineStart && b == '.') {
+                content.write('.');
+            }
+            content.write(b);
+            lineStart = false;
+        }
+        if (!lineStart) {
+            content.write('\r');
+            content.write('\n');
+        }
+        content.write('.');
+        content.write('\r');
+        content.write('\n');
+        return ByteBuffer.wrap(content.toByteArray());
+    }
+
+    private static String getAddress(Address address) {
+        return address instanceof InternetAddress ? ((InternetAddress) address).getAddress() : address.toString();
+    }
+
+    private static String getLocalHostName() {
+        try {
+            String name = InetAddress.getLocalHost().getCanonicalHostName();
+            if (name != null && !name.isEmpty()) {
+                return name;
+            }
+        } catch (UnknownHostException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to resolve the local host name. Using 'localhost' in EHLO. " + e.getMessage());
+            }
+        }
+        return "localhost";
+    }
+
+    /**
+     * An email which is queued or being sent by the client.
+     */
+    static class Transaction {
+        private final String sender;
+        private final List<String> recipients;
+        private final ByteBuffer content;
+        private final long createdAt = System.currentTimeMillis();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Transaction(String sender, List<String> recipients, ByteBuffer content) {
+            this.sender = sender;
+            this.recipients = recipients;
+            this.content = content;
+        }
+
+        String getSender() {
+            return sender;
+        }
+
+        List<String> getRecipients() {
+            return recipients;
+        }
+
+        ByteBuffer getContent() {
+            return content.duplicate();
+        }
+
+        long getCreatedAt() {
+            return createdAt;
+        }
+
+        CompletableFuture<Void> getFuture() {
+            return future;
+        }
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.sink.smtp;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import io.siddhi.extension.io.email.nio.EmailEventLoop;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.SendFailedException;
+
+/**
+ * A SMTP session of a non-blocking SMTP client, which is driven by the readiness events of its channel on the event
+ * loop of the client. The session greets the server with EHLO, authenticates with AUTH PLAIN or AUTH LOGIN if the
+ * client has credentials, and then sends the emails handed over by the client one after the other. If the server
+ * supports PIPELINING, the MAIL FROM and all the RCPT TO commands of an email are written at once, so that an
+ * email is sent in three round trips regardless of the number of its recipients. DATA is only written after all
+ * the recipients are accepted, so that an email is either sent to all its recipients or to none of them.
+ */
+class EmailSmtpSession implements EmailEventLoop.Handler {
+    private static final Logger log = LogManager.getLogger(EmailSmtpSession.class);
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * States of the session. Each state except READY and CLOSED waits for the reply of a command.
+     */
+    enum State {
+        CONNECTING, GREETING, EHLO, HELO, AUTH, AUTH_USERNAME, AUTH_PASSWORD, READY, ENVELOPE, DATA, CONTENT, RSET,
+        CLOSED
+    }
+
+    private final EmailSmtpClient client;
+    private final SocketChannel channel;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ByteArrayOutputStream replyLine = new ByteArrayOutputStream();
+    private final List<String> replyLines = new ArrayList<>();
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final Deque<String> pendingCommands = new ArrayDeque<>();
+    private final Deque<String> unsentCommands = new ArrayDeque<>();
+    private final long createdAt = System.currentTimeMillis();
+    private SelectionKey key;
+    private State state = State.CONNECTING;
+    private boolean established = false;
+    private boolean pipelining = false;
+    private Set<String> authMechanisms = Collections.emptySet();
+    private EmailSmtpClient.Transaction transaction;
+    private Exception transactionError;
+    private long deadline = 0;
+    private long lastUsed = createdAt;
+    private long sentMessages = 0;
+
+    EmailSmtpSession(EmailSmtpClient client) throws IOException {
+        this.client = client;
+        this.channel = SocketChannel.open();
+    }
+
+    /**
+     * Start connecting to the SMTP server. Called on the event loop.
+     *
+     * @param address address of the SMTP server.
+     * @throws IOException if the connection cannot be initiated.
+     */
+    void connect(InetSocketAddress address) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        deadline = System.currentTimeMillis() + client.getConnectTimeout();
+        if (channel.connect(address)) {
+            key = client.getEventLoop().register(channel, SelectionKey.OP_READ, this);
+            onConnected();
+        } else {
+            key = client.getEventLoop().register(channel, SelectionKey.OP_CONNECT, this);
+        }
+    }
+
+    /**
+     * Send an email through the session, which should be ready. Called on the event loop.
+     *
+     * @param transaction the email to be sent.
+     */
+    void begin(EmailSmtpClient.Transaction transaction) {
+        this.transaction = transaction;
+        this.transactionError = null;
+        state = State.ENVELOPE;
+        unsentCommands.add("MAIL FROM:<" + transaction.getSender() + ">");
+        for (String recipient : transaction.getRecipients()) {
+            unsentCommands.add("RCPT TO:<" + recipient + ">");
+        }
+        try {
+            if (pipelining) {
+                StringBuilder commands = new StringBuilder();
+                while (!unsentCommands.isEmpty()) {
+                    String command = unsentCommands.poll();
+                    pendingCommands.add(command);
+                    commands.append(command).append("\r\n");
+                }
+                write(ByteBuffer.wrap(commands.toString().getBytes(StandardCharsets.UTF_8)));
+            } else {
+                sendCommand(unsentCommands.poll());
+            }
+            updateDeadline();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Handle the readiness events of the channel. Called on the event loop.
+     */
+    @Override
+    public void onSelected(SelectionKey selectedKey) {
+        try {
+            if (selectedKey.isValid() && selectedKey.isConnectable()) {
+                if (!channel.finishConnect()) {
+                    return;
+                }
+                selectedKey.interestOps(SelectionKey.OP_READ);
+                onConnected();
+            }
+            if (selectedKey.isValid() && selectedKey.isWritable()) {
+                flush();
+            }
+            if (selectedKey.isValid() && selectedKey.isReadable()) {
+                read();
+            }
+            updateDeadline();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Fail the session if it waited for the SMTP server longer than the timeout. Called on the event loop.
+     */
+    void onTick(long now) {
+        if (state != State.CLOSED && deadline > 0 && now >= deadline) {
+            fail(new SocketTimeoutException("Timed out waiting for the SMTP server: " + client + " in the state: "
+                    + state + "."));
+        }
+    }
+
+    /**
+     * Close the session gracefully with QUIT. An email which is being sent through the session fails.
+     */
+    void quit() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (transaction != null) {
+            complete(new IOException("SMTP session to the server: " + client + " is closed."));
+        }
+        if (established) {
+            try {
+                channel.write(ByteBuffer.wrap("QUIT\r\n".getBytes(StandardCharsets.US_ASCII)));
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to send QUIT to the SMTP server: " + client + ". " + e.getMessage());
+                }
+            }
+        }
+        close();
+    }
+
+    boolean isEstablished() {
+        return established;
+    }
+
+    boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    long getSentMessages() {
+        return sentMessages;
+    }
+
+    private void onConnected() {
+        state = State.GREETING;
+        deadline = System.currentTimeMillis() + client.getReadTimeout();
+    }
+
+    private void read() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            throw new EOFException("Connection is closed by the SMTP server: " + client + ".");
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining() && state != State.CLOSED) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                onReplyLine();
+            } else if (b != '\r') {
+                replyLine.write(b);
+            }
+        }
+        readBuffer.clear();
+    }
+
+    private void onReplyLine() throws IOException {
+        String line = new String(replyLine.toByteArray(), StandardCharsets.UTF_8);
+        replyLine.reset();
+        int code;
+        try {
+            code = Integer.parseInt(line.substring(0, 3));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid reply from the SMTP server: " + client + ": " + line, e);
+        }
+        replyLines.add(line.length() > 4 ? line.substring(4) : "");
+        if (line.length() > 3 && line.charAt(3) == '-') {
+            return;
+        }
+        List<String> lines = new ArrayList<>(replyLines);
+        replyLines.clear();
+        onReply(code, lines);
+    }
+
+    private void onReply(int code, List<String> lines) throws IOException {
+        switch (state) {
+            case GREETING:
+                if (code != 220) {
+                    throw new IOException("SMTP server: " + client + " refused the session: " + code + " "
+                            + String.join(" ", lines));
+                }
+                state = State.EHLO;
+                sendCommand("EHLO " + client.getLocalHost());
+                break;
+            case EHLO:
+                if (code == 250) {
+                    onHello(lines.subList(1, lines.size()));
+                } else if (code >= 500) {
+                    state = State.HELO;
+                    sendCommand("HELO " + client.getLocalHost());
+                } else {
+                    throw new IOException("SMTP server: " + client + " rejected EHLO: " + code + " "
+                            + String.join(" ", lines));
+                }
+                break;
+            case HELO:
+                if (code != 250) {
+                    throw new IOException("SMTP server: " + client + " rejected HELO: " + code + " "
+                            + String.join(" ", lines));
+                }
+                onHello(Collections.emptyList());
+                break;
+            case AUTH_USERNAME:
+            case AUTH_PASSWORD:
+            case AUTH:
+                onAuthReply(code, lines);
+                break;
+            case ENVELOPE:
+                onEnvelopeReply(code, lines);
+                break;
+            case DATA:
+                if (code == 354) {
+                    state = State.CONTENT;
+                    write(transaction.getContent());
+                } else {
+                    transactionError = new SMTPSendFailedException("DATA", code, code + " "
+                            + String.join(" ", lines), null, null, null, null);
+                    reset();
+                }
+                break;
+            case CONTENT:
+                if (code == 250) {
+                    sentMessages++;
+                    complete(null);
+                } else {
+                    complete(new SMTPSendFailedException("DATA", code, code + " " + String.join(" ", lines), null,
+                            null, null, null));
+                }
+                ready();
+                break;
+            case RSET:
+                if (code != 250) {
+                    throw new IOException("SMTP server: " + client + " rejected RSET: " + code + " "
+                            + String.join(" ", lines));
+                }
+                ready();
+                break;
+            default:
+                //A reply while the session is idle, such as 421 when the server closes an idle session.
+                throw new IOException("SMTP server: " + client + " closed the session: " + code + " "
+                        + String.join(" ", lines));
+        }
+    }
+
+    private void onHello(List<String> extensions) throws IOException {
+        Set<String> mechanisms = new HashSet<>();
+        for (String extension : extensions) {
+            String[] tokens = extension.trim().toUpperCase(Locale.ENGLISH).split("[ =]+");
+            if (tokens[0].equals("PIPELINING")) {
+                pipelining = true;
+            } else if (tokens[0].equals("AUTH")) {
+                mechanisms.addAll(Arrays.asList(tokens).subList(1, tokens.length));
+            }
+        }
+        authMechanisms = mechanisms;
+        if (!client.isAuthEnabled()) {
+            established = true;
+            ready();
+        } else if (authMechanisms.contains("PLAIN")) {
+            state = State.AUTH;
+            sendCommand("AUTH PLAIN " + encode("\0" + client.getUsername() + "\0" + client.getPassword()));
+        } else if (authMechanisms.contains("LOGIN")) {
+            state = State.AUTH_USERNAME;
+            sendCommand("AUTH LOGIN");
+        } else {
+            fail(new AuthenticationFailedException("SMTP server: " + client + " does not support the AUTH PLAIN "
+                    + "or AUTH LOGIN mechanisms."));
+        }
+    }
+
+    private void onAuthReply(int code, List<String> lines) throws IOException {
+        if (state == State.AUTH && code == 235) {
+            established = true;
+            ready();
+        } else if (state == State.AUTH_USERNAME && code == 334) {
+            state = State.AUTH_PASSWORD;
+            sendCommand(encode(client.getUsername()));
+        } else if (state == State.AUTH_PASSWORD && code == 334) {
+            state = State.AUTH;
+            sendCommand(encode(client.getPassword()));
+        } else {
+            fail(new AuthenticationFailedException(code + " " + String.join(" ", lines)));
+        }
+    }
+
+    private void onEnvelopeReply(int code, List<String> lines) throws IOException {
+        String command = pendingCommands.poll();
+        boolean recipient = command != null && command.startsWith("RCPT");
+        if (transactionError == null && code != 250 && !(recipient && code == 251)) {
+            String error = code + " " + String.join(" ", lines);
+            if (recipient && code >= 500) {
+                transactionError = new SendFailedException("Invalid address: "
+                        + command.substring("RCPT TO:".length()) + ". " + error);
+            } else {
+                transactionError = new SMTPSendFailedException(command, code, error, null, null, null, null);
+            }
+            unsentCommands.clear();
+        }
+        if (!pendingCommands.isEmpty()) {
+            return;
+        }
+        if (!unsentCommands.isEmpty()) {
+            sendCommand(unsentCommands.poll());
+        } else if (transactionError != null) {
+            reset();
+        } else {
+            state = State.DATA;
+            sendCommand("DATA");
+        }
+    }
+
+    private void reset() throws IOException {
+        complete(transactionError);
+        state = State.RSET;
+        sendCommand("RSET");
+    }
+
+    private void ready() {
+        state = State.READY;
+        lastUsed = System.currentTimeMillis();
+        deadline = 0;
+        client.onSessionReady(this);
+    }
+
+    private void complete(Exception error) {
+        EmailSmtpClient.Transaction completed = transaction;
+        transaction = null;
+        transactionError = null;
+        pendingCommands.clear();
+        unsentCommands.clear();
+        if (error == null) {
+            completed.getFuture().complete(null);
+        } else {
+            completed.getFuture().completeExceptionally(error);
+        }
+    }
+
+    private void sendCommand(String command) throws IOException {
+        if (state == State.ENVELOPE) {
+            pendingCommands.add(command);
+        }
+        write(ByteBuffer.wrap((command + "\r\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        writeQueue.add(buffer);
+        flush();
+    }
+
+    private void flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer buffer = writeQueue.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            writeQueue.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void updateDeadline() {
+        if (state == State.READY || state == State.CLOSED || state == State.CONNECTING) {
+            return;
+        }
+        deadline = System.currentTimeMillis()
+                + (writeQueue.isEmpty() ? client.getReadTimeout() : client.getWriteTimeout());
+    }
+
+    private void fail(Exception error) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("SMTP session to the server: " + client + " failed in the state: " + state + ". "
+                    + error.getMessage());
+        }
+        if (transaction != null) {
+            complete(error);
+        }
+        close();
+        client.onSessionFailed(this, error);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        deadline = 0;
+        writeQueue.clear();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error in closing the SMTP session to the server: " + client + ". " + e.getMessage());
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import com.sun.mail.util.MailConnectException;
+import io.siddhi.core.exception.ConnectionUnavailableException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Circuit breaker of the sends to a SMTP relay. The outcomes of the last sends are kept in a sliding window, and
+ * the circuit opens when the rate of the failed sends or the rate of the slow sends in the window reaches its
+ * threshold. While the circuit is open, the sends fail fast instead of waiting for the socket timeouts of a
+ * degraded relay. After the open duration, a limited number of trial sends are let through, and the circuit
+ * closes if all of them succeed, else it opens again.
+ */
+public class EmailCircuitBreaker {
+    private static final Logger log = LogManager.getLogger(EmailCircuitBreaker.class);
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String relay;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDuration;
+    private final long openDuration;
+    private final int trialSends;
+    private final boolean[] failedSends;
+    private final boolean[] slowSends;
+    private State state = State.CLOSED;
+    private int recordedSends = 0;
+    private int nextSend = 0;
+    private int failedSendCount = 0;
+    private int slowSendCount = 0;
+    private long openUntil = 0;
+    private int trialPermits = 0;
+    private int succeededTrialSends = 0;
+
+    /**
+     * @param relay                 'host:port' of the relay, used in the logs.
+     * @param windowSize            the number of the last sends whose outcomes are considered.
+     * @param failureRateThreshold  the percentage of the failed sends at which the circuit opens.
+     * @param slowCallRateThreshold the percentage of the slow sends at which the circuit opens.
+     * @param slowCallDuration      the time in milliseconds after which a send is considered slow.
+     * @param openDuration          the time in milliseconds for which the circuit stays open.
+     * @param trialSends            the number of sends let through while the circuit is half open.
+     */
+    public EmailCircuitBreaker(String relay, int windowSize, double failureRateThreshold,
+                               double slowCallRateThreshold, long slowCallDuration, long openDuration,
+                               int trialSends) {
+        this.relay = relay;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.openDuration = openDuration;
+        this.trialSends = trialSends;
+        this.failedSends = new boolean[windowSize];
+        this.slowSends = new boolean[windowSize];
+    }
+
+    /**
+     * Check whether the circuit lets the sends through, without acquiring a permission.
+     *
+     * @return false if the circuit is open, and the open duration has not elapsed.
+     */
+    public synchronized boolean isCallPermitted() {
+        return state != State.OPEN || System.currentTimeMillis() >= openUntil;
+    }
+
+    /**
+     * Acquire the permission to send an email. The outcome of the send should be recorded through
+     * {@link #onResult(long, Throwable)}.
+     *
+     * @return true if the send is let through.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialPermits = trialSends;
+            succeededTrialSends = 0;
+            log.info("Circuit of the SMTP relay " + relay + " is half open. Letting " + trialSends
+                    + " trial sends through.");
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialPermits <= 0) {
+                return false;
+            }
+            trialPermits--;
+        }
+        return true;
+    }
+
+    /**
+     * Record the outcome of a send let through by {@link #tryAcquirePermission()}. Errors which are not caused by
+     * the relay, such as an invalid recipient, are not considered as failures.
+     *
+     * @param latency   time taken by the send in nanoseconds.
+     * @param throwable the error thrown by the send, or null if the email was sent successfully.
+     */
+    public synchronized void onResult(long latency, Throwable throwable) {
+        if (throwable != null && !isRelayFailure(throwable)) {
+            if (state == State.HALF_OPEN) {
+                trialPermits++;
+            }
+            return;
+        }
+        boolean failed = throwable != null;
+        boolean slow = latency / 1000000 >= slowCallDuration;
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                open("a trial send " + (failed ? "failed" : "was slow"));
+            } else if (++succeededTrialSends >= trialSends) {
+                state = State.CLOSED;
+                resetWindow();
+                log.info("Circuit of the SMTP relay " + relay + " is closed.");
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (recordedSends == failedSends.length) {
+            failedSendCount -= failedSends[nextSend] ? 1 : 0;
+            slowSendCount -= slowSends[nextSend] ? 1 : 0;
+        } else {
+            recordedSends++;
+        }
+        failedSends[nextSend] = failed;
+        slowSends[nextSend] = slow;
+        failedSendCount += failed ? 1 : 0;
+        slowSendCount += slow ? 1 : 0;
+        nextSend = (nextSend + 1) % failedSends.length;
+        if (recordedSends == failedSends.length) {
+            double failureRate = failedSendCount * 100.0 / recordedSends;
+            double slowCallRate = slowSendCount * 100.0 / recordedSends;
+            if (failureRate >= failureRateThreshold) {
+                open("the failure rate " + failureRate + "% reached the threshold");
+            } else if (slowCallRate >= slowCallRateThreshold) {
+                open("the slow send rate " + slowCallRate + "% reached the threshold");
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + openDuration;
+        resetWindow();
+        log.warn("Circuit of the SMTP relay " + relay + " is open since " + reason + ". Failing the sends to the "
+                + "relay for " + openDuration + " ms.");
+    }
+
+    private void resetWindow() {
+        recordedSends = 0;
+        nextSend = 0;
+        failedSendCount = 0;
+        slowSendCount = 0;
+    }
+
+    /**
+     * Check whether an error thrown while sending an email is caused by the relay being unavailable or degraded.
+     *
+     * @param throwable the error thrown while sending the email.
+     * @return true if the error is a connection error, an I/O error such as a socket timeout, or a transient
+     * SMTP reply.
+     */
+    public static boolean isRelayFailure(Throwable throwable) {
+        if (throwable instanceof ConnectionUnavailableException || EmailConcurrencyLimiter.isThrottled(throwable)) {
+            return true;
+        }
+        Throwable cause = throwable;
+        while (cause != null) {
+            if (cause instanceof MailConnectException || cause instanceof IOException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+}
@@ -18,7 +18,6 @@
 
 package io.siddhi.extension.io.email.sink.transport;
 
-import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
 import org.wso2.transport.email.contract.EmailClientConnector;
 import org.wso2.transport.email.contract.EmailConnectorFactory;
 import org.wso2.transport.email.exception.EmailConnectorException;
@@ -29,31 +28,45 @@ import java.util.Map;
  * The abstract class that needs to be implemented when supporting a new non-secure transport
  * to mainly create, validate and terminate  the client to the endpoint.
  */
-public class EmailClientConnectionPoolFactory extends BaseKeyedPoolableObjectFactory {
+public class EmailClientConnectionPoolFactory implements EmailConnectionPool.ConnectionFactory {
+    private EmailConnectorFactory emailConnectorFactory;
+    private Map<String, String> clientProperties;
     private EmailClientConnector emailClientConnector;
 
     public EmailClientConnectionPoolFactory(EmailConnectorFactory emailConnectorFactory,
                                             Map<String, String> clientProperties) throws EmailConnectorException {
+        this.emailConnectorFactory = emailConnectorFactory;
+        this.clientProperties = clientProperties;
         emailClientConnector = emailConnectorFactory.createEmailClientConnector();
         emailClientConnector.init(clientProperties);
     }
 
     @Override
-    public Object makeObject(Object key) throws EmailConnectorException {
-        if (!emailClientConnector.isConnected()) {
-            emailClientConnector.connect();
+    public synchronized EmailClientConnector makeObject() throws EmailConnectorException {
+        //The connector initialized while creating the factory is handed out first, and each further pooled object
+        //gets its own connector so that concurrent sends do not share a single smtp session.
+        EmailClientConnector connector = emailClientConnector;
+        if (connector == null) {
+            connector = emailConnectorFactory.createEmailClientConnector();
+            connector.init(clientProperties);
+        } else {
+            emailClientConnector = null;
         }
-        return emailClientConnector;
+        if (!connector.isConnected()) {
+            connector.connect();
+        }
+        return connector;
     }
 
     @Override
-    public boolean validateObject(Object key, Object obj) {
-        return obj != null && ((EmailClientConnector) obj).isConnected();
+    public boolean validateObject(EmailClientConnector connector) {
+        return connector != null && connector.isConnected();
     }
 
-    public void destroyObject(Object key, Object obj) {
-        if (obj != null) {
-            ((EmailClientConnector) obj).disconnect();
+    @Override
+    public void destroyObject(EmailClientConnector connector) {
+        if (connector != null) {
+            connector.disconnect();
         }
     }
 }
@@ -19,39 +19,66 @@
 package io.siddhi.extension.io.email.sink.transport;
 
 import io.siddhi.extension.io.email.util.EmailConstants;
-import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.wso2.transport.email.contract.EmailConnectorFactory;
 import org.wso2.transport.email.exception.EmailConnectorException;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
- * This class is used hold the secure/non-secure connections for an Agent.
+ * This class is used hold the secure/non-secure connections for an Agent. A connection pool is kept per SMTP
+ * relay, and it is shared by all the email sinks that send emails through the relay.
  */
 
 public class EmailClientConnectionPoolManager {
-    private static GenericKeyedObjectPool connectionPool;
+    private static final Logger log = LogManager.getLogger(EmailClientConnectionPoolManager.class);
+    private static final Map<String, EmailConnectionPool> connectionPools = new HashMap<>();
+    private static final Map<String, Integer> references = new HashMap<>();
 
-    public static synchronized void initializeConnectionPool(EmailConnectorFactory emailConnectorFactory,
+    public static synchronized EmailConnectionPool initializeConnectionPool(String poolId,
+                                                EmailConnectorFactory emailConnectorFactory,
                                                 Map<String, String> clientProperties) throws EmailConnectorException {
-        EmailClientConnectionPoolFactory emailClientConnectionPoolFactory
-                = new EmailClientConnectionPoolFactory(emailConnectorFactory, clientProperties);
+        EmailConnectionPool connectionPool = connectionPools.get(poolId);
         if (connectionPool == null) {
+            EmailClientConnectionPoolFactory emailClientConnectionPoolFactory
+                    = new EmailClientConnectionPoolFactory(emailConnectorFactory, clientProperties);
             int poolSize = Integer.parseInt(clientProperties.get(EmailConstants.PUBLISHER_POOL_SIZE));
-            connectionPool = new GenericKeyedObjectPool();
-            connectionPool.setFactory(emailClientConnectionPoolFactory);
-            connectionPool.setMaxTotal(poolSize);
-            connectionPool.setMaxActive(poolSize);
-            connectionPool.setTestOnBorrow(true);
-            connectionPool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_BLOCK);
+            long maxWait = Long.parseLong(clientProperties.getOrDefault(EmailConstants.POOL_WAIT_TIMEOUT, "-1"));
+            long maxMessages = Long.parseLong(clientProperties.getOrDefault(EmailConstants.CONNECTION_MAX_MESSAGES,
+                    EmailConstants.DEFAULT_CONNECTION_MAX_MESSAGES));
+            long maxLifetime = Long.parseLong(clientProperties.getOrDefault(EmailConstants.CONNECTION_MAX_LIFETIME,
+                    EmailConstants.DEFAULT_CONNECTION_MAX_LIFETIME));
+            connectionPool = new EmailConnectionPool(emailClientConnectionPoolFactory, poolSize, maxWait,
+                    maxMessages, maxLifetime);
+            connectionPools.put(poolId, connectionPool);
         }
+        references.merge(poolId, 1, Integer::sum);
+        return connectionPool;
     }
 
-    public static GenericKeyedObjectPool getConnectionPool() {
-        return connectionPool;
+    public static synchronized EmailConnectionPool getConnectionPool(String poolId) {
+        return connectionPools.get(poolId);
     }
 
-    public static void uninitializeConnectionPool() {
-        connectionPool = null;
+    public static synchronized void uninitializeConnectionPool(String poolId) {
+        Integer count = references.get(poolId);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(poolId, count - 1);
+            return;
+        }
+        references.remove(poolId);
+        EmailConnectionPool connectionPool = connectionPools.remove(poolId);
+        if (connectionPool != null) {
+            try {
+                connectionPool.close();
+            } catch (RuntimeException e) {
+                log.error("Error in closing the email client connection pool: " + poolId + ". " + e.getMessage(), e);
+            }
+        }
     }
 }
@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Additive increase, multiplicative decrease (AIMD) limiter for the number of concurrent SMTP sends.
+ * The limit grows by one for every window of successful sends with stable latency, and it is halved when the
+ * relay replies with a transient 421, 451 or 452 error or when the latency exceeds the tolerated baseline.
+ */
+public class EmailConcurrencyLimiter {
+    private static final Logger log = LogManager.getLogger(EmailConcurrencyLimiter.class);
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double BASELINE_SMOOTHING_FACTOR = 0.05;
+
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private double limit = 1;
+    private int inFlight = 0;
+    private double baselineLatency = -1;
+    private long lastDecreaseTime = 0;
+
+    /**
+     * @param maxLimit         the maximum number of concurrent sends, i.e., the size of the connection pool.
+     * @param latencyTolerance the ratio between a send latency and the baseline latency considered as a spike.
+     */
+    public EmailConcurrencyLimiter(int maxLimit, double latencyTolerance) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Block until the number of in-flight sends is below the current limit.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Release a send acquired through {@link #acquire()} and adjust the limit based on its outcome.
+     *
+     * @param latency   time taken by the send in nanoseconds.
+     * @param throwable the error thrown by the send, or null if the email was sent successfully.
+     */
+    public synchronized void release(long latency, Throwable throwable) {
+        inFlight--;
+        long now = System.nanoTime();
+        if (throwable != null) {
+            if (isThrottled(throwable)) {
+                decrease(now, "the smtp server replied with a transient error");
+            }
+        } else if (baselineLatency > 0 && latency > baselineLatency * latencyTolerance) {
+            decrease(now, "the send latency of " + latency / 1000000 + " ms exceeded the baseline");
+        } else {
+            baselineLatency = baselineLatency < 0 ? latency :
+                    baselineLatency + BASELINE_SMOOTHING_FACTOR * (latency - baselineLatency);
+            if ((int) limit < maxLimit && inFlight + 1 >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    private void decrease(long now, String reason) {
+        //Sends which were in flight when the limit was cut observe the same congestion. Therefore, the limit is
+        //decreased only once per baseline latency.
+        if (now - lastDecreaseTime < baselineLatency) {
+            return;
+        }
+        lastDecreaseTime = now;
+        limit = Math.max(1, limit * BACKOFF_RATIO);
+        if (log.isDebugEnabled()) {
+            log.debug("Reduced the concurrent email sends to " + (int) limit + " since " + reason + ".");
+        }
+    }
+
+    /**
+     * Check whether the error is a transient SMTP reply which indicates the relay is overloaded.
+     *
+     * @param throwable the error thrown while sending the email.
+     * @return true if the relay replied with 421, 451 or 452.
+     */
+    public static boolean isThrottled(Throwable throwable) {
+        int returnCode = getReturnCode(throwable);
+        return returnCode == 421 || returnCode == 451 || returnCode == 452;
+    }
+
+    /**
+     * Get the SMTP reply code of an error thrown while sending an email.
+     *
+     * @param throwable the error thrown while sending the email.
+     * @return the reply code, or -1 if the error is not caused by a SMTP reply.
+     */
+    public static int getReturnCode(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause != null) {
+            if (cause instanceof SMTPSendFailedException) {
+                return ((SMTPSendFailedException) cause).getReturnCode();
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+            cause = cause.getCause();
+        }
+        return -1;
+    }
+}
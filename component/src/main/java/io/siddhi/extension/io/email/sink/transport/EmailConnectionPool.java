@@ -0,0 +1,437 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.transport.email.contract.EmailClientConnector;
+import org.wso2.transport.email.exception.EmailConnectorException;
+
+import java.lang.ref.WeakReference;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free pool of the email client connections of a relay. Each pooled connection has an atomic state, and a
+ * connection is borrowed by moving it from idle to in use with a compare-and-set, so that the borrows and returns
+ * of concurrent sends do not contend on a pool wide lock. A thread first tries the connection it returned last,
+ * then scans the connections, then creates a connection if the pool is not full, and else waits for a connection
+ * to be handed off by a returning thread.
+ *
+ * A connection is retired when it is returned after its maximum number of messages, or when it exceeds its maximum
+ * lifetime. A retired connection is closed, and its replacement is connected in the background, so that the sends
+ * neither wait for the QUIT of the retired connection nor for the connect of the new one. The background work runs
+ * on a thread of the pool, which is stopped while the pool is idle, so that a relay which hangs until its timeouts
+ * does not hold up the retirement of the connections of the other relays. Only the eviction of the idle
+ * connections is scheduled on a thread which is shared by the pools.
+ */
+public class EmailConnectionPool {
+    private static final Logger log = LogManager.getLogger(EmailConnectionPool.class);
+    private static final int STATE_REMOVED = -1;
+    private static final int STATE_NOT_IN_USE = 0;
+    private static final int STATE_IN_USE = 1;
+    private static final int STATE_RESERVED = 2;
+    //Upper bound of a wait for a hand off, after which the waiting thread scans the pool again, in case a
+    //connection was removed and a new one can be created, or a connection was returned before the thread polled.
+    private static final long HANDOFF_POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long RETIREMENT_THREAD_KEEP_ALIVE = 60;
+    private static final ScheduledExecutorService evictionScheduler =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "EmailConnectionPoolEviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final ConnectionFactory connectionFactory;
+    private final int maxSize;
+    private final long maxWait;
+    private final long maxMessages;
+    private final long maxLifetime;
+    private final CopyOnWriteArrayList<PooledConnection> connections = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<WeakReference<PooledConnection>> lastConnection = new ThreadLocal<>();
+    private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<>(true);
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong retiredCount = new AtomicLong();
+    private final ThreadPoolExecutor retirementExecutor;
+    private final ScheduledFuture<?> evictionTask;
+    private volatile boolean closed = false;
+
+    /**
+     * @param connectionFactory factory which creates, validates and closes the connections.
+     * @param maxSize           the maximum number of connections.
+     * @param maxWait           the time in milliseconds to wait for a connection when all the connections are in
+     *                          use, or a negative value to wait indefinitely.
+     * @param maxMessages       the number of messages after which a connection is retired, or zero for no limit.
+     * @param maxLifetime       the time in milliseconds after which a connection is retired, or zero for no limit.
+     */
+    public EmailConnectionPool(ConnectionFactory connectionFactory, int maxSize, long maxWait, long maxMessages,
+                               long maxLifetime) {
+        this.connectionFactory = connectionFactory;
+        this.maxSize = maxSize;
+        this.maxWait = maxWait;
+        this.maxMessages = maxMessages;
+        this.maxLifetime = maxLifetime;
+        this.retirementExecutor = new ThreadPoolExecutor(1, 1, RETIREMENT_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "EmailConnectionPoolRetirement");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retirementExecutor.allowCoreThreadTimeOut(true);
+        if (maxLifetime > 0) {
+            //Idle connections which exceed their lifetime are retired by the eviction task instead of a send.
+            long interval = Math.max(1000, maxLifetime / 4);
+            evictionTask = evictionScheduler.scheduleWithFixedDelay(this::retireExpiredIdleConnections, interval,
+                    interval, TimeUnit.MILLISECONDS);
+        } else {
+            evictionTask = null;
+        }
+    }
+
+    /**
+     * Borrow a connection, waiting for one if all the connections are in use.
+     *
+     * @return the connection, which should be returned through {@link #returnObject(PooledConnection)}.
+     * @throws EmailConnectorException if a new connection cannot be created.
+     * @throws InterruptedException    if the thread is interrupted while waiting for a connection.
+     * @throws NoSuchElementException  if no connection is available within the maximum wait time.
+     */
+    public PooledConnection borrowObject() throws EmailConnectorException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The email client connection pool is closed.");
+        }
+        long deadline = maxWait < 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+        while (true) {
+            PooledConnection connection = acquireIdle();
+            if (connection == null) {
+                connection = create(STATE_IN_USE);
+            }
+            if (connection == null) {
+                connection = awaitHandoff(deadline);
+                if (connection == null) {
+                    throw new NoSuchElementException("Timeout waiting for an idle email client connection.");
+                }
+            }
+            if (connectionFactory.validateObject(connection.connector) && !isExpired(connection)) {
+                return connection;
+            }
+            retire(connection, false);
+        }
+    }
+
+    /**
+     * Return a borrowed connection to the pool. The connection is retired if it reached its maximum number of
+     * messages or lifetime.
+     *
+     * @param connection the borrowed connection.
+     */
+    public void returnObject(PooledConnection connection) {
+        connection.messages++;
+        if (closed) {
+            remove(connection);
+            return;
+        }
+        if ((maxMessages > 0 && connection.messages >= maxMessages) || isExpired(connection)) {
+            retire(connection, true);
+            return;
+        }
+        connection.state.set(STATE_NOT_IN_USE);
+        lastConnection.set(connection.reference);
+        handoff(connection);
+    }
+
+    /**
+     * Remove a borrowed connection which is broken from the pool.
+     *
+     * @param connection the borrowed connection.
+     */
+    public void invalidateObject(PooledConnection connection) {
+        retire(connection, false);
+    }
+
+    /**
+     * Create an idle connection, unless the pool is full.
+     *
+     * @throws EmailConnectorException if the connection cannot be created.
+     */
+    public void addObject() throws EmailConnectorException {
+        PooledConnection connection = create(STATE_NOT_IN_USE);
+        if (connection != null) {
+            handoff(connection);
+        }
+    }
+
+    /**
+     * Close the idle connections and stop the maintenance of the pool. The connections which are in use are
+     * closed when they are returned, and the retired connections which are not closed yet are closed in the
+     * background.
+     */
+    public void close() {
+        closed = true;
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+        retirementExecutor.shutdown();
+        for (PooledConnection connection : connections) {
+            if (connection.state.compareAndSet(STATE_NOT_IN_USE, STATE_RESERVED)) {
+                remove(connection);
+            }
+        }
+    }
+
+    public int getNumActive() {
+        int active = 0;
+        for (PooledConnection connection : connections) {
+            if (connection.state.get() == STATE_IN_USE) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    public int getNumIdle() {
+        int idle = 0;
+        for (PooledConnection connection : connections) {
+            if (connection.state.get() == STATE_NOT_IN_USE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return the number of connections created since the pool was created, including the replacements of the
+     * retired connections.
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return the number of connections retired since the pool was created, as they reached their maximum number of
+     * messages or lifetime, or were broken.
+     */
+    public long getRetiredCount() {
+        return retiredCount.get();
+    }
+
+    private PooledConnection acquireIdle() {
+        WeakReference<PooledConnection> reference = lastConnection.get();
+        if (reference != null) {
+            PooledConnection connection = reference.get();
+            if (connection != null && connection.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+                return connection;
+            }
+        }
+        for (PooledConnection connection : connections) {
+            if (connection.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    private PooledConnection create(int state) throws EmailConnectorException {
+        while (true) {
+            int currentSize = size.get();
+            if (currentSize >= maxSize || closed) {
+                return null;
+            }
+            if (size.compareAndSet(currentSize, currentSize + 1)) {
+                break;
+            }
+        }
+        EmailClientConnector connector;
+        try {
+            connector = connectionFactory.makeObject();
+        } catch (EmailConnectorException | RuntimeException e) {
+            size.decrementAndGet();
+            throw e;
+        }
+        createdCount.incrementAndGet();
+        PooledConnection connection = new PooledConnection(connector, state);
+        connections.add(connection);
+        return connection;
+    }
+
+    private PooledConnection awaitHandoff(long deadline) throws EmailConnectorException, InterruptedException {
+        while (true) {
+            //A connection may have been returned or removed before this thread started waiting.
+            PooledConnection connection = acquireIdle();
+            if (connection == null) {
+                connection = create(STATE_IN_USE);
+            }
+            if (connection != null) {
+                return connection;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            //The thread is counted as a waiter only while it polls, so that a returning thread does not hand off
+            //its connection to a thread which is creating a connection.
+            waiters.incrementAndGet();
+            try {
+                //A connection returned before the thread was counted is not handed off. Therefore, it is taken here.
+                connection = acquireIdle();
+                if (connection == null) {
+                    connection = handoffQueue.poll(Math.min(remaining, HANDOFF_POLL_INTERVAL),
+                            TimeUnit.NANOSECONDS);
+                    if (connection != null && !connection.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+                        connection = null;
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+            if (connection != null) {
+                return connection;
+            }
+        }
+    }
+
+    /**
+     * Hand off an idle connection to a waiting thread, if one is polling for it. The returning thread never waits
+     * for the hand off. If the waiting thread is not polling yet, it finds the idle connection when it scans the
+     * pool again.
+     */
+    private void handoff(PooledConnection connection) {
+        if (waiters.get() > 0 && connection.state.get() == STATE_NOT_IN_USE) {
+            handoffQueue.offer(connection);
+        }
+    }
+
+    private boolean isExpired(PooledConnection connection) {
+        return maxLifetime > 0 && System.currentTimeMillis() - connection.createdTime >= maxLifetime;
+    }
+
+    private void retireExpiredIdleConnections() {
+        for (PooledConnection connection : connections) {
+            if (isExpired(connection) && connection.state.compareAndSet(STATE_NOT_IN_USE, STATE_RESERVED)) {
+                retire(connection, true);
+            }
+        }
+    }
+
+    /**
+     * Remove a connection from the pool and close it in the background, on the thread of the pool.
+     *
+     * @param connection the connection.
+     * @param replace    whether to connect a replacement in the background.
+     */
+    private void retire(PooledConnection connection, boolean replace) {
+        if (connection.state.getAndSet(STATE_REMOVED) == STATE_REMOVED) {
+            return;
+        }
+        connections.remove(connection);
+        size.decrementAndGet();
+        retiredCount.incrementAndGet();
+        try {
+            retirementExecutor.execute(() -> {
+                connectionFactory.destroyObject(connection.connector);
+                if (replace && !closed) {
+                    try {
+                        addObject();
+                    } catch (EmailConnectorException | RuntimeException e) {
+                        //The replacement is connected when it is borrowed instead.
+                        if (log.isDebugEnabled()) {
+                            log.debug("Unable to connect the replacement of a retired email client connection. "
+                                    + e.getMessage());
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //The pool is closed, and the connection is not replaced.
+            connectionFactory.destroyObject(connection.connector);
+        }
+    }
+
+    private void remove(PooledConnection connection) {
+        if (connection.state.getAndSet(STATE_REMOVED) == STATE_REMOVED) {
+            return;
+        }
+        connections.remove(connection);
+        size.decrementAndGet();
+        connectionFactory.destroyObject(connection.connector);
+    }
+
+    /**
+     * Factory of the connections of the pool.
+     */
+    public interface ConnectionFactory {
+
+        /**
+         * Create and connect a connection.
+         *
+         * @return the connection.
+         * @throws EmailConnectorException if the connection cannot be created.
+         */
+        EmailClientConnector makeObject() throws EmailConnectorException;
+
+        /**
+         * Check whether a connection can be used to send emails.
+         *
+         * @param connector the connection.
+         * @return true if the connection is usable.
+         */
+        boolean validateObject(EmailClientConnector connector);
+
+        /**
+         * Close a connection.
+         *
+         * @param connector the connection.
+         */
+        void destroyObject(EmailClientConnector connector);
+    }
+
+    /**
+     * A connection of the pool.
+     */
+    public static class PooledConnection {
+        private final EmailClientConnector connector;
+        private final AtomicInteger state;
+        private final WeakReference<PooledConnection> reference;
+        private final long createdTime = System.currentTimeMillis();
+        //Updated only by the thread which borrowed the connection.
+        private long messages = 0;
+
+        private PooledConnection(EmailClientConnector connector, int state) {
+            this.connector = connector;
+            this.state = new AtomicInteger(state);
+            this.reference = new WeakReference<>(this);
+        }
+
+        public EmailClientConnector getConnector() {
+            return connector;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Grants the connections of a relay to the waiting sends by their priority lanes, instead of the order in which
+ * they reached the connection pool. With the strict policy, a waiting send of a higher lane always goes first.
+ * With the weighted policy, the lanes take turns in proportion to their weights, so that the lower lanes are not
+ * starved. A number of connections can be reserved for the high priority lane, which the other lanes never use.
+ */
+public class EmailPriorityGate {
+
+    /**
+     * Priority lanes, in the order of precedence.
+     */
+    public enum Lane {
+        HIGH, NORMAL, LOW;
+
+        /**
+         * Get the lane of an email from its 'X-Priority' header, where '1' and '2' are high, and '4' and '5' are
+         * low priorities.
+         *
+         * @param priority the value of the 'X-Priority' header, or null if the email does not have it.
+         * @return the lane.
+         */
+        public static Lane of(String priority) {
+            if (priority != null && !priority.trim().isEmpty()) {
+                switch (priority.trim().charAt(0)) {
+                    case '1':
+                    case '2':
+                        return HIGH;
+                    case '4':
+                    case '5':
+                        return LOW;
+                    default:
+                        break;
+                }
+            }
+            return NORMAL;
+        }
+    }
+
+    /**
+     * Policies used to pick the lane which gets the next free connection.
+     */
+    public enum Policy {
+        STRICT, WEIGHTED
+    }
+
+    private final int connections;
+    private final int reservedConnections;
+    private final Policy policy;
+    private final int[] weights;
+    private final int[] credits;
+    private final Deque<Object>[] waitingSends;
+    private int inUse = 0;
+
+    /**
+     * @param connections         the number of connections of the relay, i.e., the size of the connection pool.
+     * @param reservedConnections the number of connections reserved for the high priority lane.
+     * @param policy              the policy used to pick the lane which gets the next free connection.
+     * @param weights             the weights of the high, normal and low lanes, used by the weighted policy.
+     */
+    @SuppressWarnings("unchecked")
+    public EmailPriorityGate(int connections, int reservedConnections, Policy policy, int[] weights) {
+        this.connections = connections;
+        this.reservedConnections = reservedConnections;
+        this.policy = policy;
+        this.weights = weights.clone();
+        this.credits = weights.clone();
+        this.waitingSends = new Deque[Lane.values().length];
+        for (int i = 0; i < waitingSends.length; i++) {
+            waitingSends[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Block until a connection is granted to the send.
+     *
+     * @param lane the priority lane of the send.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized void acquire(Lane lane) throws InterruptedException {
+        Object ticket = new Object();
+        Deque<Object> queue = waitingSends[lane.ordinal()];
+        queue.addLast(ticket);
+        try {
+            while (queue.peekFirst() != ticket || nextLane() != lane) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            queue.remove(ticket);
+            notifyAll();
+            throw e;
+        }
+        queue.removeFirst();
+        inUse++;
+        credits[lane.ordinal()]--;
+        notifyAll();
+    }
+
+    /**
+     * Release a connection granted through {@link #acquire(Lane)}.
+     */
+    public synchronized void release() {
+        inUse--;
+        notifyAll();
+    }
+
+    /**
+     * Pick the lane whose first waiting send gets the next free connection.
+     *
+     * @return the lane, or null if there is no free connection for any of the waiting sends.
+     */
+    private Lane nextLane() {
+        Lane nextLane = null;
+        for (Lane lane : Lane.values()) {
+            if (!waitingSends[lane.ordinal()].isEmpty() && hasFreeConnection(lane)) {
+                if (policy == Policy.STRICT) {
+                    return lane;
+                }
+                if (credits[lane.ordinal()] > 0) {
+                    return lane;
+                }
+                if (nextLane == null) {
+                    nextLane = lane;
+                }
+            }
+        }
+        if (nextLane != null) {
+            //All the lanes with waiting sends used up their turns. Therefore, a new round is started.
+            System.arraycopy(weights, 0, credits, 0, weights.length);
+        }
+        return nextLane;
+    }
+
+    private boolean hasFreeConnection(Lane lane) {
+        int usableConnections = lane == Lane.HIGH ? connections : connections - reservedConnections;
+        return inUse < usableConnections;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket based rate limiter which throttles the emails sent through a SMTP relay. A single limiter is shared
+ * by all the email sinks which use the same relay credentials, so the combined sending rate stays within the
+ * quotas of the mail provider.
+ */
+public class EmailRateLimiter {
+    private static final Logger log = LogManager.getLogger(EmailRateLimiter.class);
+    private static final Map<String, EmailRateLimiter> rateLimiters = new HashMap<>();
+
+    private final TokenBucket messageBucket;
+    private final TokenBucket recipientBucket;
+    private final String configuration;
+    private int references = 0;
+
+    private EmailRateLimiter(double messagesPerSecond, double recipientsPerMinute, int burstSize) {
+        this.messageBucket = messagesPerSecond > 0 ?
+                new TokenBucket(burstSize, messagesPerSecond / TimeUnit.SECONDS.toNanos(1)) : null;
+        this.recipientBucket = recipientsPerMinute > 0 ?
+                new TokenBucket(recipientsPerMinute, recipientsPerMinute / TimeUnit.MINUTES.toNanos(1)) : null;
+        this.configuration = messagesPerSecond + "/" + recipientsPerMinute + "/" + burstSize;
+    }
+
+    /**
+     * Get the rate limiter of the given relay, creating it if it does not exist yet.
+     *
+     * @param relayKey            key identifying the relay and the credentials used to send emails.
+     * @param messagesPerSecond   maximum number of messages per second, or zero if messages are not limited.
+     * @param recipientsPerMinute maximum number of recipients per minute, or zero if recipients are not limited.
+     * @param burstSize           maximum number of messages that can be sent back to back.
+     * @return the rate limiter shared by all the sinks of the relay.
+     */
+    public static synchronized EmailRateLimiter getRateLimiter(String relayKey, double messagesPerSecond,
+                                                               double recipientsPerMinute, int burstSize) {
+        EmailRateLimiter rateLimiter = rateLimiters.get(relayKey);
+        if (rateLimiter == null) {
+            rateLimiter = new EmailRateLimiter(messagesPerSecond, recipientsPerMinute, burstSize);
+            rateLimiters.put(relayKey, rateLimiter);
+        } else if (!rateLimiter.configuration.equals(messagesPerSecond + "/" + recipientsPerMinute + "/"
+                + burstSize)) {
+            log.warn("A rate limiter with different limits is already used for the relay '" + relayKey
+                    + "'. Therefore, the existing limits are applied.");
+        }
+        rateLimiter.references++;
+        return rateLimiter;
+    }
+
+    /**
+     * Release the rate limiter of the given relay. The limiter is removed once no sink refers to it.
+     *
+     * @param relayKey key identifying the relay and the credentials used to send emails.
+     */
+    public static synchronized void releaseRateLimiter(String relayKey) {
+        EmailRateLimiter rateLimiter = rateLimiters.get(relayKey);
+        if (rateLimiter != null && --rateLimiter.references <= 0) {
+            rateLimiters.remove(relayKey);
+        }
+    }
+
+    /**
+     * Block until a message with the given number of recipients can be sent without exceeding the limits.
+     *
+     * @param recipients number of recipients of the message.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void acquire(int recipients) throws InterruptedException {
+        long waitTime = 0;
+        if (messageBucket != null) {
+            waitTime = messageBucket.reserve(1);
+        }
+        if (recipientBucket != null) {
+            waitTime = Math.max(waitTime, recipientBucket.reserve(recipients));
+        }
+        if (waitTime > 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Rate limit reached. Delaying the email by " +
+                        TimeUnit.NANOSECONDS.toMillis(waitTime) + " ms.");
+            }
+            TimeUnit.NANOSECONDS.sleep(waitTime);
+        }
+    }
+
+    /**
+     * Token bucket which lets callers reserve tokens ahead of time, so that concurrent callers are spaced out
+     * instead of competing for the same refill.
+     */
+    private static class TokenBucket {
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long lastRefillTime;
+
+        TokenBucket(double capacity, double tokensPerNano) {
+            this.capacity = Math.max(1, capacity);
+            this.tokensPerNano = tokensPerNano;
+            this.tokens = this.capacity;
+            this.lastRefillTime = System.nanoTime();
+        }
+
+        /**
+         * Reserve the given number of tokens.
+         *
+         * @return the time in nanoseconds the caller has to wait until the reserved tokens are available.
+         */
+        synchronized long reserve(double permits) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillTime) * tokensPerNano);
+            lastRefillTime = now;
+            tokens -= permits;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        }
+    }
+}
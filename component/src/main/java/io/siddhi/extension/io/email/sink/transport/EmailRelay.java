@@ -0,0 +1,198 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import io.siddhi.extension.io.email.nio.EmailEventLoopGroup;
+import io.siddhi.extension.io.email.sink.smtp.EmailSmtpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.transport.email.contract.EmailConnectorFactory;
+import org.wso2.transport.email.exception.EmailConnectorException;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A SMTP relay of the email sink. Each relay has its own connection pool or non-blocking SMTP client, rate limiter,
+ * concurrency limiter, priority gate and circuit breaker, and tracks its health so that the sends are routed away
+ * from it while it is failing.
+ */
+public class EmailRelay {
+    private static final Logger log = LogManager.getLogger(EmailRelay.class);
+
+    private final String host;
+    private final String port;
+    private final String relayKey;
+    private final Map<String, String> clientProperties;
+    private final AtomicInteger outstandingSends = new AtomicInteger();
+    private EmailRateLimiter rateLimiter;
+    private EmailConcurrencyLimiter concurrencyLimiter;
+    private EmailPriorityGate priorityGate;
+    private EmailCircuitBreaker circuitBreaker;
+    private EmailConnectionPool connectionPool;
+    private EmailSmtpClient smtpClient;
+    private int consecutiveFailures = 0;
+    private long unavailableUntil = 0;
+
+    /**
+     * @param host             host name of the SMTP server.
+     * @param port             port of the SMTP server.
+     * @param relayKey         key identifying the relay and the credentials used to send emails.
+     * @param clientProperties properties of the email client connectors of the relay.
+     */
+    public EmailRelay(String host, String port, String relayKey, Map<String, String> clientProperties) {
+        this.host = host;
+        this.port = port;
+        this.relayKey = relayKey;
+        this.clientProperties = clientProperties;
+    }
+
+    /**
+     * Get the connection pool of the relay, creating it if the relay is not connected yet.
+     *
+     * @param emailConnectorFactory factory used to create the email client connectors.
+     * @return the connection pool.
+     * @throws EmailConnectorException if the email client connector cannot be initialized.
+     */
+    public synchronized EmailConnectionPool connect(EmailConnectorFactory emailConnectorFactory)
+            throws EmailConnectorException {
+        if (connectionPool == null) {
+            connectionPool = EmailClientConnectionPoolManager.initializeConnectionPool(relayKey,
+                    emailConnectorFactory, clientProperties);
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Get the non-blocking SMTP client of the relay, creating it if the relay is not connected yet. Unlike the
+     * connection pools, the client is not shared with the other email sinks, since its sessions run on the event
+     * loops of the sink.
+     *
+     * @param eventLoopGroup the event loops of the email sink.
+     * @return the SMTP client.
+     */
+    public synchronized EmailSmtpClient connect(EmailEventLoopGroup eventLoopGroup) {
+        if (smtpClient == null) {
+            smtpClient = new EmailSmtpClient(host, Integer.parseInt(port), clientProperties, eventLoopGroup.next());
+        }
+        return smtpClient;
+    }
+
+    public synchronized EmailConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public synchronized void disconnect() {
+        if (connectionPool != null) {
+            EmailClientConnectionPoolManager.uninitializeConnectionPool(relayKey);
+            connectionPool = null;
+        }
+        if (smtpClient != null) {
+            smtpClient.close();
+            smtpClient = null;
+        }
+    }
+
+    /**
+     * Check whether sends can be routed to the relay.
+     *
+     * @return false if the relay failed consecutively, and the retry interval has not elapsed since, or if the
+     * circuit of the relay is open.
+     */
+    public synchronized boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableUntil
+                && (circuitBreaker == null || circuitBreaker.isCallPermitted());
+    }
+
+    /**
+     * Record a successful send through the relay.
+     */
+    public synchronized void onSendSuccess() {
+        consecutiveFailures = 0;
+        unavailableUntil = 0;
+    }
+
+    /**
+     * Record a send which failed since the relay is unavailable.
+     *
+     * @param failureThreshold number of consecutive failures after which the relay is marked as unavailable.
+     * @param retryInterval    time in milliseconds for which the relay is marked as unavailable.
+     */
+    public synchronized void onSendFailure(int failureThreshold, long retryInterval) {
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            unavailableUntil = System.currentTimeMillis() + retryInterval;
+            log.warn("SMTP relay " + host + ":" + port + " failed " + consecutiveFailures + " consecutive sends. " +
+                    "Routing the emails to the other relays for " + retryInterval + " ms.");
+        }
+    }
+
+    public AtomicInteger getOutstandingSends() {
+        return outstandingSends;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    public String getRelayKey() {
+        return relayKey;
+    }
+
+    public EmailRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(EmailRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public EmailConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public void setConcurrencyLimiter(EmailConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public EmailPriorityGate getPriorityGate() {
+        return priorityGate;
+    }
+
+    public void setPriorityGate(EmailPriorityGate priorityGate) {
+        this.priorityGate = priorityGate;
+    }
+
+    public EmailCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(EmailCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
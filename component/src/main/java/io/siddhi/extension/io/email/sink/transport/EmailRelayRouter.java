@@ -0,0 +1,137 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the emails of the email sink across its SMTP relays.
+ */
+public class EmailRelayRouter {
+    private final List<EmailRelay> relays;
+    private final Strategy strategy;
+    private final Map<String, EmailRelay> domainRoutes;
+    private final AtomicInteger nextRelay = new AtomicInteger();
+
+    /**
+     * Strategy used to pick the relay of an email.
+     */
+    public enum Strategy {
+        /**
+         * Relays are picked in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * The relay with the fewest sends in progress is picked.
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * The relay is picked by the domain of the recipient, falling back to round robin for unmapped domains.
+         */
+        DOMAIN,
+        /**
+         * The first available relay in the configured order is picked.
+         */
+        FAILOVER
+    }
+
+    /**
+     * @param relays       the relays in the configured order.
+     * @param strategy     the strategy used to pick the relay of an email.
+     * @param domainRoutes relays of the recipient domains, keyed by the lower case domain.
+     */
+    public EmailRelayRouter(List<EmailRelay> relays, Strategy strategy, Map<String, EmailRelay> domainRoutes) {
+        this.relays = relays;
+        this.strategy = strategy;
+        this.domainRoutes = domainRoutes;
+    }
+
+    /**
+     * Get the relays through which an email should be tried, in order. The relay picked by the strategy is
+     * followed by the other available relays, so that an email fails over when its relay is unavailable.
+     *
+     * @param recipientDomain domain of the first recipient of the email, or null if it is not known.
+     * @return the relays to be tried. All the relays are returned if none of them is available.
+     */
+    public List<EmailRelay> route(String recipientDomain) {
+        List<EmailRelay> candidates = new ArrayList<>(relays.size());
+        EmailRelay primary = pick(recipientDomain);
+        if (primary != null) {
+            candidates.add(primary);
+        }
+        for (EmailRelay relay : relays) {
+            if (relay != primary && relay.isAvailable()) {
+                candidates.add(relay);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.addAll(relays);
+        }
+        return candidates;
+    }
+
+    public List<EmailRelay> getRelays() {
+        return relays;
+    }
+
+    private EmailRelay pick(String recipientDomain) {
+        switch (strategy) {
+            case DOMAIN:
+                if (recipientDomain != null) {
+                    EmailRelay relay = domainRoutes.get(recipientDomain.toLowerCase(Locale.ENGLISH));
+                    if (relay != null && relay.isAvailable()) {
+                        return relay;
+                    }
+                }
+                return pickRoundRobin();
+            case LEAST_OUTSTANDING:
+                EmailRelay leastOutstanding = null;
+                for (EmailRelay relay : relays) {
+                    if (relay.isAvailable() && (leastOutstanding == null || relay.getOutstandingSends().get()
+                            < leastOutstanding.getOutstandingSends().get())) {
+                        leastOutstanding = relay;
+                    }
+                }
+                return leastOutstanding;
+            case FAILOVER:
+                for (EmailRelay relay : relays) {
+                    if (relay.isAvailable()) {
+                        return relay;
+                    }
+                }
+                return null;
+            default:
+                return pickRoundRobin();
+        }
+    }
+
+    private EmailRelay pickRoundRobin() {
+        for (int i = 0; i < relays.size(); i++) {
+            EmailRelay relay = relays.get(Math.floorMod(nextRelay.getAndIncrement(), relays.size()));
+            if (relay.isAvailable()) {
+                return relay;
+            }
+        }
+        return null;
+    }
+}
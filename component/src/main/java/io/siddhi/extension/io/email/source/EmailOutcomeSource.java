@@ -0,0 +1,164 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.io.email.source;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiAppContext;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.stream.ServiceDeploymentInfo;
+import io.siddhi.core.stream.input.source.Source;
+import io.siddhi.core.stream.input.source.SourceEventListener;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.core.util.transport.OptionHolder;
+import io.siddhi.extension.io.email.util.EmailConstants;
+import io.siddhi.query.api.definition.Attribute;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The class implementing the source which receives the delivery outcomes of the emails sent by an email sink.
+ */
+@Extension(name = "email-outcome", namespace = "source",
+        description = "The 'email-outcome' source receives the delivery outcome of each email sent by the email " +
+                "sink whose 'sink.id' matches, within the same Siddhi application. An outcome is received after " +
+                "the email is sent or fails, with the following attributes, in order:\n" +
+                "'message.id' (string): The 'Message-ID' header of the email if it is sent by the non-blocking " +
+                "SMTP client, else the identifier which the email sink generates for the email and sends in its " +
+                "'X-Siddhi-Message-Id' header.\n" +
+                "'recipients' (string): The comma-separated 'to', 'cc' and 'bcc' addresses of the email.\n" +
+                "'relay' (string): The 'host:port' of the last SMTP relay that the email was sent to.\n" +
+                "'reply.code' (int): '250' if the email is sent, else the SMTP reply code of the failure, or " +
+                "'-1' if there is no reply code.\n" +
+                "'latency' (long): The time in milliseconds taken to send the email.\n" +
+                "'attempts' (int): The number of relays that the email was sent to.",
+        parameters = {
+                @Parameter(name = "sink.id",
+                        description = "The 'sink.id' of the email sink whose delivery outcomes are received.",
+                        type = {DataType.STRING})
+        },
+        examples = {
+                @Example(syntax = "@sink(type='email', sink.id='alerts', @map(type='text'), "
+                        + "subject='Alert', to='{{email}}') "
+                        + "define stream AlertStream (email string, message string);\n"
+                        + "@source(type='email-outcome', sink.id='alerts') "
+                        + "define stream AlertOutcomeStream (messageId string, recipients string, relay string, "
+                        + "replyCode int, latency long, attempts int);",
+                        description = "This example illustrates how to receive the delivery outcomes of the emails " +
+                                "sent by the email sink of the 'AlertStream' into the 'AlertOutcomeStream'.")
+        }
+)
+public class EmailOutcomeSource extends Source {
+    private static final Logger log = LogManager.getLogger(EmailOutcomeSource.class);
+    private static final List<Attribute.Type> OUTCOME_ATTRIBUTE_TYPES = Arrays.asList(Attribute.Type.STRING,
+            Attribute.Type.STRING, Attribute.Type.STRING, Attribute.Type.INT, Attribute.Type.LONG,
+            Attribute.Type.INT);
+    private static final Map<String, EmailOutcomeSource> registeredSources = new ConcurrentHashMap<>();
+
+    private SourceEventListener sourceEventListener;
+    private String sourceKey;
+    private volatile boolean paused = false;
+
+    @Override
+    public StateFactory init(SourceEventListener sourceEventListener, OptionHolder optionHolder,
+                             String[] requestedTransportPropertyNames, ConfigReader configReader,
+                             SiddhiAppContext siddhiAppContext) {
+        this.sourceEventListener = sourceEventListener;
+        String sinkId = optionHolder.validateAndGetStaticValue(EmailConstants.SINK_ID);
+        sourceKey = getSourceKey(siddhiAppContext.getName(), sinkId);
+        List<Attribute> attributes = sourceEventListener.getStreamDefinition().getAttributeList();
+        boolean validAttributes = attributes.size() == OUTCOME_ATTRIBUTE_TYPES.size();
+        for (int i = 0; validAttributes && i < attributes.size(); i++) {
+            validAttributes = attributes.get(i).getType() == OUTCOME_ATTRIBUTE_TYPES.get(i);
+        }
+        if (!validAttributes) {
+            throw new SiddhiAppCreationException("The stream: " + sourceEventListener.getStreamDefinition().getId()
+                    + " of the email outcome source should have the attributes of the types "
+                    + "(string, string, string, int, long, int).");
+        }
+        return null;
+    }
+
+    /**
+     * Publish the delivery outcome of an email to the outcome source of the email sink, if there is one.
+     *
+     * @param siddhiAppName name of the Siddhi application of the email sink.
+     * @param sinkId        the 'sink.id' of the email sink.
+     * @param outcome       the attribute values of the outcome.
+     */
+    public static void publish(String siddhiAppName, String sinkId, Object[] outcome) {
+        EmailOutcomeSource source = registeredSources.get(getSourceKey(siddhiAppName, sinkId));
+        if (source != null && !source.paused) {
+            source.sourceEventListener.onEvent(outcome, null);
+        } else if (log.isDebugEnabled()) {
+            log.debug("Dropped the email delivery outcome: " + Arrays.toString(outcome) + " since there is no "
+                    + "active email outcome source for the sink: " + sinkId + ".");
+        }
+    }
+
+    private static String getSourceKey(String siddhiAppName, String sinkId) {
+        return siddhiAppName + ":" + sinkId;
+    }
+
+    @Override
+    public Class[] getOutputEventClasses() {
+        return new Class[]{Object[].class};
+    }
+
+    @Override
+    public void connect(ConnectionCallback connectionCallback, State state) {
+        if (registeredSources.putIfAbsent(sourceKey, this) != null) {
+            throw new SiddhiAppCreationException("There is already an email outcome source for the sink: "
+                    + sourceKey + ".");
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        registeredSources.remove(sourceKey, this);
+    }
+
+    @Override
+    public void destroy() {
+        registeredSources.remove(sourceKey, this);
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+    }
+
+    @Override
+    protected ServiceDeploymentInfo exposeServiceDeploymentInfo() {
+        return null;
+    }
+}
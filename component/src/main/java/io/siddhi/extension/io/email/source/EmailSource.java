@@ -34,8 +34,13 @@ import io.siddhi.core.util.config.ConfigReader;
 import io.siddhi.core.util.snapshot.state.State;
 import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.core.util.transport.OptionHolder;
+import io.siddhi.extension.io.email.nio.EmailEventLoopGroup;
 import io.siddhi.extension.io.email.source.exception.EmailSourceAdaptorRuntimeException;
+import io.siddhi.extension.io.email.source.imap.EmailImapClient;
+import io.siddhi.extension.io.email.source.imap.EmailPollingInterval;
+import io.siddhi.extension.io.email.source.imap.EmailPollingScheduler;
 import io.siddhi.extension.io.email.util.EmailConstants;
+import io.siddhi.extension.io.email.util.EmailSSLSocketFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wso2.transport.email.connector.factory.EmailConnectorFactoryImpl;
@@ -44,6 +49,7 @@ import org.wso2.transport.email.contract.EmailMessageListener;
 import org.wso2.transport.email.contract.EmailServerConnector;
 import org.wso2.transport.email.exception.EmailConnectorException;
 
+import java.io.IOException;
 import java.net.ConnectException;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
@@ -52,6 +58,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -158,7 +166,88 @@ import java.util.stream.Stream;
                                 " The possible values are 'true' and 'false'.",
                         type = { DataType.BOOL },
                         optional = true,
-                        defaultValue = "true") },
+                        defaultValue = "true"),
+                @Parameter(name = "ssl.session.reuse",
+                        description = "If this is set to 'true', the SSL connections use an SSL context which is " +
+                                "shared by all the email sources and sinks, so that a reconnect resumes the TLS " +
+                                "session of a previous connection instead of doing a full handshake. This is only " +
+                                "applicable if 'ssl.enable' is 'true', and 'mail.[store].ssl.trust' is '*' or empty." +
+                                " The possible values are 'true' and 'false'.",
+                        type = { DataType.BOOL },
+                        optional = true,
+                        defaultValue = "true"),
+                @Parameter(name = "imap.client",
+                        description = "The IMAP client through which the messages are received. If this is " +
+                                "'blocking', the messages are polled by the email server connector, which holds a " +
+                                "thread and a connection per source. If this is 'nio', the folder is watched by a " +
+                                "non-blocking IMAP client, and the connections of all the email sources of the JVM " +
+                                "are multiplexed on 'imap.client.threads' shared event loops. The 'nio' client " +
+                                "waits for new messages with IDLE if the server supports it. It is only applicable " +
+                                "if the 'store' is 'imap', and it does not support STARTTLS. The possible values are " +
+                                "'blocking' and 'nio'.",
+                        type = { DataType.STRING },
+                        optional = true,
+                        defaultValue = "blocking"),
+                @Parameter(name = "imap.client.threads",
+                        description = "The number of the event loop threads which are shared by the 'nio' IMAP " +
+                                "clients of all the email sources of the JVM. The value of the first source which " +
+                                "connects is used.",
+                        type = { DataType.INT },
+                        optional = true,
+                        defaultValue = "2"),
+                @Parameter(name = "imap.idle",
+                        description = "If this is set to 'true', the 'nio' IMAP client waits for new messages with " +
+                                "IDLE if the server supports it, and it receives them as they arrive instead of at " +
+                                "the 'polling.interval'. The possible values are 'true' and 'false'.",
+                        type = { DataType.BOOL },
+                        optional = true,
+                        defaultValue = "true"),
+                @Parameter(name = "imap.fetch.workers",
+                        description = "The number of the mailboxes whose messages are fetched and processed at " +
+                                "once by the 'nio' IMAP clients of all the email sources of the JVM, and the number" +
+                                " of the worker threads which process them. The other mailboxes whose polls found " +
+                                "messages wait in their order, and the polls of the mailboxes are spread by random " +
+                                "delays, so that the mailboxes are served fairly and the load on the IMAP servers " +
+                                "is smoothed. The value of the first source which connects is used.",
+                        type = { DataType.INT },
+                        optional = true,
+                        defaultValue = "4"),
+                @Parameter(name = "adaptive.polling",
+                        description = "If this is set to 'true', the 'nio' IMAP client adapts the polling interval " +
+                                "to the traffic of the mailbox. The interval drops to 'polling.interval.min' when a " +
+                                "poll finds messages, and it doubles after each poll which finds none, up to " +
+                                "'polling.interval.max'. The current interval is exposed through JMX as the " +
+                                "'PollingInterval' attribute of the 'io.siddhi.extension.io.email:type=EmailSource' " +
+                                "MBean of the source. The possible values are 'true' and 'false'.",
+                        type = { DataType.BOOL },
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(name = "polling.interval.min",
+                        description = "The minimum polling interval in seconds, if 'adaptive.polling' is 'true'.",
+                        type = { DataType.INT },
+                        optional = true,
+                        defaultValue = "10"),
+                @Parameter(name = "polling.interval.max",
+                        description = "The maximum polling interval in seconds, if 'adaptive.polling' is 'true'.",
+                        type = { DataType.INT },
+                        optional = true,
+                        defaultValue = "The value of 'polling.interval'."),
+                @Parameter(name = "max.messages.per.poll",
+                        description = "The maximum number of the messages which the 'nio' IMAP client processes " +
+                                "per poll. The oldest messages are processed first, and the rest are left to the " +
+                                "next poll, which is done right away if the client waits for new messages with " +
+                                "IDLE. If this is '0', all the messages found by a poll are processed.",
+                        type = { DataType.INT },
+                        optional = true,
+                        defaultValue = "0"),
+                @Parameter(name = "fetch.batch.size",
+                        description = "The number of the messages which the 'nio' IMAP client fetches at once. The " +
+                                "action after processed is applied to each batch once it is processed, before the " +
+                                "next batch is fetched, so that a large backlog is drained with a bounded number " +
+                                "of messages in memory.",
+                        type = { DataType.INT },
+                        optional = true,
+                        defaultValue = "100") },
         examples = {
                 @Example(syntax = "@source(type='email', @map(type='xml'), "
                                 + "username='receiver.account', "
@@ -571,7 +660,10 @@ import java.util.stream.Stream;
 public class EmailSource extends Source {
 
     private static final Logger log = LogManager.getLogger(EmailSource.class);
+    private static final String IMAP_EVENT_LOOP_GROUP = "siddhi-email-imap";
+    private static final long IMAP_CLIENT_SHUTDOWN_TIMEOUT = 10000;
     private SourceEventListener sourceEventListener;
+    private SiddhiAppContext siddhiAppContext;
     private ConfigReader configReader;
     private OptionHolder optionHolder;
     private EmailServerConnector emailServerConnector;
@@ -580,6 +672,15 @@ public class EmailSource extends Source {
     private String store;
     private String contentType;
     private boolean isImap = false;
+    private boolean sslSessionReuse;
+    private boolean nioImapClient = false;
+    private boolean imapIdle;
+    private int imapClientThreads;
+    private int imapFetchWorkers;
+    private EmailEventLoopGroup imapEventLoopGroup;
+    private EmailPollingScheduler pollingScheduler;
+    private EmailPollingInterval pollingInterval;
+    private EmailImapClient imapClient;
 
     /**
      * The initialization method for {@link Source}, which will be called before other methods and validate
@@ -595,6 +696,7 @@ public class EmailSource extends Source {
                                        String[] requiredProperties, ConfigReader configReader,
                                        SiddhiAppContext siddhiAppContext) {
         this.sourceEventListener = sourceEventListener;
+        this.siddhiAppContext = siddhiAppContext;
         this.configReader = configReader;
         this.optionHolder = optionHolder;
         validateAndGetEmailConfigurations();
@@ -605,7 +707,17 @@ public class EmailSource extends Source {
             }
         });
         properties.put(EmailConstants.TRANSPORT_MAIL_AUTO_ACKNOWLEDGE, EmailConstants.DEFAULT_AUTO_ACKNOWLEDGE);
-        EmailConnectorFactory emailConnectorFactory = new EmailConnectorFactoryImpl();
+        if (sslSessionReuse && Boolean.parseBoolean(properties.get("mail." + store + ".ssl.enable"))) {
+            EmailSSLSocketFactory.configure(properties, store,
+                    properties.get("mail." + store + "." + EmailConstants.EMAIL_RECEIVER_TRUST));
+        }
+        if (nioImapClient) {
+            pollingInterval.register(siddhiAppContext.getName(), sourceEventListener.getStreamDefinition().getId(),
+                    properties.get(EmailConstants.TRANSPORT_MAIL_RECEIVER_USERNAME) + "@"
+                            + properties.get(EmailConstants.TRANSPORT_MAIL_RECEIVER_HOST_NAME) + "/"
+                            + properties.get(EmailConstants.TRANSPORT_MAIL_FOLDER_NAME));
+        } else {
+            EmailConnectorFactory emailConnectorFactory = new EmailConnectorFactoryImpl();
             try {
                     emailServerConnector = emailConnectorFactory.createEmailServerConnector(
                             "emailSource", properties);
@@ -613,6 +725,7 @@ public class EmailSource extends Source {
                     throw new EmailSourceAdaptorRuntimeException("Error is encountered while creating the email "
                             + "server connector.", e);
             }
+        }
 
             emailMessageListener = new EmailSourceMessageListener(sourceEventListener,
                     requiredProperties, contentType);
@@ -628,6 +741,10 @@ public class EmailSource extends Source {
      */
     @Override public void connect(ConnectionCallback connectionCallback, State state)
             throws ConnectionUnavailableException {
+        if (nioImapClient) {
+            connectImapClient(connectionCallback);
+            return;
+        }
         try {
             emailServerConnector.init();
             emailServerConnector.start(emailMessageListener);
@@ -651,6 +768,61 @@ public class EmailSource extends Source {
         }
     }
 
+    /**
+     * Connect the non-blocking IMAP client, and wait until it selects the folder. The errors after that, such as a
+     * lost connection, are passed to the connection callback so that the source reconnects.
+     */
+    private void connectImapClient(ConnectionCallback connectionCallback) throws ConnectionUnavailableException {
+        if (imapEventLoopGroup == null) {
+            try {
+                imapEventLoopGroup = EmailEventLoopGroup.acquireShared(IMAP_EVENT_LOOP_GROUP, imapClientThreads);
+            } catch (IOException e) {
+                throw new EmailSourceAdaptorRuntimeException("Error is encountered while creating the event loops "
+                        + "of the IMAP client. " + e.getMessage(), e);
+            }
+        }
+        if (pollingScheduler == null) {
+            pollingScheduler = EmailPollingScheduler.acquireShared(imapFetchWorkers);
+        }
+        imapClient = new EmailImapClient(properties, store, imapIdle, pollingInterval, emailMessageListener,
+                siddhiAppContext.getExecutorService(), pollingScheduler, imapEventLoopGroup.next());
+        try {
+            imapClient.start(e -> connectionCallback.onError(new ConnectionUnavailableException(
+                    "Connection to the IMAP server is lost. Therefore retry again to connect to the store. "
+                            + e.getMessage(), e))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            imapClient.close();
+            throw new ConnectionUnavailableException("Interrupted while connecting to the store. "
+                    + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            imapClient.close();
+            if (e.getCause() instanceof IOException) {
+                throw new ConnectionUnavailableException(
+                        "Connection is unavailable. Therefore retry again to connect to the store. "
+                                + e.getCause().getMessage(), e.getCause());
+            }
+            throw new EmailSourceAdaptorRuntimeException("Error is encountered while connecting the Email Source "
+                    + "for stream: " + sourceEventListener.getStreamDefinition() + ". " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    private void disconnectImapClient() {
+        if (imapClient != null) {
+            imapClient.close();
+            imapClient = null;
+        }
+        if (imapEventLoopGroup != null) {
+            EmailEventLoopGroup.releaseShared(IMAP_EVENT_LOOP_GROUP, IMAP_CLIENT_SHUTDOWN_TIMEOUT);
+            imapEventLoopGroup = null;
+        }
+        if (pollingScheduler != null) {
+            EmailPollingScheduler.releaseShared(IMAP_CLIENT_SHUTDOWN_TIMEOUT);
+            pollingScheduler = null;
+        }
+    }
+
     @Override
     protected ServiceDeploymentInfo exposeServiceDeploymentInfo() {
         return null;
@@ -660,6 +832,7 @@ public class EmailSource extends Source {
      * This method can be called when it is needed to disconnect from the end point.
      */
     @Override public void disconnect() {
+        disconnectImapClient();
         try {
             if (emailServerConnector != null) {
                 emailServerConnector.stop();
@@ -676,6 +849,10 @@ public class EmailSource extends Source {
      * Called at the end to clean all the resources consumed by the {@link Source}
      */
     @Override public void destroy() {
+        disconnectImapClient();
+        if (pollingInterval != null) {
+            pollingInterval.unregister();
+        }
         if (emailServerConnector != null) {
             try {
                 emailServerConnector.stop();
@@ -690,6 +867,9 @@ public class EmailSource extends Source {
      * Called to pause event consumption
      */
     @Override public void pause() {
+        if (imapClient != null) {
+            imapClient.pause();
+        }
         if (emailServerConnector != null) {
             try {
                 emailServerConnector.stop();
@@ -704,6 +884,9 @@ public class EmailSource extends Source {
      * Called to resume event consumption
      */
     @Override public void resume() {
+        if (imapClient != null) {
+            imapClient.resume();
+        }
         if (emailServerConnector != null) {
             try {
                 emailServerConnector.start(emailMessageListener);
@@ -889,5 +1072,132 @@ public class EmailSource extends Source {
         String trust = configReader.readConfig("mail." + store + "." + EmailConstants.EMAIL_RECEIVER_TRUST,
                 EmailConstants.EMAIL_RECEIVER_DEFAULT_TRUST);
         properties.put("mail." + store + "." + EmailConstants.EMAIL_RECEIVER_TRUST, trust);
+
+        String reuse = optionHolder.validateAndGetStaticValue(EmailConstants.SSL_SESSION_REUSE,
+                configReader.readConfig(EmailConstants.SSL_SESSION_REUSE, EmailConstants.DEFAULT_SSL_SESSION_REUSE));
+        if (!(reuse.equalsIgnoreCase("true") || reuse.equalsIgnoreCase("false"))) {
+            throw new SiddhiAppCreationException(EmailConstants.SSL_SESSION_REUSE + " could be either 'true' or "
+                    + "'false'. But found: " + reuse);
+        }
+        sslSessionReuse = Boolean.parseBoolean(reuse);
+
+        String imapClientType = optionHolder.validateAndGetStaticValue(EmailConstants.IMAP_CLIENT,
+                configReader.readConfig(EmailConstants.IMAP_CLIENT, EmailConstants.DEFAULT_IMAP_CLIENT));
+        if (imapClientType.equalsIgnoreCase(EmailConstants.IMAP_CLIENT_NIO)) {
+            if (!isImap) {
+                throw new SiddhiAppCreationException("The '" + EmailConstants.IMAP_CLIENT_NIO + "' "
+                        + EmailConstants.IMAP_CLIENT + " is only applicable for the " + EmailConstants.IMAP_STORE
+                        + " store. But found: " + store + ".");
+            }
+            nioImapClient = true;
+        } else if (!imapClientType.equalsIgnoreCase(EmailConstants.IMAP_CLIENT_BLOCKING)) {
+            throw new SiddhiAppCreationException(EmailConstants.IMAP_CLIENT + " could be 'blocking' or 'nio'. But "
+                    + "found: " + imapClientType + ".");
+        }
+
+        String threads = optionHolder.validateAndGetStaticValue(EmailConstants.IMAP_CLIENT_THREADS,
+                configReader.readConfig(EmailConstants.IMAP_CLIENT_THREADS,
+                        EmailConstants.DEFAULT_IMAP_CLIENT_THREADS));
+        try {
+            imapClientThreads = Integer.parseInt(threads);
+        } catch (NumberFormatException e) {
+            imapClientThreads = 0;
+        }
+        if (imapClientThreads < 1) {
+            throw new SiddhiAppCreationException(EmailConstants.IMAP_CLIENT_THREADS + " should be a positive "
+                    + "integer. But found: " + threads + ".");
+        }
+
+        String idle = optionHolder.validateAndGetStaticValue(EmailConstants.IMAP_IDLE,
+                configReader.readConfig(EmailConstants.IMAP_IDLE, EmailConstants.DEFAULT_IMAP_IDLE));
+        if (!(idle.equalsIgnoreCase("true") || idle.equalsIgnoreCase("false"))) {
+            throw new SiddhiAppCreationException(EmailConstants.IMAP_IDLE + " could be either 'true' or 'false'. "
+                    + "But found: " + idle);
+        }
+        imapIdle = Boolean.parseBoolean(idle);
+
+        String fetchWorkers = optionHolder.validateAndGetStaticValue(EmailConstants.IMAP_FETCH_WORKERS,
+                configReader.readConfig(EmailConstants.IMAP_FETCH_WORKERS, EmailConstants.DEFAULT_IMAP_FETCH_WORKERS));
+        try {
+            imapFetchWorkers = Integer.parseInt(fetchWorkers);
+        } catch (NumberFormatException e) {
+            imapFetchWorkers = 0;
+        }
+        if (imapFetchWorkers < 1) {
+            throw new SiddhiAppCreationException(EmailConstants.IMAP_FETCH_WORKERS + " should be a positive "
+                    + "integer. But found: " + fetchWorkers + ".");
+        }
+
+        String adaptivePolling = optionHolder.validateAndGetStaticValue(EmailConstants.ADAPTIVE_POLLING,
+                configReader.readConfig(EmailConstants.ADAPTIVE_POLLING, EmailConstants.DEFAULT_ADAPTIVE_POLLING));
+        if (!(adaptivePolling.equalsIgnoreCase("true") || adaptivePolling.equalsIgnoreCase("false"))) {
+            throw new SiddhiAppCreationException(EmailConstants.ADAPTIVE_POLLING + " could be either 'true' or "
+                    + "'false'. But found: " + adaptivePolling);
+        }
+        long interval = Long.parseLong(properties.get(EmailConstants.TRANSPORT_MAIL_POLLING_INTERVAL));
+        if (Boolean.parseBoolean(adaptivePolling)) {
+            if (!nioImapClient) {
+                throw new SiddhiAppCreationException(EmailConstants.ADAPTIVE_POLLING + " is only supported by the '"
+                        + EmailConstants.IMAP_CLIENT_NIO + "' " + EmailConstants.IMAP_CLIENT + ".");
+            }
+            long minInterval = getPollingIntervalBound(EmailConstants.POLLING_INTERVAL_MIN,
+                    EmailConstants.DEFAULT_POLLING_INTERVAL_MIN);
+            long maxInterval = getPollingIntervalBound(EmailConstants.POLLING_INTERVAL_MAX,
+                    Long.toString(TimeUnit.MILLISECONDS.toSeconds(interval)));
+            if (minInterval > maxInterval) {
+                throw new SiddhiAppCreationException(EmailConstants.POLLING_INTERVAL_MIN + " should not be greater "
+                        + "than " + EmailConstants.POLLING_INTERVAL_MAX + ". But found: " + minInterval / 1000
+                        + " and " + maxInterval / 1000 + ".");
+            }
+            this.pollingInterval = new EmailPollingInterval(interval, minInterval, maxInterval);
+        } else if (nioImapClient) {
+            this.pollingInterval = new EmailPollingInterval(interval, interval, interval);
+        }
+
+        if (nioImapClient) {
+            properties.put(EmailConstants.MAX_MESSAGES_PER_POLL, Integer.toString(getFetchLimit(
+                    EmailConstants.MAX_MESSAGES_PER_POLL, EmailConstants.DEFAULT_MAX_MESSAGES_PER_POLL, 0)));
+            properties.put(EmailConstants.FETCH_BATCH_SIZE, Integer.toString(getFetchLimit(
+                    EmailConstants.FETCH_BATCH_SIZE, EmailConstants.DEFAULT_FETCH_BATCH_SIZE, 1)));
+        }
+    }
+
+    /**
+     * Get a limit of the messages fetched by the 'nio' IMAP client.
+     *
+     * @return the limit, which is not less than the minimum.
+     */
+    private int getFetchLimit(String key, String defaultValue, int minimum) {
+        String value = optionHolder.validateAndGetStaticValue(key, configReader.readConfig(key, defaultValue));
+        int limit;
+        try {
+            limit = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            limit = minimum - 1;
+        }
+        if (limit < minimum) {
+            throw new SiddhiAppCreationException(key + " should be an integer greater than or equal to " + minimum
+                    + ". But found: " + value + ".");
+        }
+        return limit;
+    }
+
+    /**
+     * Get a bound of the adaptive polling interval.
+     *
+     * @return the bound in milliseconds.
+     */
+    private long getPollingIntervalBound(String key, String defaultValue) {
+        String value = optionHolder.validateAndGetStaticValue(key, configReader.readConfig(key, defaultValue));
+        long seconds;
+        try {
+            seconds = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            seconds = 0;
+        }
+        if (seconds < 1) {
+            throw new SiddhiAppCreationException(key + " should be a positive integer. But found: " + value + ".");
+        }
+        return TimeUnit.SECONDS.toMillis(seconds);
     }
 }
@@ -0,0 +1,887 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.source.imap;
+
+import io.siddhi.extension.io.email.nio.EmailEventLoop;
+import io.siddhi.extension.io.email.nio.EmailNioChannel;
+import io.siddhi.extension.io.email.util.EmailConstants;
+import io.siddhi.extension.io.email.util.EmailSSLSocketFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.transport.email.contract.EmailMessageListener;
+import org.wso2.transport.email.contract.message.EmailTextMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.Header;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Non-blocking IMAP client which watches a folder of a mailbox for an email source. The client logs in, selects the
+ * folder and fetches the messages which satisfy the search term. Then, it waits for new messages with IDLE if the
+ * server supports it, and searches the folder again at the polling interval otherwise. The connection is run on
+ * the thread of an event loop, which is shared by the clients of many mailboxes, instead of holding a thread per
+ * mailbox.
+ * <p>
+ * The polls are timed by the {@link EmailPollingScheduler}. The messages found by a poll, up to the maximum number
+ * of messages per poll, are fetched in batches, and each batch is fetched only once the scheduler grants a fetch
+ * slot to it. The fetched messages are handed over to the message listener on the fetch
+ * workers of the scheduler, so that a slow listener does not hold up the event loop, and the action after
+ * processed is applied to a batch once the listener has processed it, before the next batch is fetched. Therefore,
+ * a large backlog is drained with a bounded number of messages in memory, and a failure loses the
+ * acknowledgements of a single batch at most. The client connects in plain text or with implicit
+ * TLS, and does not support STARTTLS.
+ */
+public class EmailImapClient implements EmailEventLoop.Handler, EmailEventLoop.Ticker {
+    private static final Logger log = LogManager.getLogger(EmailImapClient.class);
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final long IDLE_RENEW_INTERVAL = TimeUnit.MINUTES.toMillis(25);
+    private static final Pattern LITERAL = Pattern.compile("\\{(\\d+)\\}$");
+    private static final Pattern FETCH = Pattern.compile("^(\\d+) FETCH .*\\bUID (\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EXISTS = Pattern.compile("^(\\d+) EXISTS", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EXPUNGE = Pattern.compile("^\\d+ EXPUNGE", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CAPABILITY = Pattern.compile("^(?:OK \\[)?CAPABILITY ([^\\]]*)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * States of the client. Each state except QUEUED, PROCESSING, WAITING and CLOSED waits for the response of a
+     * command.
+     */
+    enum State {
+        CONNECTING, GREETING, CAPABILITY, LOGIN, SELECT, SEARCH, QUEUED, FETCH, PROCESSING, ACTION, IDLE, WAITING,
+        CLOSED
+    }
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final String folder;
+    private final String moveToFolder;
+    private final EmailConstants.ActionAfterProcessed action;
+    private final String searchCriteria;
+    private final String contentType;
+    private final EmailPollingInterval pollingInterval;
+    private final boolean idleEnabled;
+    private final int maxMessagesPerPoll;
+    private final int fetchBatchSize;
+    private final long connectTimeout;
+    private final long readTimeout;
+    private final boolean sslEnabled;
+    private final String sslTrust;
+    private final EmailMessageListener listener;
+    private final Executor executor;
+    private final EmailPollingScheduler scheduler;
+    private final EmailEventLoop eventLoop;
+    private final Session mailSession = Session.getInstance(new Properties());
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ByteArrayOutputStream responseLine = new ByteArrayOutputStream();
+    private final StringBuilder responseText = new StringBuilder();
+    private final List<byte[]> literals = new ArrayList<>();
+    private final Set<String> capabilities = new HashSet<>();
+    private final List<Long> searchResult = new ArrayList<>();
+    private final Deque<Long> pendingUids = new ArrayDeque<>();
+    private final Map<Long, byte[]> fetchedMessages = new HashMap<>();
+    private final Deque<String> actionCommands = new ArrayDeque<>();
+    private ByteArrayOutputStream literal;
+    private int literalRemaining = 0;
+    private Consumer<Exception> errorHandler;
+    private EmailNioChannel channel;
+    private SelectionKey key;
+    private State state = State.CONNECTING;
+    private int tagCounter = 0;
+    private String pendingTag;
+    private String actionCommand;
+    private boolean loggedIn = false;
+    private boolean idling = false;
+    private volatile boolean paused = false;
+    private boolean newMessages = false;
+    private boolean moveToFolderCreated = false;
+    private boolean holdingFetchSlot = false;
+    private boolean truncatedPoll = false;
+    private long existingMessages = 0;
+    private long idleSince = 0;
+    private long nextPollAt = 0;
+    private long deadline = 0;
+
+    /**
+     * @param properties      properties of the email server connector of the source, which give the server, the
+     *                        credentials, the folder, the search term, the action after processed, the
+     *                        timeouts and the fetch limits.
+     * @param store           the store type, i.e., 'imap' or 'imaps', which is the prefix of the server properties.
+     * @param idle            whether to wait for new messages with IDLE if the server supports it.
+     * @param pollingInterval the polling interval of the source, which is adapted to the outcome of each poll.
+     * @param listener        listener of the fetched messages.
+     * @param executor        executor on which the errors are reported.
+     * @param scheduler       scheduler of the polls and the fetches.
+     * @param eventLoop       the event loop on which the connection is run.
+     */
+    public EmailImapClient(Map<String, String> properties, String store, boolean idle,
+                           EmailPollingInterval pollingInterval, EmailMessageListener listener, Executor executor,
+                           EmailPollingScheduler scheduler, EmailEventLoop eventLoop) {
+        String prefix = "mail." + store + ".";
+        this.host = properties.get(EmailConstants.TRANSPORT_MAIL_RECEIVER_HOST_NAME);
+        this.port = Integer.parseInt(properties.get(prefix + EmailConstants.EMAIL_RECEIVER_PORT));
+        this.username = properties.get(EmailConstants.TRANSPORT_MAIL_RECEIVER_USERNAME);
+        this.password = properties.get(EmailConstants.TRANSPORT_MAIL_RECEIVER_PASSWORD);
+        this.folder = properties.get(EmailConstants.TRANSPORT_MAIL_FOLDER_NAME);
+        this.moveToFolder = properties.getOrDefault(EmailConstants.TRANSPORT_MAIL_MOVE_TO_FOLDER,
+                EmailConstants.EMPTY_STRING);
+        this.action = EmailConstants.ActionAfterProcessed.valueOf(
+                properties.get(EmailConstants.TRANSPORT_MAIL_ACTION_AFTER_PROCESSED).toUpperCase(Locale.ENGLISH));
+        this.searchCriteria = toSearchCriteria(properties.get(EmailConstants.TRANSPORT_MAIL_SEARCH_TERM), action);
+        this.contentType = properties.get(EmailConstants.TRANSPORT_MAIL_RECEIVER_CONTENT_TYPE);
+        this.pollingInterval = pollingInterval;
+        this.idleEnabled = idle;
+        this.maxMessagesPerPoll = Integer.parseInt(properties.getOrDefault(EmailConstants.MAX_MESSAGES_PER_POLL,
+                EmailConstants.DEFAULT_MAX_MESSAGES_PER_POLL));
+        this.fetchBatchSize = Integer.parseInt(properties.getOrDefault(EmailConstants.FETCH_BATCH_SIZE,
+                EmailConstants.DEFAULT_FETCH_BATCH_SIZE));
+        this.connectTimeout = Long.parseLong(properties.getOrDefault(prefix + "connectiontimeout",
+                EmailConstants.DEFAULT_CONNECTION_TIMEOUT));
+        this.readTimeout = Long.parseLong(properties.getOrDefault(prefix + "timeout",
+                EmailConstants.DEFAULT_READ_TIMEOUT));
+        this.sslEnabled = Boolean.parseBoolean(properties.get(prefix + "ssl.enable"));
+        this.sslTrust = properties.get(prefix + EmailConstants.EMAIL_RECEIVER_TRUST);
+        this.listener = listener;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Connect to the IMAP server, and start watching the folder.
+     *
+     * @param errorHandler handler of the errors which make the client fail after it has started, such as a lost
+     *                     connection. It is called on the executor, since it may reconnect the source, and
+     *                     the client is closed by then.
+     * @return future which is completed when the folder is selected. It fails with an IOException if the server
+     * is unavailable or times out, and with a MessagingException if the server rejects the credentials or the
+     * folder.
+     */
+    public CompletableFuture<Void> start(Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            started.completeExceptionally(new UnknownHostException(host));
+        } else {
+            eventLoop.execute(() -> connect(address));
+        }
+        return started;
+    }
+
+    /**
+     * Stop handing over new messages to the listener until {@link #resume()} is called. The messages which are
+     * found or fetched while paused are not acknowledged to the server, so that they are fetched again on resume.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Resume handing over the messages to the listener, and search the folder for the messages which arrived
+     * while the client was paused.
+     */
+    public void resume() {
+        paused = false;
+        eventLoop.execute(() -> {
+            if (paused) {
+                return;
+            }
+            newMessages = true;
+            try {
+                if (state == State.WAITING) {
+                    search();
+                } else if (state == State.IDLE && idling) {
+                    done();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+    }
+
+    /**
+     * Close the client with LOGOUT. The messages which are being processed are not acknowledged to the server,
+     * and they are fetched again by the next client.
+     */
+    public void close() {
+        eventLoop.execute(() -> {
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (loggedIn) {
+                try {
+                    if (idling) {
+                        channel.write(ByteBuffer.wrap("DONE\r\n".getBytes(StandardCharsets.US_ASCII)));
+                    }
+                    channel.write(ByteBuffer.wrap(("L" + (++tagCounter) + " LOGOUT\r\n")
+                            .getBytes(StandardCharsets.US_ASCII)));
+                    channel.flush();
+                } catch (IOException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Unable to send LOGOUT to the IMAP server: " + this + ". " + e.getMessage());
+                    }
+                }
+            }
+            closeChannel();
+            started.completeExceptionally(new IOException("IMAP client of the server: " + this + " is closed."));
+        });
+    }
+
+    /**
+     * Handle the readiness events of the channel. Called on the event loop.
+     */
+    @Override
+    public void onSelected(SelectionKey selectedKey) {
+        try {
+            if (selectedKey.isValid() && selectedKey.isConnectable()) {
+                if (!channel.finishConnect()) {
+                    return;
+                }
+                selectedKey.interestOps(SelectionKey.OP_READ);
+                onConnected();
+            }
+            if (selectedKey.isValid() && selectedKey.isReadable()) {
+                read();
+            }
+            if (state != State.CLOSED) {
+                flush();
+            }
+        } catch (IOException | MessagingException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Time out the commands, renew IDLE, and search the folder at the polling interval. Called on the event loop.
+     */
+    @Override
+    public void onTick(long now) {
+        try {
+            if (deadline > 0 && now >= deadline) {
+                throw new SocketTimeoutException("Timed out waiting for the IMAP server: " + this
+                        + " in the state: " + state + ".");
+            }
+            if (state == State.IDLE && idling && now - idleSince >= IDLE_RENEW_INTERVAL) {
+                done();
+            } else if (state == State.WAITING && !paused && now >= nextPollAt) {
+                search();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void connect(InetSocketAddress address) {
+        try {
+            channel = EmailNioChannel.open(host, port, sslEnabled
+                    ? EmailSSLSocketFactory.getSSLContext(sslTrust, host) : null);
+            eventLoop.addTicker(this);
+            deadline = System.currentTimeMillis() + connectTimeout;
+            if (channel.connect(address)) {
+                key = eventLoop.register(channel.getSocketChannel(), SelectionKey.OP_READ, this);
+                onConnected();
+            } else {
+                key = eventLoop.register(channel.getSocketChannel(), SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void onConnected() throws IOException {
+        state = State.GREETING;
+        deadline = System.currentTimeMillis() + readTimeout;
+        flush();
+    }
+
+    private void read() throws IOException, MessagingException {
+        int read;
+        while ((read = channel.read(readBuffer)) > 0) {
+            readBuffer.flip();
+            while (readBuffer.hasRemaining() && state != State.CLOSED) {
+                if (literalRemaining > 0) {
+                    int length = Math.min(literalRemaining, readBuffer.remaining());
+                    literal.write(readBuffer.array(), readBuffer.position(), length);
+                    readBuffer.position(readBuffer.position() + length);
+                    literalRemaining -= length;
+                    if (literalRemaining == 0) {
+                        literals.add(literal.toByteArray());
+                        literal = null;
+                    }
+                    continue;
+                }
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    onResponseLine();
+                } else if (b != '\r') {
+                    responseLine.write(b);
+                }
+            }
+            readBuffer.clear();
+            if (state == State.CLOSED) {
+                return;
+            }
+        }
+        if (read < 0) {
+            throw new EOFException("Connection is closed by the IMAP server: " + this + ".");
+        }
+    }
+
+    /**
+     * Collect a line of a response, and the literal which follows it, if any, until the response is complete.
+     */
+    private void onResponseLine() throws IOException, MessagingException {
+        String line = new String(responseLine.toByteArray(), StandardCharsets.UTF_8);
+        responseLine.reset();
+        responseText.append(line);
+        Matcher matcher = LITERAL.matcher(line);
+        if (matcher.find()) {
+            literalRemaining = Integer.parseInt(matcher.group(1));
+            if (literalRemaining == 0) {
+                literals.add(new byte[0]);
+            } else {
+                literal = new ByteArrayOutputStream(literalRemaining);
+            }
+            return;
+        }
+        String response = responseText.toString();
+        List<byte[]> responseLiterals = new ArrayList<>(literals);
+        responseText.setLength(0);
+        literals.clear();
+        if (response.startsWith("+")) {
+            onContinuation();
+        } else if (response.startsWith("* ")) {
+            onUntagged(response.substring(2), responseLiterals);
+        } else {
+            int separator = response.indexOf(' ');
+            if (separator > 0 && response.substring(0, separator).equals(pendingTag)) {
+                String result = response.substring(separator + 1);
+                onTagged(result.regionMatches(true, 0, "OK", 0, 2), result);
+            }
+        }
+    }
+
+    private void onUntagged(String response, List<byte[]> responseLiterals) throws IOException, MessagingException {
+        Matcher capability = CAPABILITY.matcher(response);
+        if (capability.find()) {
+            capabilities.clear();
+            Collections.addAll(capabilities, capability.group(1).toUpperCase(Locale.ENGLISH).split(" "));
+        }
+        String upperCase = response.toUpperCase(Locale.ENGLISH);
+        if (state == State.GREETING) {
+            if (upperCase.startsWith("PREAUTH")) {
+                loggedIn = true;
+            } else if (!upperCase.startsWith("OK")) {
+                throw new IOException("IMAP server: " + this + " rejected the connection: " + response);
+            }
+            sendCommand("CAPABILITY", State.CAPABILITY);
+        } else if (upperCase.startsWith("BYE")) {
+            throw new EOFException("IMAP server: " + this + " closed the connection: " + response);
+        } else if (upperCase.startsWith("SEARCH")) {
+            for (String uid : response.substring(6).trim().split(" ")) {
+                if (!uid.isEmpty()) {
+                    searchResult.add(Long.parseLong(uid));
+                }
+            }
+        } else if (EXPUNGE.matcher(response).find()) {
+            existingMessages--;
+        } else {
+            Matcher exists = EXISTS.matcher(response);
+            if (exists.find()) {
+                long count = Long.parseLong(exists.group(1));
+                if (count > existingMessages) {
+                    newMessages = true;
+                }
+                existingMessages = count;
+                if (state == State.IDLE && idling && !paused) {
+                    done();
+                }
+                return;
+            }
+            Matcher fetch = FETCH.matcher(response);
+            if (fetch.find() && !responseLiterals.isEmpty()) {
+                fetchedMessages.put(Long.parseLong(fetch.group(2)), responseLiterals.get(0));
+            }
+        }
+    }
+
+    private void onContinuation() throws IOException {
+        if (state == State.IDLE) {
+            idling = true;
+            idleSince = System.currentTimeMillis();
+            deadline = 0;
+            if (newMessages && !paused) {
+                done();
+            }
+        }
+    }
+
+    private void onTagged(boolean ok, String result) throws IOException, MessagingException {
+        pendingTag = null;
+        deadline = 0;
+        switch (state) {
+            case CAPABILITY:
+                if (!loggedIn) {
+                    login();
+                } else {
+                    sendCommand("SELECT " + quote(folder), State.SELECT);
+                }
+                break;
+            case LOGIN:
+                if (!ok) {
+                    throw new AuthenticationFailedException("IMAP server: " + this + " rejected the login of the "
+                            + "user: " + username + ". " + result);
+                }
+                loggedIn = true;
+                sendCommand("CAPABILITY", State.CAPABILITY);
+                break;
+            case SELECT:
+                if (!ok) {
+                    throw new MessagingException("Unable to select the folder: " + folder + " of the IMAP server: "
+                            + this + ". " + result);
+                }
+                started.complete(null);
+                state = State.WAITING;
+                nextPollAt = System.currentTimeMillis()
+                        + scheduler.getStartDelay(pollingInterval.getPollingInterval());
+                break;
+            case SEARCH:
+                if (!ok) {
+                    throw new IOException("IMAP server: " + this + " failed to search the folder: " + folder + ". "
+                            + result);
+                }
+                if (paused) {
+                    searchResult.clear();
+                    waitForMessages();
+                    break;
+                }
+                pollingInterval.onPoll(searchResult.size());
+                if (searchResult.isEmpty()) {
+                    waitForMessages();
+                } else {
+                    Collections.sort(searchResult);
+                    int limit = maxMessagesPerPoll > 0 ? Math.min(maxMessagesPerPoll, searchResult.size())
+                            : searchResult.size();
+                    pendingUids.addAll(searchResult.subList(0, limit));
+                    truncatedPoll = limit < searchResult.size();
+                    searchResult.clear();
+                    requestFetchSlot();
+                }
+                break;
+            case FETCH:
+                if (!ok) {
+                    throw new IOException("IMAP server: " + this + " failed to fetch the messages. " + result);
+                }
+                process();
+                break;
+            case ACTION:
+                if (!ok && !actionCommand.startsWith("CREATE ")) {
+                    log.warn("IMAP server: " + this + " rejected the action after processed: " + actionCommand
+                            + ". " + result + ". Therefore, the processed messages remain in the folder: " + folder
+                            + ".");
+                    actionCommands.clear();
+                }
+                nextAction();
+                break;
+            case IDLE:
+                idling = false;
+                if (!ok) {
+                    capabilities.remove("IDLE");
+                }
+                if (paused) {
+                    //IDLE is renewed, and the folder is searched on resume.
+                    waitForMessages();
+                } else {
+                    search();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void login() throws IOException, MessagingException {
+        if (capabilities.contains("LOGINDISABLED")) {
+            throw new MessagingException("IMAP server: " + this + " does not allow LOGIN before STARTTLS, which is "
+                    + "not supported by the non-blocking IMAP client. Use 'ssl.enable' instead.");
+        }
+        sendCommand("LOGIN " + quote(username) + " " + quote(password), State.LOGIN);
+    }
+
+    private void search() throws IOException {
+        newMessages = false;
+        searchResult.clear();
+        sendCommand("UID SEARCH " + searchCriteria, State.SEARCH);
+    }
+
+    /**
+     * Wait for new messages with IDLE if the server supports it, else until the next poll.
+     */
+    private void waitForMessages() throws IOException {
+        if (newMessages && !paused) {
+            search();
+        } else if (isIdleSupported()) {
+            sendCommand("IDLE", State.IDLE);
+        } else {
+            state = State.WAITING;
+            nextPollAt = System.currentTimeMillis()
+                    + scheduler.getPollDelay(pollingInterval.getPollingInterval());
+        }
+    }
+
+    private void requestFetchSlot() {
+        state = State.QUEUED;
+        scheduler.requestFetchSlot(() -> eventLoop.execute(this::onFetchSlotGranted));
+    }
+
+    /**
+     * Fetch the next batch of the messages found by the poll.
+     */
+    private void onFetchSlotGranted() {
+        holdingFetchSlot = true;
+        if (state != State.QUEUED) {
+            releaseFetchSlot();
+            return;
+        }
+        if (paused) {
+            try {
+                onBatchProcessed();
+            } catch (IOException e) {
+                fail(e);
+            }
+            return;
+        }
+        List<Long> batch = new ArrayList<>(Math.min(fetchBatchSize, pendingUids.size()));
+        while (batch.size() < fetchBatchSize && !pendingUids.isEmpty()) {
+            batch.add(pendingUids.poll());
+        }
+        try {
+            sendCommand("UID FETCH " + toSequenceSet(batch) + " (UID BODY.PEEK[])", State.FETCH);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Release the fetch slot of a processed batch, and fetch the next batch, or wait for the next poll if the
+     * messages of the poll are all processed. If the poll was truncated at the maximum number of messages per
+     * poll, the rest of the messages are found by the next poll, which is done right away in the IDLE mode, since
+     * the server does not notify the messages which exist already.
+     */
+    private void onBatchProcessed() throws IOException {
+        releaseFetchSlot();
+        if (paused) {
+            pendingUids.clear();
+        }
+        if (!pendingUids.isEmpty()) {
+            requestFetchSlot();
+            return;
+        }
+        if (truncatedPoll && isIdleSupported()) {
+            newMessages = true;
+        }
+        truncatedPoll = false;
+        waitForMessages();
+    }
+
+    private boolean isIdleSupported() {
+        return idleEnabled && capabilities.contains("IDLE");
+    }
+
+    private void releaseFetchSlot() {
+        if (holdingFetchSlot) {
+            holdingFetchSlot = false;
+            scheduler.releaseFetchSlot();
+        }
+    }
+
+    private void done() throws IOException {
+        idling = false;
+        deadline = System.currentTimeMillis() + readTimeout;
+        write("DONE");
+    }
+
+    /**
+     * Hand over the fetched messages to the listener on the fetch workers, and apply the action after processed to
+     * them on the event loop afterwards. Once the client is paused, the messages are no longer handed over.
+     */
+    private void process() throws IOException {
+        List<Map.Entry<Long, byte[]>> messages = new ArrayList<>(fetchedMessages.entrySet());
+        fetchedMessages.clear();
+        if (messages.isEmpty() || paused) {
+            onBatchProcessed();
+            return;
+        }
+        messages.sort(Map.Entry.comparingByKey());
+        state = State.PROCESSING;
+        try {
+            scheduler.getWorkers().execute(() -> {
+                List<Long> processedUids = new ArrayList<>(messages.size());
+                for (Map.Entry<Long, byte[]> message : messages) {
+                    if (paused) {
+                        //The rest of the messages are not acknowledged, so that they are fetched on resume.
+                        break;
+                    }
+                    try {
+                        listener.onMessage(toEmailMessage(message.getValue()));
+                    } catch (MessagingException | IOException | RuntimeException e) {
+                        log.error("Error is encountered while processing the message: " + message.getKey()
+                                + " of the folder: " + folder + " of the IMAP server: " + this + ". "
+                                + e.getMessage(), e);
+                    }
+                    processedUids.add(message.getKey());
+                }
+                eventLoop.execute(() -> onProcessed(processedUids));
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Unable to process the messages fetched from the IMAP server: " + this + ". "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private void onProcessed(List<Long> uids) {
+        if (state != State.PROCESSING) {
+            return;
+        }
+        if (uids.isEmpty()) {
+            try {
+                onBatchProcessed();
+            } catch (IOException e) {
+                fail(e);
+            }
+            return;
+        }
+        String uidSet = toSequenceSet(uids);
+        switch (action) {
+            case SEEN:
+                actionCommands.add("UID STORE " + uidSet + " +FLAGS.SILENT (\\Seen)");
+                break;
+            case FLAGGED:
+                actionCommands.add("UID STORE " + uidSet + " +FLAGS.SILENT (\\Flagged)");
+                break;
+            case ANSWERED:
+                actionCommands.add("UID STORE " + uidSet + " +FLAGS.SILENT (\\Answered)");
+                break;
+            case DELETE:
+                actionCommands.add("UID STORE " + uidSet + " +FLAGS.SILENT (\\Seen \\Deleted)");
+                actionCommands.add(capabilities.contains("UIDPLUS") ? "UID EXPUNGE " + uidSet : "EXPUNGE");
+                break;
+            case MOVE:
+                if (!moveToFolderCreated) {
+                    actionCommands.add("CREATE " + quote(moveToFolder));
+                    moveToFolderCreated = true;
+                }
+                actionCommands.add("UID STORE " + uidSet + " +FLAGS.SILENT (\\Seen)");
+                if (capabilities.contains("MOVE")) {
+                    actionCommands.add("UID MOVE " + uidSet + " " + quote(moveToFolder));
+                } else {
+                    actionCommands.add("UID COPY " + uidSet + " " + quote(moveToFolder));
+                    actionCommands.add("UID STORE " + uidSet + " +FLAGS.SILENT (\\Deleted)");
+                    actionCommands.add(capabilities.contains("UIDPLUS") ? "UID EXPUNGE " + uidSet : "EXPUNGE");
+                }
+                break;
+            default:
+                break;
+        }
+        try {
+            nextAction();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void nextAction() throws IOException {
+        actionCommand = actionCommands.poll();
+        if (actionCommand != null) {
+            sendCommand(actionCommand, State.ACTION);
+        } else {
+            onBatchProcessed();
+        }
+    }
+
+    private EmailTextMessage toEmailMessage(byte[] content) throws MessagingException, IOException {
+        MimeMessage message = new MimeMessage(mailSession, new ByteArrayInputStream(content));
+        EmailTextMessage emailMessage = new EmailTextMessage(getText(message));
+        Map<String, String> headers = new HashMap<>();
+        Enumeration<?> allHeaders = message.getAllHeaders();
+        while (allHeaders.hasMoreElements()) {
+            Header header = (Header) allHeaders.nextElement();
+            headers.putIfAbsent(header.getName(), header.getValue());
+        }
+        emailMessage.setHeaders(headers);
+        return emailMessage;
+    }
+
+    /**
+     * Get the text of the message in the content type of the source, which is empty if the message has no part
+     * in that content type.
+     */
+    private String getText(Part part) throws MessagingException, IOException {
+        if (part.isMimeType(contentType)) {
+            return part.getContent().toString();
+        }
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                String text = getText(multipart.getBodyPart(i));
+                if (!text.isEmpty()) {
+                    return text;
+                }
+            }
+        }
+        return EmailConstants.EMPTY_STRING;
+    }
+
+    private void sendCommand(String command, State next) throws IOException {
+        pendingTag = "A" + (++tagCounter);
+        state = next;
+        deadline = System.currentTimeMillis() + readTimeout;
+        write(pendingTag + " " + command);
+    }
+
+    private void write(String line) throws IOException {
+        channel.write(ByteBuffer.wrap((line + "\r\n").getBytes(StandardCharsets.UTF_8)));
+        flush();
+    }
+
+    private void flush() throws IOException {
+        boolean flushed = channel.flush();
+        if (key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+            key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void fail(Exception error) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("IMAP client of the server: " + this + " failed in the state: " + state + ". "
+                    + error.getMessage());
+        }
+        closeChannel();
+        if (!started.completeExceptionally(error) && errorHandler != null) {
+            try {
+                executor.execute(() -> errorHandler.accept(error));
+            } catch (RejectedExecutionException e) {
+                log.error("Unable to report the error of the IMAP client of the server: " + this + ". "
+                        + error.getMessage(), error);
+            }
+        }
+    }
+
+    private void closeChannel() {
+        state = State.CLOSED;
+        deadline = 0;
+        idling = false;
+        pendingUids.clear();
+        releaseFetchSlot();
+        eventLoop.removeTicker(this);
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Error in closing the connection to the IMAP server: " + this + ". "
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert the search term of the source, i.e., 'key1:value1, key2:value2', to IMAP search criteria. The
+     * messages to which the action after processed is applied already are excluded.
+     */
+    static String toSearchCriteria(String searchTerm, EmailConstants.ActionAfterProcessed action) {
+        StringBuilder criteria = new StringBuilder("NOT DELETED");
+        switch (action) {
+            case FLAGGED:
+                criteria.append(" UNFLAGGED");
+                break;
+            case ANSWERED:
+                criteria.append(" UNANSWERED");
+                break;
+            default:
+                criteria.append(" UNSEEN");
+                break;
+        }
+        if (searchTerm != null && !searchTerm.isEmpty()) {
+            for (String condition : searchTerm.split(",")) {
+                String[] nameValuePair = condition.split(":");
+                criteria.append(' ').append(nameValuePair[0].trim().toUpperCase(Locale.ENGLISH)).append(' ')
+                        .append(quote(nameValuePair[1].trim()));
+            }
+        }
+        return criteria.toString();
+    }
+
+    static String toSequenceSet(List<Long> uids) {
+        return uids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.source.imap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Polling interval of an email source, which adapts to the traffic of the mailbox between a minimum and a maximum.
+ * The interval drops to the minimum when a poll finds messages, so that a busy mailbox is drained with a low
+ * latency, and it doubles after each poll which finds none, up to the maximum, so that a quiet mailbox is not
+ * polled in vain. If the minimum and the maximum are equal, the interval is fixed. The interval outlives the
+ * connections of the source, and it is registered as an MBean under the domain {@value #MBEAN_DOMAIN}.
+ */
+public class EmailPollingInterval implements EmailPollingIntervalMXBean {
+    private static final Logger log = LogManager.getLogger(EmailPollingInterval.class);
+    private static final String MBEAN_DOMAIN = "io.siddhi.extension.io.email";
+
+    private final long minInterval;
+    private final long maxInterval;
+    private volatile long interval;
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong emptyPolls = new AtomicLong();
+    private ObjectName objectName;
+
+    /**
+     * @param initialInterval the interval before the first poll in milliseconds, which is bounded by the minimum
+     *                        and the maximum.
+     * @param minInterval     the minimum interval in milliseconds.
+     * @param maxInterval     the maximum interval in milliseconds.
+     */
+    public EmailPollingInterval(long initialInterval, long minInterval, long maxInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.interval = Math.max(minInterval, Math.min(maxInterval, initialInterval));
+    }
+
+    /**
+     * Adapt the interval to the outcome of a poll. Called by the client of the source, one poll at a time.
+     *
+     * @param messages the number of the messages found by the poll.
+     */
+    public void onPoll(int messages) {
+        polls.incrementAndGet();
+        if (messages > 0) {
+            interval = minInterval;
+        } else {
+            emptyPolls.incrementAndGet();
+            interval = Math.min(maxInterval, interval * 2);
+        }
+    }
+
+    /**
+     * Register the interval with the platform MBean server. A failure is logged, since the interval is only
+     * registered for monitoring.
+     *
+     * @param siddhiApp name of the Siddhi app of the source.
+     * @param stream    name of the stream of the source.
+     * @param mailbox   the mailbox, i.e., 'username@host/folder', which distinguishes the sources of a stream.
+     */
+    public void register(String siddhiApp, String stream, String mailbox) {
+        try {
+            ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=EmailSource,siddhiApp="
+                    + ObjectName.quote(siddhiApp) + ",stream=" + ObjectName.quote(stream) + ",mailbox="
+                    + ObjectName.quote(mailbox));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            log.warn("Unable to register the polling interval of the email source of the stream: " + stream
+                    + " for the mailbox: " + mailbox + ". " + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn("Unable to unregister the polling interval: " + objectName + ". " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    @Override
+    public long getPollingInterval() {
+        return interval;
+    }
+
+    @Override
+    public long getMinPollingInterval() {
+        return minInterval;
+    }
+
+    @Override
+    public long getMaxPollingInterval() {
+        return maxInterval;
+    }
+
+    @Override
+    public long getPolls() {
+        return polls.get();
+    }
+
+    @Override
+    public long getEmptyPolls() {
+        return emptyPolls.get();
+    }
+}
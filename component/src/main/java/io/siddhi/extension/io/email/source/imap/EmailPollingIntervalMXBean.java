@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.source.imap;
+
+/**
+ * Management interface of the polling interval of an email source, which is registered with the platform MBean
+ * server so that the current interval can be monitored through JMX.
+ */
+public interface EmailPollingIntervalMXBean {
+
+    /**
+     * @return the current polling interval in milliseconds.
+     */
+    long getPollingInterval();
+
+    long getMinPollingInterval();
+
+    long getMaxPollingInterval();
+
+    /**
+     * @return the number of the polls done so far.
+     */
+    long getPolls();
+
+    /**
+     * @return the number of the polls which found no messages.
+     */
+    long getEmptyPolls();
+}
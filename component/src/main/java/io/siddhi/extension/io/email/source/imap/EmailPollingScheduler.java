@@ -0,0 +1,166 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.siddhi.extension.io.email.source.imap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JVM wide scheduler of the polls of the non-blocking IMAP clients of the email sources. The first poll of each
+ * mailbox is delayed by a random time, and each later poll is shifted by a random fraction of the polling interval,
+ * so that the mailboxes whose sources start together are not polled together. The messages of a poll are fetched
+ * and processed only while the poll holds a fetch slot, and the slots are granted to the waiting mailboxes in
+ * their order of request. Since a mailbox requests a slot again only after it has processed its messages, a busy
+ * mailbox cannot starve the others, and the number of the messages held in memory is bounded by the slots.
+ */
+public class EmailPollingScheduler {
+    private static final double POLLING_JITTER = 0.1;
+    private static final long MAX_START_JITTER = 1000;
+    private static EmailPollingScheduler sharedScheduler;
+    private static int references = 0;
+
+    private final int fetchSlots;
+    private final ExecutorService workers;
+    private final Deque<Runnable> waitingPolls = new ArrayDeque<>();
+    private int usedFetchSlots = 0;
+
+    /**
+     * @param fetchWorkers the number of the fetch slots, and of the threads on which the fetched messages are
+     *                     processed.
+     */
+    public EmailPollingScheduler(int fetchWorkers) {
+        this.fetchSlots = fetchWorkers;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(fetchWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "EmailSourceFetchWorker-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the JVM wide scheduler, creating it if it does not exist. The scheduler should be released through
+     * {@link #releaseShared(long)} by each of its users.
+     *
+     * @param fetchWorkers the number of the fetch workers, if the scheduler is created.
+     * @return the shared scheduler.
+     */
+    public static synchronized EmailPollingScheduler acquireShared(int fetchWorkers) {
+        if (sharedScheduler == null) {
+            sharedScheduler = new EmailPollingScheduler(fetchWorkers);
+        }
+        references++;
+        return sharedScheduler;
+    }
+
+    /**
+     * Release the JVM wide scheduler, stopping its workers if it is not used anymore.
+     *
+     * @param timeout the maximum time in milliseconds to wait for the workers to terminate.
+     */
+    public static synchronized void releaseShared(long timeout) {
+        if (references == 0) {
+            return;
+        }
+        if (--references == 0) {
+            sharedScheduler.shutdown(timeout);
+            sharedScheduler = null;
+        }
+    }
+
+    /**
+     * Get the delay of the first poll of a mailbox, which is a random time up to the polling interval or a second,
+     * whichever is smaller.
+     *
+     * @param pollingInterval the polling interval of the mailbox in milliseconds.
+     * @return the delay in milliseconds.
+     */
+    public long getStartDelay(long pollingInterval) {
+        return ThreadLocalRandom.current().nextLong(Math.min(pollingInterval, MAX_START_JITTER) + 1);
+    }
+
+    /**
+     * Get the delay of the next poll of a mailbox, which is the polling interval shifted by up to
+     * {@value #POLLING_JITTER} of it in either direction.
+     *
+     * @param pollingInterval the polling interval of the mailbox in milliseconds.
+     * @return the delay in milliseconds.
+     */
+    public long getPollDelay(long pollingInterval) {
+        long jitter = (long) (pollingInterval * POLLING_JITTER);
+        return pollingInterval + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+    }
+
+    /**
+     * Request a fetch slot for a poll which found messages. The slot should be released through
+     * {@link #releaseFetchSlot()} once the messages are processed, even if the poll is abandoned by then.
+     *
+     * @param onGranted called when the slot is granted, on the thread which released it. It should not block.
+     */
+    public void requestFetchSlot(Runnable onGranted) {
+        synchronized (this) {
+            if (usedFetchSlots >= fetchSlots) {
+                waitingPolls.add(onGranted);
+                return;
+            }
+            usedFetchSlots++;
+        }
+        onGranted.run();
+    }
+
+    /**
+     * Release a fetch slot, granting it to the poll which has waited the longest, if any.
+     */
+    public void releaseFetchSlot() {
+        Runnable next;
+        synchronized (this) {
+            next = waitingPolls.poll();
+            if (next == null) {
+                usedFetchSlots--;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    /**
+     * Get the workers on which the fetched messages are processed.
+     *
+     * @return the executor of the workers.
+     */
+    public Executor getWorkers() {
+        return workers;
+    }
+
+    private void shutdown(long timeout) {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -32,6 +32,7 @@ public class EmailConstants {
     public static final String MAIL_PUBLISHER_PASSWORD = "password";
     public static final String MAIL_PUBLISHER_HOST_NAME = "host";
     public static final String MAIL_PUBLISHER_SSL_ENABLE = "ssl.enable";
+    public static final String MAIL_PUBLISHER_STARTTLS_ENABLE = "starttls.enable";
     public static final String MAIL_PUBLISHER_TRUST = "mail.smtp.ssl.trust";
     public static final String MAIL_PUBLISHER_PORT = "port";
     public static final String MAIL_PUBLISHER_AUTH = "auth";
@@ -43,6 +44,62 @@ public class EmailConstants {
     public static final String ATTACHMENTS = "attachments";
     public static final String PUBLISHER_POOL_SIZE = "connection.pool.size";
     public static final String EMAIL_CLIENT_CONNECTION_POOL_ID = "email_client_connection_pool";
+    public static final String RATE_LIMIT_MESSAGES_PER_SECOND = "rate.limit.messages.per.second";
+    public static final String RATE_LIMIT_RECIPIENTS_PER_MINUTE = "rate.limit.recipients.per.minute";
+    public static final String RATE_LIMIT_BURST_SIZE = "rate.limit.burst.size";
+    public static final String ADAPTIVE_CONCURRENCY_ENABLE = "adaptive.concurrency.enable";
+    public static final String ADAPTIVE_CONCURRENCY_LATENCY_TOLERANCE = "adaptive.concurrency.latency.tolerance";
+    public static final String OUTBOX_ENABLE = "outbox.enable";
+    public static final String OUTBOX_DIRECTORY = "outbox.directory";
+    public static final String OUTBOX_SEGMENT_SIZE = "outbox.segment.size";
+    public static final String OUTBOX_FSYNC = "outbox.fsync";
+    public static final String OUTBOX_FSYNC_INTERVAL = "outbox.fsync.interval";
+    public static final String OUTBOX_WORKERS = "outbox.workers";
+    public static final String SUPPRESSION_WINDOW = "suppression.window";
+    public static final String SUPPRESSION_CACHE_SIZE = "suppression.cache.size";
+    public static final String SUPPRESSION_SUMMARY_ENABLE = "suppression.summary.enable";
+    public static final String RELAYS = "relays";
+    public static final String RELAY_STRATEGY = "relay.strategy";
+    public static final String RELAY_DOMAIN_ROUTES = "relay.domain.routes";
+    public static final String RELAY_FAILURE_THRESHOLD = "relay.failure.threshold";
+    public static final String RELAY_RETRY_INTERVAL = "relay.retry.interval";
+    public static final String RECIPIENT_CHUNK_SIZE = "recipient.chunk.size";
+    public static final String MERGE_WINDOW = "merge.window";
+    public static final String MERGE_MAX_RECIPIENTS = "merge.max.recipients";
+    public static final String BODY_TEMPLATE_HTML = "body.template.html";
+    public static final String BODY_TEMPLATE_TEXT = "body.template.text";
+    public static final String SSL_SESSION_REUSE = "ssl.session.reuse";
+    public static final String MIME_8BIT_ENABLE = "mime.8bit.enable";
+    public static final String SINK_ID = "sink.id";
+    public static final String SEND_AT = "send.at";
+    public static final String DELAY = "delay";
+    public static final String SCHEDULE_TICK = "schedule.tick";
+    public static final String SCHEDULE_PERSIST = "schedule.persist";
+    public static final String PRIORITY = "priority";
+    public static final String PRIORITY_SCHEDULING = "priority.scheduling";
+    public static final String PRIORITY_WEIGHTS = "priority.weights";
+    public static final String PRIORITY_RESERVED_CONNECTIONS = "priority.reserved.connections";
+    public static final String CIRCUIT_BREAKER_ENABLE = "circuit.breaker.enable";
+    public static final String CIRCUIT_BREAKER_WINDOW_SIZE = "circuit.breaker.window.size";
+    public static final String CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD = "circuit.breaker.failure.rate.threshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD = "circuit.breaker.slow.call.rate.threshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_DURATION = "circuit.breaker.slow.call.duration";
+    public static final String CIRCUIT_BREAKER_OPEN_DURATION = "circuit.breaker.open.duration";
+    public static final String CIRCUIT_BREAKER_TRIAL_SENDS = "circuit.breaker.trial.sends";
+    public static final String CONNECTION_TIMEOUT = "connection.timeout";
+    public static final String READ_TIMEOUT = "read.timeout";
+    public static final String WRITE_TIMEOUT = "write.timeout";
+    public static final String POOL_WAIT_TIMEOUT = "connection.pool.wait.timeout";
+    public static final String SEND_DEADLINE = "send.deadline";
+    public static final String CONNECTION_MAX_MESSAGES = "connection.max.messages";
+    public static final String CONNECTION_MAX_LIFETIME = "connection.max.lifetime";
+    public static final String SEND_EXECUTOR = "send.executor";
+    public static final String SEND_EXECUTOR_CALLER = "caller";
+    public static final String SEND_EXECUTOR_VIRTUAL_THREAD = "virtual.thread";
+    public static final String SMTP_CLIENT = "smtp.client";
+    public static final String SMTP_CLIENT_BLOCKING = "blocking";
+    public static final String SMTP_CLIENT_NIO = "nio";
+    public static final String SMTP_CLIENT_THREADS = "smtp.client.threads";
 
     /**
      * Default values for the email sink configurations.
@@ -50,9 +107,55 @@ public class EmailConstants {
     public static final String MAIL_PUBLISHER_DEFAULT_HOST = "smtp.gmail.com";
     public static final String MAIL_PUBLISHER_DEFAULT_SSL_ENABLE = "true";
     public static final String MAIL_PUBLISHER_DEFAULT_PORT = "465";
+    public static final String MAIL_PUBLISHER_DEFAULT_STARTTLS_PORT = "587";
+    public static final String MAIL_PUBLISHER_DEFAULT_PLAIN_PORT = "25";
+    public static final String MAIL_PUBLISHER_DEFAULT_STARTTLS_ENABLE = "false";
     public static final String MAIL_PUBLISHER_DEFAULT_AUTH = "true";
     public static final String MAIL_PUBLISHER_DEFAULT_CONTENT_TYPE = "text/plain";
     public static final String MAIL_PUBLISHER_DEFAULY_TRUST = "*";
+    public static final String DEFAULT_RATE_LIMIT_MESSAGES_PER_SECOND = "0";
+    public static final String DEFAULT_RATE_LIMIT_RECIPIENTS_PER_MINUTE = "0";
+    public static final String DEFAULT_RATE_LIMIT_BURST_SIZE = "1";
+    public static final String DEFAULT_ADAPTIVE_CONCURRENCY_ENABLE = "false";
+    public static final String DEFAULT_ADAPTIVE_CONCURRENCY_LATENCY_TOLERANCE = "2";
+    public static final String DEFAULT_OUTBOX_ENABLE = "false";
+    public static final String DEFAULT_OUTBOX_SEGMENT_SIZE = "16777216";
+    public static final String DEFAULT_OUTBOX_FSYNC = "interval";
+    public static final String DEFAULT_OUTBOX_FSYNC_INTERVAL = "1000";
+    public static final String DEFAULT_OUTBOX_WORKERS = "1";
+    public static final String DEFAULT_SUPPRESSION_WINDOW = "0";
+    public static final String DEFAULT_SUPPRESSION_CACHE_SIZE = "10000";
+    public static final String DEFAULT_SUPPRESSION_SUMMARY_ENABLE = "false";
+    public static final String DEFAULT_RELAY_STRATEGY = "round.robin";
+    public static final String DEFAULT_RELAY_FAILURE_THRESHOLD = "3";
+    public static final String DEFAULT_RELAY_RETRY_INTERVAL = "30000";
+    public static final String DEFAULT_RECIPIENT_CHUNK_SIZE = "0";
+    public static final String DEFAULT_MERGE_WINDOW = "0";
+    public static final String DEFAULT_MERGE_MAX_RECIPIENTS = "50";
+    public static final String DEFAULT_SSL_SESSION_REUSE = "true";
+    public static final String DEFAULT_MIME_8BIT_ENABLE = "false";
+    public static final String DEFAULT_SCHEDULE_TICK = "100";
+    public static final String DEFAULT_SCHEDULE_PERSIST = "false";
+    public static final String DEFAULT_PRIORITY_SCHEDULING = "strict";
+    public static final String DEFAULT_PRIORITY_WEIGHTS = "4,2,1";
+    public static final String DEFAULT_PRIORITY_RESERVED_CONNECTIONS = "0";
+    public static final String DEFAULT_CIRCUIT_BREAKER_ENABLE = "false";
+    public static final String DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE = "20";
+    public static final String DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD = "50";
+    public static final String DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD = "100";
+    public static final String DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION = "10000";
+    public static final String DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = "30000";
+    public static final String DEFAULT_CIRCUIT_BREAKER_TRIAL_SENDS = "3";
+    public static final String DEFAULT_CONNECTION_TIMEOUT = "30000";
+    public static final String DEFAULT_READ_TIMEOUT = "60000";
+    public static final String DEFAULT_WRITE_TIMEOUT = "60000";
+    public static final String DEFAULT_POOL_WAIT_TIMEOUT = "30000";
+    public static final String DEFAULT_SEND_DEADLINE = "0";
+    public static final String DEFAULT_CONNECTION_MAX_MESSAGES = "0";
+    public static final String DEFAULT_CONNECTION_MAX_LIFETIME = "0";
+    public static final String DEFAULT_SEND_EXECUTOR = "caller";
+    public static final String DEFAULT_SMTP_CLIENT = "blocking";
+    public static final String DEFAULT_SMTP_CLIENT_THREADS = "2";
 
     /**
      * Required carbon transport properties to send the email.
@@ -61,6 +164,12 @@ public class EmailConstants {
     public static final String TRANSPORT_MAIL_PUBLISHER_PASSWORD = "password";
     public static final String TRANSPORT_MAIL_PUBLISHER_HOST_NAME = "mail.smtp.host";
     public static final String TRANSPORT_MAIL_PUBLISHER_SSL_ENABLE = "mail.smtp.ssl.enable";
+    public static final String TRANSPORT_MAIL_PUBLISHER_STARTTLS_ENABLE = "mail.smtp.starttls.enable";
+    public static final String TRANSPORT_MAIL_PUBLISHER_STARTTLS_REQUIRED = "mail.smtp.starttls.required";
+    public static final String TRANSPORT_MAIL_PUBLISHER_ALLOW_8BITMIME = "mail.smtp.allow8bitmime";
+    public static final String TRANSPORT_MAIL_PUBLISHER_CONNECTION_TIMEOUT = "mail.smtp.connectiontimeout";
+    public static final String TRANSPORT_MAIL_PUBLISHER_TIMEOUT = "mail.smtp.timeout";
+    public static final String TRANSPORT_MAIL_PUBLISHER_WRITE_TIMEOUT = "mail.smtp.writetimeout";
     public static final String TRANSPORT_MAIL_PUBLISHER_AUTH_ENABLE = "mail.smtp.auth";
     public static final String TRANSPORT_MAIL_PUBLISHER_PORT = "mail.smtp.port";
     public static final String TRANSPORT_MAIL_PUBLISHER_STORE_PROTOCOL = "mail.store.protocol";
@@ -70,6 +179,8 @@ public class EmailConstants {
     public static final String TRANSPORT_MAIL_HEADER_BCC = "Bcc";
     public static final String TRANSPORT_MAIL_HEADER_SUBJECT = "Subject";
     public static final String TRANSPORT_MAIL_HEADER_CONTENT_TYPE = "Content-Type";
+    public static final String TRANSPORT_MAIL_HEADER_X_PRIORITY = "X-Priority";
+    public static final String TRANSPORT_MAIL_HEADER_X_SIDDHI_MESSAGE_ID = "X-Siddhi-Message-Id";
 
     /**
      * Email source configurations.
@@ -87,6 +198,17 @@ public class EmailConstants {
     public static final String MOVE_TO_FOLDER = "move.to.folder";
     public static final String EMAIL_SEARCH_TERM = "search.term";
     public static final String EMAIL_RECEIVER_TRUST = "ssl.trust";
+    public static final String IMAP_CLIENT = "imap.client";
+    public static final String IMAP_CLIENT_BLOCKING = "blocking";
+    public static final String IMAP_CLIENT_NIO = "nio";
+    public static final String IMAP_CLIENT_THREADS = "imap.client.threads";
+    public static final String IMAP_IDLE = "imap.idle";
+    public static final String IMAP_FETCH_WORKERS = "imap.fetch.workers";
+    public static final String ADAPTIVE_POLLING = "adaptive.polling";
+    public static final String POLLING_INTERVAL_MIN = "polling.interval.min";
+    public static final String POLLING_INTERVAL_MAX = "polling.interval.max";
+    public static final String MAX_MESSAGES_PER_POLL = "max.messages.per.poll";
+    public static final String FETCH_BATCH_SIZE = "fetch.batch.size";
 
     /**
      * Default values for the email source configurations.
@@ -99,6 +221,14 @@ public class EmailConstants {
     public static final String EMAIL_RECEIVER_DEFAULT_CONTENT_TYPE = "text/plain";
     public static final String DEFAULT_AUTO_ACKNOWLEDGE = "false";
     public static final String EMAIL_RECEIVER_DEFAULT_TRUST = "*";
+    public static final String DEFAULT_IMAP_CLIENT = "blocking";
+    public static final String DEFAULT_IMAP_CLIENT_THREADS = "2";
+    public static final String DEFAULT_IMAP_IDLE = "true";
+    public static final String DEFAULT_IMAP_FETCH_WORKERS = "4";
+    public static final String DEFAULT_ADAPTIVE_POLLING = "false";
+    public static final String DEFAULT_POLLING_INTERVAL_MIN = "10";
+    public static final String DEFAULT_MAX_MESSAGES_PER_POLL = "0";
+    public static final String DEFAULT_FETCH_BATCH_SIZE = "100";
 
     /**
      * Required carbon transport properties to receive the email.
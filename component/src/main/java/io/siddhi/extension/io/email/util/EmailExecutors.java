@@ -0,0 +1,71 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors of the email sink and source. Virtual threads are created through reflection, since the extension is
+ * built for Java 8, and they are available only when it runs on Java 21 or later.
+ */
+public class EmailExecutors {
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = getVirtualThreadExecutorFactory();
+
+    private EmailExecutors() {
+    }
+
+    /**
+     * Check whether the JVM supports virtual threads.
+     *
+     * @return true if the JVM is Java 21 or later.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Create an executor which runs each task on a new virtual thread.
+     *
+     * @return the executor.
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads are supported from Java 21. But the Java "
+                    + "version is " + System.getProperty("java.version") + ".");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Error is encountered while creating the virtual thread "
+                    + "executor. " + e.getMessage(), e);
+        }
+    }
+
+    private static Method getVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
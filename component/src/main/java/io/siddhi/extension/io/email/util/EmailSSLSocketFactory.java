@@ -0,0 +1,191 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.util;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Map;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * SSL socket factory backed by a JVM wide {@link SSLContext}, which is shared by all the SMTP, IMAP and POP3
+ * connections of the email sinks and sources. Since the client session cache belongs to the SSL context, a
+ * reconnect to a server resumes the TLS session of a previous connection instead of doing a full handshake.
+ *
+ * JavaMail instantiates the factory given by the 'mail.[protocol].ssl.socketFactory.class' property through its
+ * static 'getDefault' method. Therefore, there is a subclass for each trust policy.
+ */
+public class EmailSSLSocketFactory extends SSLSocketFactory {
+    private static final String TRUST_ALL_HOSTS = "*";
+
+    private final SSLContext sslContext;
+    private final SSLSocketFactory delegate;
+
+    private EmailSSLSocketFactory(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        this.delegate = sslContext.getSocketFactory();
+    }
+
+    /**
+     * Get the shared SSL context for a trust policy, which is used by the non-blocking connections to create
+     * their SSL engines.
+     *
+     * @param trust the value of the 'ssl.trust' property, i.e., '*' to trust all the servers, a space separated
+     *              list of the trusted hosts, or empty to validate the server certificates with the default trust
+     *              store.
+     * @param host  the host name of the server.
+     * @return the SSL context.
+     */
+    public static SSLContext getSSLContext(String trust, String host) {
+        String trustedHosts = trust == null ? "" : trust.trim();
+        if (TRUST_ALL_HOSTS.equals(trustedHosts) || Arrays.asList(trustedHosts.split("\\s+")).contains(host)) {
+            return ((EmailSSLSocketFactory) TrustAll.INSTANCE).sslContext;
+        }
+        return ((EmailSSLSocketFactory) Default.INSTANCE).sslContext;
+    }
+
+    /**
+     * Configure the connections of a mail protocol to use the shared SSL context, if the trust policy can be
+     * served by it. Host lists in the 'ssl.trust' property and user defined socket factories are left to JavaMail.
+     *
+     * @param properties the properties of the email connector.
+     * @param protocol   the mail protocol, i.e., 'smtp', 'imap' or 'pop3'.
+     * @param trust      the value of the 'mail.[protocol].ssl.trust' property, or empty if it is not set.
+     */
+    public static void configure(Map<String, String> properties, String protocol, String trust) {
+        String prefix = "mail." + protocol;
+        if (properties.containsKey(prefix + ".ssl.socketFactory.class")
+                || properties.containsKey(prefix + ".socketFactory.class")) {
+            return;
+        }
+        String factoryClass;
+        if (TRUST_ALL_HOSTS.equals(trust.trim())) {
+            factoryClass = TrustAll.class.getName();
+        } else if (trust.trim().isEmpty()) {
+            factoryClass = Default.class.getName();
+        } else {
+            return;
+        }
+        properties.put(prefix + ".ssl.socketFactory.class", factoryClass);
+        properties.put(prefix + ".ssl.socketFactory.fallback", "false");
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return delegate.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return delegate.createSocket(socket, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return delegate.createSocket(address, port, localAddress, localPort);
+    }
+
+    private static SSLContext createSSLContext(TrustManager[] trustManagers) {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustManagers, null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Error is encountered while creating the SSL context of the email "
+                    + "connections. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Shared SSL socket factory which validates the server certificates with the default trust store.
+     */
+    public static class Default extends EmailSSLSocketFactory {
+        private static final Default INSTANCE = new Default();
+
+        private Default() {
+            super(createSSLContext(null));
+        }
+
+        public static SocketFactory getDefault() {
+            return INSTANCE;
+        }
+    }
+
+    /**
+     * Shared SSL socket factory which trusts all the servers, as the 'ssl.trust' value '*' does.
+     */
+    public static class TrustAll extends EmailSSLSocketFactory {
+        private static final TrustAll INSTANCE = new TrustAll();
+
+        private TrustAll() {
+            super(createSSLContext(new TrustManager[]{new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            }}));
+        }
+
+        public static SocketFactory getDefault() {
+            return INSTANCE;
+        }
+    }
+}
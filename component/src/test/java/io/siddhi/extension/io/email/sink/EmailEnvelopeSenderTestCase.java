@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import io.siddhi.core.exception.ConnectionUnavailableException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class implementing test cases for sending the envelopes of an email whose recipients are split.
+ */
+public class EmailEnvelopeSenderTestCase {
+    private ExecutorService executor;
+    private List<String> delivered;
+    private Set<String> unavailableRecipients;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        delivered = Collections.synchronizedList(new ArrayList<>());
+        unavailableRecipients = Collections.synchronizedSet(new HashSet<>());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(description = "Send all the envelopes of an email")
+    public void emailEnvelopeSenderTest1() throws ConnectionUnavailableException {
+        EmailEnvelopeSender envelopeSender = new EmailEnvelopeSender(2, this::send);
+        envelopeSender.send(newEmail("a@localhost, b@localhost, c@localhost, d@localhost, e@localhost"), executor);
+        Assert.assertEquals(getSortedDeliveries(), Arrays.asList("a@localhost, b@localhost",
+                "c@localhost, d@localhost", "e@localhost"));
+    }
+
+    @Test(description = "Resend only the envelope which is not delivered when the email is retried")
+    public void emailEnvelopeSenderTest2() throws ConnectionUnavailableException {
+        EmailEnvelopeSender envelopeSender = new EmailEnvelopeSender(2, this::send);
+        unavailableRecipients.add("c@localhost, d@localhost");
+        String to = "a@localhost, b@localhost, c@localhost, d@localhost, e@localhost";
+        RenderedEmail retry = null;
+        try {
+            envelopeSender.send(newEmail(to), executor);
+            Assert.fail("The email should not be delivered to all the recipients.");
+        } catch (ConnectionUnavailableException e) {
+            Assert.assertEquals(getSortedDeliveries(), Arrays.asList("a@localhost, b@localhost", "e@localhost"));
+            retry = EmailEnvelopeSender.getRetry(newEmail(to), e);
+        }
+
+        //The email is rendered again when it is retried.
+        delivered.clear();
+        try {
+            envelopeSender.send(retry, executor);
+            Assert.fail("The envelope should not be delivered.");
+        } catch (ConnectionUnavailableException e) {
+            Assert.assertTrue(delivered.isEmpty());
+            retry = EmailEnvelopeSender.getRetry(retry, e);
+        }
+        unavailableRecipients.clear();
+        envelopeSender.send(retry, executor);
+        Assert.assertEquals(delivered, Collections.singletonList("c@localhost, d@localhost"));
+    }
+
+    @Test(description = "Send all the envelopes of a different email after an email is not delivered")
+    public void emailEnvelopeSenderTest3() {
+        EmailEnvelopeSender envelopeSender = new EmailEnvelopeSender(2, this::send);
+        unavailableRecipients.add("a@localhost, b@localhost");
+        String to = "a@localhost, b@localhost, c@localhost";
+        try {
+            envelopeSender.send(newEmail(to), executor);
+            Assert.fail("The email should not be delivered to all the recipients.");
+        } catch (ConnectionUnavailableException e) {
+            Assert.assertEquals(delivered, Collections.singletonList("c@localhost"));
+        }
+
+        delivered.clear();
+        unavailableRecipients.clear();
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Subject", "Another subject");
+        headers.put("To", to);
+        try {
+            envelopeSender.send(new RenderedEmail(headers, "Content", null), executor);
+        } catch (ConnectionUnavailableException e) {
+            Assert.fail("The email should be delivered.", e);
+        }
+        Assert.assertEquals(getSortedDeliveries(), Arrays.asList("a@localhost, b@localhost", "c@localhost"));
+    }
+
+    @Test(description = "Do not retry the envelopes which failed with an error other than an unavailable server")
+    public void emailEnvelopeSenderTest4() throws ConnectionUnavailableException {
+        EmailEnvelopeSender envelopeSender = new EmailEnvelopeSender(2, envelope -> {
+            if (envelope.getHeader("To").startsWith("a@")) {
+                throw new RuntimeException("Invalid address.");
+            }
+            send(envelope);
+        });
+        unavailableRecipients.add("e@localhost");
+        String to = "a@localhost, b@localhost, c@localhost, d@localhost, e@localhost";
+        RenderedEmail retry = null;
+        try {
+            envelopeSender.send(newEmail(to), executor);
+            Assert.fail("The email should not be delivered to all the recipients.");
+        } catch (ConnectionUnavailableException e) {
+            Assert.assertEquals(delivered, Collections.singletonList("c@localhost, d@localhost"));
+            retry = EmailEnvelopeSender.getRetry(newEmail(to), e);
+        }
+
+        delivered.clear();
+        unavailableRecipients.clear();
+        envelopeSender.send(retry, executor);
+        Assert.assertEquals(delivered, Collections.singletonList("e@localhost"));
+    }
+
+    @Test(description = "Send all the envelopes of an identical email which is not a retry of an undelivered email")
+    public void emailEnvelopeSenderTest5() throws ConnectionUnavailableException {
+        EmailEnvelopeSender envelopeSender = new EmailEnvelopeSender(2, this::send);
+        unavailableRecipients.add("c@localhost, d@localhost");
+        String to = "a@localhost, b@localhost, c@localhost, d@localhost, e@localhost";
+        try {
+            envelopeSender.send(newEmail(to), executor);
+            Assert.fail("The email should not be delivered to all the recipients.");
+        } catch (ConnectionUnavailableException e) {
+            Assert.assertEquals(delivered.size(), 2);
+        }
+
+        //The undelivered email is given up on, so that the same alert which is published again goes to everyone.
+        delivered.clear();
+        unavailableRecipients.clear();
+        envelopeSender.send(newEmail(to), executor);
+        Assert.assertEquals(getSortedDeliveries(), Arrays.asList("a@localhost, b@localhost",
+                "c@localhost, d@localhost", "e@localhost"));
+    }
+
+    private void send(RenderedEmail envelope) throws ConnectionUnavailableException {
+        String to = envelope.getHeader("To");
+        if (unavailableRecipients.contains(to)) {
+            throw new ConnectionUnavailableException("The smtp server is unavailable for: " + to + ".");
+        }
+        delivered.add(to);
+    }
+
+    private List<String> getSortedDeliveries() {
+        List<String> deliveries = new ArrayList<>(delivered);
+        Collections.sort(deliveries);
+        return deliveries;
+    }
+
+    private static RenderedEmail newEmail(String to) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Subject", "Subject");
+        headers.put("To", to);
+        return new RenderedEmail(headers, "Content", null);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Class implementing test cases for the content of the emails which are published with binary payloads.
+ */
+public class EmailSinkContentTestCase {
+    private static final String CONTENT = "Prix du caf\u00e9: 5 francs. Gr\u00fc\u00dfe!";
+    private static final String CONTENT_TYPE = "text/plain; charset=ISO-8859-1";
+
+    @Test(description = "Decode a byte array payload with the charset of the content type")
+    public void emailSinkContentTest1() {
+        byte[] payload = CONTENT.getBytes(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(EmailSink.getContent(payload, CONTENT_TYPE), CONTENT);
+        Assert.assertEquals(EmailSink.getContent(payload, "text/plain; charset=\"iso-8859-1\""), CONTENT);
+        //Without a charset, the payload is decoded as UTF-8.
+        Assert.assertEquals(EmailSink.getContent(CONTENT.getBytes(StandardCharsets.UTF_8), "text/plain"), CONTENT);
+    }
+
+    @Test(description = "Decode a byte buffer payload with the charset of the content type")
+    public void emailSinkContentTest2() {
+        ByteBuffer payload = ByteBuffer.allocate(64);
+        payload.put("ignored".getBytes(StandardCharsets.ISO_8859_1));
+        int position = payload.position();
+        payload.put(CONTENT.getBytes(StandardCharsets.ISO_8859_1));
+        payload.flip();
+        payload.position(position);
+
+        Assert.assertEquals(EmailSink.getContent(payload, CONTENT_TYPE), CONTENT);
+        Assert.assertEquals(payload.position(), position, "The position of the payload should not be moved.");
+        Assert.assertEquals(EmailSink.getBytes(payload), CONTENT.getBytes(StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(payload.position(), position, "The position of the payload should not be moved.");
+    }
+
+    @Test(description = "Send the bytes of a binary payload as they are in the MIME message")
+    public void emailSinkContentTest3() throws MessagingException, IOException {
+        byte[] rawContent = CONTENT.getBytes(StandardCharsets.ISO_8859_1);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("From", "from@localhost");
+        headers.put("To", "to@localhost");
+        headers.put("Subject", "Subject");
+        headers.put("Content-Type", CONTENT_TYPE);
+        RenderedEmail email = new RenderedEmail(headers, CONTENT, rawContent, null, 0);
+        Session session = Session.getInstance(new Properties());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        email.toMimeMessage(session).writeTo(out);
+
+        MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertTrue(message.getContentType().toLowerCase(Locale.ENGLISH).contains("iso-8859-1"),
+                "Unexpected content type: " + message.getContentType());
+        Assert.assertEquals(readAll(message.getInputStream()), rawContent);
+        Assert.assertEquals(message.getContent(), CONTENT);
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int length = inputStream.read(buffer); length != -1; length = inputStream.read(buffer)) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -6,18 +6,34 @@ import com.icegreen.greenmail.util.GreenMail;
 import com.icegreen.greenmail.util.ServerSetupTest;
 import io.siddhi.core.SiddhiAppRuntime;
 import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
 import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.stream.output.StreamCallback;
 import io.siddhi.core.util.config.InMemoryConfigManager;
+import io.siddhi.extension.io.email.sink.transport.EmailClientConnectionPoolManager;
+import io.siddhi.extension.io.email.sink.transport.EmailConnectionPool;
+import io.siddhi.extension.io.email.util.EmailExecutors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import javax.mail.Message;
@@ -709,4 +725,1083 @@ public class EmailSinkTestCase {
         }
         siddhiAppRuntime.shutdown();
     }
+
+    @Test(description = "Configure siddhi to email event publisher with a rate limit")
+    public void emailSinkTest13() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest13 : Configure siddhi to email event publisher with a rate limit.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " rate.limit.messages.per.second='2',"
+                + " rate.limit.burst.size='1')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        long startTime = System.currentTimeMillis();
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+        stockStream.send(new Object[]{"ORACLE", 50.1f, 100L});
+        long elapsedTime = System.currentTimeMillis() - startTime;
+
+        mailServer.waitForIncomingEmail(5000, 3);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 3, "Send three messages.");
+        assertTrue(elapsedTime >= 900, "Messages should be spaced out by the rate limit of two messages"
+                + " per second, but all three were sent in " + elapsedTime + " ms.");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher with a durable outbox")
+    public void emailSinkTest14() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest14 : Configure siddhi to email event publisher with a durable outbox.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " outbox.enable='true',"
+                + " outbox.directory='target/email-outbox/test14',"
+                + " outbox.fsync='always')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 2, "Send two messages through the outbox.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to suppress duplicate emails")
+    public void emailSinkTest15() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest15 : Configure siddhi to email event publisher to suppress duplicate emails.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " suppression.window='1000',"
+                + " suppression.summary.enable='true')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 3);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 3, "Send the first email of each window and a summary of the repeats.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        assertEquals(messages[2].getSubject(), "FooStream-WSO2");
+        assertTrue(messages[2].getContent().toString().trim().endsWith("2 repeats suppressed"));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to fail over across relays")
+    public void emailSinkTest16() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest16 : Configure siddhi to email event publisher to fail over across relays.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " relays='localhost:3026, localhost:3025',"
+                + " relay.strategy='failover')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 2, "Send two messages through the available relay.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to split the recipients into envelopes")
+    public void emailSinkTest17() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest17 : Configure siddhi to email event publisher to split the recipients into envelopes.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to1@localhost, to2@localhost, to3@localhost',"
+                + " recipient.chunk.size='2')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 3);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 3, "Deliver the email to three recipients.");
+        List<Integer> recipientCounts = new ArrayList<>();
+        for (MimeMessage message : messages) {
+            assertEquals(message.getSubject(), "FooStream-WSO2");
+            recipientCounts.add(message.getRecipients(Message.RecipientType.TO).length);
+        }
+        Collections.sort(recipientCounts);
+        assertEquals(recipientCounts, Arrays.asList(1, 2, 2), "Send the email in envelopes of two recipients.");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to merge identical emails")
+    public void emailSinkTest18() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest18 : Configure siddhi to email event publisher to merge identical emails.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text', @payload('Price alert')) ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream' ,"
+                + " to='{{symbol}}@localhost',"
+                + " merge.window='1000')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"wso2", 55.6f, 100L});
+        stockStream.send(new Object[]{"ibm", 57.678f, 100L});
+        stockStream.send(new Object[]{"oracle", 58.2f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 4);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 4, "Deliver the merged email to the three recipients and the sender.");
+        for (MimeMessage message : messages) {
+            assertEquals(message.getRecipients(Message.RecipientType.TO)[0].toString(), ADDRESS);
+            assertEquals(message.getRecipients(Message.RecipientType.BCC), null);
+        }
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to render the body from a template")
+    public void emailSinkTest19() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest19 : Configure siddhi to email event publisher to render the body from a template.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+        File template = new File("target/email-templates/test19.html");
+        template.getParentFile().mkdirs();
+        Files.write(template.toPath(), "<p>{{symbol}} is {{ price }}</p>".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " body.template.html='" + template.getPath() + "')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"<WSO2>", 55.6f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 1);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 1, "Send one message.");
+        assertTrue(messages[0].getContentType().startsWith("text/html"));
+        assertEquals(messages[0].getContent().toString().trim(), "<p>&lt;WSO2&gt; is 55.6</p>");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to publish delivery outcomes")
+    public void emailSinkTest20() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest20 : Configure siddhi to email event publisher to publish delivery outcomes.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " sink.id='alerts')"
+                + " define stream BarStream (symbol string, price float, volume long); "
+                + "@source(type='email-outcome', sink.id='alerts')"
+                + " define stream OutcomeStream (messageId string, recipients string, relay string, replyCode int,"
+                + " latency long, attempts int); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        List<Event> outcomes = Collections.synchronizedList(new ArrayList<>());
+        siddhiAppRuntime.addCallback("OutcomeStream", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                outcomes.addAll(Arrays.asList(events));
+            }
+        });
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 1);
+        for (int i = 0; i < 50 && outcomes.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(outcomes.size(), 1, "Publish the outcome of the email.");
+        Object[] outcome = outcomes.get(0).getData();
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 1);
+        Assert.assertNotNull(outcome[0]);
+        assertEquals(outcome[0], messages[0].getHeader("X-Siddhi-Message-Id", null),
+                "Identify the sent email in its outcome.");
+        assertEquals(outcome[1], "to@localhost");
+        assertEquals(outcome[2], "localhost:3025");
+        assertEquals(outcome[3], 250);
+        assertEquals(outcome[5], 1);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to defer sending emails")
+    public void emailSinkTest21() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest21 : Configure siddhi to email event publisher to defer sending emails.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " delay='1500')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+
+        mailServer.waitForIncomingEmail(500, 1);
+        assertEquals(mailServer.getReceivedMessages().length, 0, "Hold the email until the delay elapses.");
+        mailServer.waitForIncomingEmail(5000, 1);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 1, "Send the email after the delay elapses.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to send emails by their priorities")
+    public void emailSinkTest22() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest22 : Configure siddhi to email event publisher to send emails by their priorities.");
+        //The smtp server is started only after the emails are queued in the outbox, so that the high priority email
+        //has to overtake the low priority emails queued before it.
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        File outboxDirectory = new File("target/email-outbox/test22-" + System.currentTimeMillis());
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, level string); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " priority='{{level}}',"
+                + " priority.scheduling='weighted',"
+                + " connection.pool.size='2',"
+                + " priority.reserved.connections='1',"
+                + " outbox.enable='true',"
+                + " outbox.directory='" + outboxDirectory.getPath() + "',"
+                + " outbox.workers='1')"
+                + " define stream BarStream (symbol string, price float, level string); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, "low"});
+        stockStream.send(new Object[]{"ORACLE", 58.2f, "low"});
+        stockStream.send(new Object[]{"MSFT", 60.1f, "low"});
+        stockStream.send(new Object[]{"IBM", 57.678f, "high"});
+        //The outbox worker retries the first email after a second, and then after two more seconds.
+        Thread.sleep(1500);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        mailServer.waitForIncomingEmail(10000, 4);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 4, "Send the emails of all the priorities.");
+        //Only the email which the worker was already retrying is sent before the high priority email.
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        assertEquals(messages[2].getSubject(), "FooStream-ORACLE");
+        assertEquals(messages[3].getSubject(), "FooStream-MSFT");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to open the circuit of a failed relay")
+    public void emailSinkTest23() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest23 : Configure siddhi to email event publisher to open the circuit of a failed relay.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " relays='localhost:3026, localhost:3025',"
+                + " relay.strategy='failover',"
+                + " relay.failure.threshold='100',"
+                + " circuit.breaker.enable='true',"
+                + " circuit.breaker.window.size='1')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 2, "Send the messages through the relay whose circuit is closed.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to fail the emails whose deadlines expire")
+    public void emailSinkTest24() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest24 : Configure siddhi to email event publisher to fail the emails whose deadlines "
+                + "expire.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@OnError(action='STREAM')"
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " connection.timeout='5000',"
+                + " read.timeout='5000',"
+                + " write.timeout='5000',"
+                + " connection.pool.wait.timeout='1000',"
+                + " rate.limit.messages.per.second='1',"
+                + " rate.limit.burst.size='1',"
+                + " send.deadline='500',"
+                + " on.error='STREAM')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        List<Event> failedEvents = Collections.synchronizedList(new ArrayList<>());
+        siddhiAppRuntime.addCallback("!BarStream", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                failedEvents.addAll(Arrays.asList(events));
+            }
+        });
+        siddhiAppRuntime.start();
+
+        //The second email waits a second for the rate limit, which is beyond its deadline.
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 1, "Send only the message within its deadline.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(failedEvents.size(), 1, "Hand over the message whose deadline expired to the fault stream.");
+        assertEquals(failedEvents.get(0).getData(0), "IBM");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to rotate connections")
+    public void emailSinkTest25() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest25 : Configure siddhi to email event publisher to rotate connections.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " connection.max.messages='1',"
+                + " connection.max.lifetime='60000')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 2, "Send the messages through the rotated connections.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        //A connection is retired when it is returned to the pool after the message is sent.
+        EmailConnectionPool connectionPool = EmailClientConnectionPoolManager.getConnectionPool(USERNAME
+                + "@localhost:3025");
+        for (int i = 0; i < 50 && connectionPool.getRetiredCount() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(connectionPool.getRetiredCount(), 2L, "Retire each connection after its message.");
+        assertTrue(connectionPool.getCreatedCount() >= 2, "Send each message through a new connection.");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to send on virtual threads")
+    public void emailSinkTest26() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest26 : Configure siddhi to email event publisher to send on virtual threads.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " relays='localhost:3025',"
+                + " send.executor='virtual.thread')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 2, "Send two messages on virtual threads.");
+        Set<String> subjects = new HashSet<>();
+        for (MimeMessage message : messages) {
+            subjects.add(message.getSubject());
+        }
+        assertEquals(subjects, new HashSet<>(Arrays.asList("FooStream-WSO2", "FooStream-IBM")));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to send through the non-blocking smtp client")
+    public void emailSinkTest27() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest27 : Configure siddhi to email event publisher to send through the non-blocking smtp "
+                + "client.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " relays='localhost:3025',"
+                + " smtp.client='nio',"
+                + " connection.pool.size='2')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 2, "Send two messages through the non-blocking smtp client.");
+        Set<String> subjects = new HashSet<>();
+        for (MimeMessage message : messages) {
+            subjects.add(message.getSubject());
+        }
+        assertEquals(subjects, new HashSet<>(Arrays.asList("FooStream-WSO2", "FooStream-IBM")));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to send the emails left in the outbox after a "
+            + "restart")
+    public void emailSinkTest28() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest28 : Configure siddhi to email event publisher to send the emails left in the outbox "
+                + "after a restart.");
+        //The smtp server is started only after the first run of the app, so that its emails stay in the outbox.
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        File outboxDirectory = new File("target/email-outbox/test28-" + System.currentTimeMillis());
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " outbox.enable='true',"
+                + " outbox.directory='" + outboxDirectory.getPath() + "',"
+                + " outbox.fsync='always')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+        Thread.sleep(500);
+        siddhiAppRuntime.shutdown();
+        File[] segments = outboxDirectory.listFiles((dir, name) -> name.endsWith(".log"));
+        assertTrue(segments != null && segments.length > 0, "The unsent emails should be kept in the outbox.");
+
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        siddhiAppRuntime.start();
+
+        mailServer.waitForIncomingEmail(5000, 2);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 2, "Send the emails recovered from the outbox.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to suppress duplicate emails without summaries")
+    public void emailSinkTest29() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest29 : Configure siddhi to email event publisher to suppress duplicate emails without "
+                + "summaries.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " suppression.window='500',"
+                + " suppression.cache.size='1')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        //Evicts the repeated email from the cache, which holds a single email.
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+        Thread.sleep(600);
+        //Closes the expired window of the email.
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+
+        mailServer.waitForIncomingEmail(5000, 3);
+        Thread.sleep(500);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 3, "Send the first email of each window without summaries of the repeats.");
+        assertEquals(messages[0].getSubject(), "FooStream-WSO2");
+        assertEquals(messages[1].getSubject(), "FooStream-IBM");
+        assertEquals(messages[2].getSubject(), "FooStream-IBM");
+        for (MimeMessage message : messages) {
+            assertTrue(!message.getContent().toString().contains("repeats suppressed"));
+        }
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to reject SSL together with STARTTLS")
+    public void emailSinkTest30() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest30 : Configure siddhi to email event publisher to reject SSL together with STARTTLS.");
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " ssl.enable='true',"
+                + " starttls.enable='true')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        String exception = null;
+        try {
+            siddhiManager.createSiddhiAppRuntime(streams + query);
+        } catch (SiddhiAppCreationException e) {
+            exception = e.getMessage();
+        }
+        Assert.assertNotNull(exception, "SSL should not be enabled together with STARTTLS.");
+        assertTrue(exception.contains("ssl.enable should be 'false' if starttls.enable is 'true'"),
+                "Unexpected error: " + exception);
+    }
+
+    @Test(description = "Configure siddhi to email event publisher to retry the emails sent on virtual threads")
+    public void emailSinkTest31() throws IOException, MessagingException,
+            UserException, InterruptedException {
+        log.info("EmailSinkTest31 : Configure siddhi to email event publisher to retry the emails sent on virtual "
+                + "threads.");
+        if (!EmailExecutors.isVirtualThreadSupported()) {
+            throw new SkipException("Virtual threads are supported from Java 21.");
+        }
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("sink.email.port", "3025");
+        masterConfigs.put("sink.email.host", "localhost");
+        masterConfigs.put("sink.email.ssl.enable", "false");
+        masterConfigs.put("sink.email.auth", "false");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        InMemoryConfigManager inMemoryConfigManager = new InMemoryConfigManager(masterConfigs, null);
+        inMemoryConfigManager.generateConfigReader("sink", "email");
+        siddhiManager.setConfigManager(inMemoryConfigManager);
+        String streams = "" +
+                "@App:name('TestSiddhiApp')"
+                + "define stream FooStream (symbol string, price float, volume long); "
+                + "@sink(type='email', @map(type='text') ,"
+                + " username ='" + USERNAME + "',"
+                + " address ='" + ADDRESS + "',"
+                + " password= '" + PASSWORD + "',"
+                + " subject='FooStream-{{symbol}}' ,"
+                + " to='to@localhost',"
+                + " send.executor='virtual.thread')"
+                + " define stream BarStream (symbol string, price float, volume long); ";
+
+        String query = "" +
+                "from FooStream " +
+                "select * " +
+                "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        InputHandler stockStream = siddhiAppRuntime.getInputHandler("FooStream");
+        siddhiAppRuntime.start();
+
+        stockStream.send(new Object[]{"WSO2", 55.6f, 100L});
+        mailServer.waitForIncomingEmail(5000, 1);
+        assertEquals(mailServer.getReceivedMessages().length, 1, "Send the message before the server stops.");
+
+        //The email published while the smtp server is down is retried on its virtual thread until the server is up.
+        mailServer.stop();
+        stockStream.send(new Object[]{"IBM", 57.678f, 100L});
+        Thread.sleep(500);
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+
+        mailServer.waitForIncomingEmail(10000, 1);
+        MimeMessage[] messages = mailServer.getReceivedMessages();
+        assertEquals(messages.length, 1, "Send the message once the server is up again.");
+        assertEquals(messages[0].getSubject(), "FooStream-IBM");
+        siddhiAppRuntime.shutdown();
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class implementing test cases for the transport security properties of the smtp connections of the email sink.
+ */
+public class EmailSinkTransportSecurityTestCase {
+
+    @Test(description = "Require the STARTTLS upgrade and default the port to 587 if STARTTLS is enabled")
+    public void emailSinkTransportSecurityTest1() {
+        Map<String, String> properties = new HashMap<>();
+        String port = EmailSink.putTransportSecurityProperties(properties, false, true, "");
+        Assert.assertEquals(port, "587");
+        Assert.assertEquals(properties.get("mail.smtp.port"), "587");
+        Assert.assertEquals(properties.get("mail.smtp.starttls.enable"), "true");
+        Assert.assertEquals(properties.get("mail.smtp.starttls.required"), "true");
+        Assert.assertEquals(properties.get("mail.smtp.ssl.enable"), "false");
+    }
+
+    @Test(description = "Keep the given port if STARTTLS is enabled")
+    public void emailSinkTransportSecurityTest2() {
+        Map<String, String> properties = new HashMap<>();
+        String port = EmailSink.putTransportSecurityProperties(properties, false, true, "2525");
+        Assert.assertEquals(port, "2525");
+        Assert.assertEquals(properties.get("mail.smtp.port"), "2525");
+        Assert.assertEquals(properties.get("mail.smtp.starttls.required"), "true");
+    }
+
+    @Test(description = "Default the port to 465 for SSL and 25 for plain connections, without STARTTLS")
+    public void emailSinkTransportSecurityTest3() {
+        Map<String, String> properties = new HashMap<>();
+        Assert.assertEquals(EmailSink.putTransportSecurityProperties(properties, true, false, ""), "465");
+        Assert.assertEquals(properties.get("mail.smtp.ssl.enable"), "true");
+        Assert.assertNull(properties.get("mail.smtp.starttls.enable"));
+        Assert.assertNull(properties.get("mail.smtp.starttls.required"));
+
+        properties = new HashMap<>();
+        Assert.assertEquals(EmailSink.putTransportSecurityProperties(properties, false, false, ""), "25");
+        Assert.assertEquals(properties.get("mail.smtp.ssl.enable"), "false");
+        Assert.assertNull(properties.get("mail.smtp.starttls.enable"));
+        Assert.assertNull(properties.get("mail.smtp.starttls.required"));
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.outbox;
+
+import io.siddhi.extension.io.email.sink.RenderedEmail;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Class implementing test cases for the recovery and the compaction of the email outbox journal.
+ */
+public class EmailOutboxJournalTestCase {
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("email-outbox").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<File> files = Files.walk(directory.toPath()).sorted(Comparator.reverseOrder())
+                .map(path -> path.toFile())) {
+            files.forEach(File::delete);
+        }
+    }
+
+    @Test(description = "Recover the emails which are not acknowledged when the journal is opened again")
+    public void emailOutboxJournalTest1() throws IOException {
+        EmailOutboxJournal journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        Assert.assertTrue(journal.open().isEmpty());
+        EmailOutboxJournal.Entry first = journal.append(newEmail("first"));
+        journal.append(newEmail("second"));
+        journal.append(newEmail("third"));
+        journal.acknowledge(first);
+        journal.sync();
+        journal.close();
+
+        journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        List<EmailOutboxJournal.Entry> entries = journal.open();
+        Assert.assertEquals(getSubjects(journal, entries), Arrays.asList("second", "third"));
+        Assert.assertEquals(journal.read(entries.get(0)).getContent(), "Content of second");
+        //Email ids continue after the recovered emails, so that a new email is not taken as an acknowledged one.
+        EmailOutboxJournal.Entry fourth = journal.append(newEmail("fourth"));
+        Assert.assertTrue(fourth.getEmailId() > entries.get(1).getEmailId());
+        journal.close();
+    }
+
+    @Test(description = "Truncate a record which was partially written when the process stopped")
+    public void emailOutboxJournalTest2() throws IOException {
+        EmailOutboxJournal journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        journal.open();
+        journal.append(newEmail("first"));
+        journal.append(newEmail("second"));
+        journal.sync();
+        journal.close();
+        File segment = getSegments().get(0);
+        long validLength = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            //The header of a record whose body was only partially written.
+            file.seek(validLength);
+            file.writeInt(512);
+            file.writeInt(0);
+            file.write(new byte[]{1, 0, 0, 0});
+        }
+
+        journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        List<EmailOutboxJournal.Entry> entries = journal.open();
+        Assert.assertEquals(getSubjects(journal, entries), Arrays.asList("first", "second"));
+        Assert.assertEquals(segment.length(), validLength, "The partial record should be truncated.");
+        journal.append(newEmail("third"));
+        journal.sync();
+        journal.close();
+
+        journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        Assert.assertEquals(getSubjects(journal, journal.open()), Arrays.asList("first", "second", "third"));
+        journal.close();
+    }
+
+    @Test(description = "Truncate a record whose header was partially written when the process stopped")
+    public void emailOutboxJournalTest3() throws IOException {
+        EmailOutboxJournal journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        journal.open();
+        journal.append(newEmail("first"));
+        journal.sync();
+        journal.close();
+        File segment = getSegments().get(0);
+        long validLength = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(validLength);
+            file.write(new byte[]{0, 0});
+        }
+
+        journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        Assert.assertEquals(getSubjects(journal, journal.open()), Collections.singletonList("first"));
+        Assert.assertEquals(segment.length(), validLength, "The partial record header should be truncated.");
+        journal.close();
+    }
+
+    @Test(description = "Truncate a trailing record whose checksum does not match")
+    public void emailOutboxJournalTest4() throws IOException {
+        EmailOutboxJournal journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        journal.open();
+        journal.append(newEmail("first"));
+        journal.sync();
+        long validLength = getSegments().get(0).length();
+        journal.append(newEmail("second"));
+        journal.sync();
+        journal.close();
+        File segment = getSegments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(segment.length() - 1);
+            int lastByte = file.read();
+            file.seek(segment.length() - 1);
+            file.write(lastByte ^ 0xff);
+        }
+
+        journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        Assert.assertEquals(getSubjects(journal, journal.open()), Collections.singletonList("first"));
+        Assert.assertEquals(segment.length(), validLength, "The corrupted record should be truncated.");
+        journal.close();
+    }
+
+    @Test(description = "Delete the segments at the head of the journal once all their emails are acknowledged")
+    public void emailOutboxJournalTest5() throws IOException {
+        //A segment holds a single email record, so that each email rolls a new segment.
+        EmailOutboxJournal journal = new EmailOutboxJournal(directory, 64);
+        journal.open();
+        List<EmailOutboxJournal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            entries.add(journal.append(newEmail("email" + i)));
+        }
+        int segmentCount = getSegments().size();
+        Assert.assertTrue(segmentCount >= 4, "Expected a segment per email, but found " + segmentCount + ".");
+
+        //Segments are only deleted from the head. Therefore, acknowledging the later emails deletes nothing.
+        for (int i = 1; i < 4; i++) {
+            journal.acknowledge(entries.get(i));
+        }
+        Assert.assertTrue(getSegments().size() >= segmentCount);
+        journal.acknowledge(entries.get(0));
+        Assert.assertEquals(getSegments().size(), 1, "Only the active segment should remain.");
+        journal.sync();
+        journal.close();
+
+        journal = new EmailOutboxJournal(directory, 64);
+        Assert.assertTrue(journal.open().isEmpty());
+        journal.close();
+    }
+
+    @Test(description = "Keep the segments of the emails which are not acknowledged across a restart")
+    public void emailOutboxJournalTest6() throws IOException {
+        EmailOutboxJournal journal = new EmailOutboxJournal(directory, 64);
+        journal.open();
+        List<EmailOutboxJournal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            entries.add(journal.append(newEmail("email" + i)));
+        }
+        journal.acknowledge(entries.get(0));
+        journal.acknowledge(entries.get(1));
+        journal.acknowledge(entries.get(3));
+        journal.sync();
+        journal.close();
+
+        journal = new EmailOutboxJournal(directory, 64);
+        List<EmailOutboxJournal.Entry> recoveredEntries = journal.open();
+        Assert.assertEquals(getSubjects(journal, recoveredEntries), Collections.singletonList("email2"));
+        journal.acknowledge(recoveredEntries.get(0));
+        Assert.assertEquals(getSegments().size(), 1, "Only the active segment should remain.");
+        journal.close();
+    }
+
+    @Test(description = "Keep the raw bytes of a binary payload across a restart")
+    public void emailOutboxJournalTest7() throws IOException {
+        byte[] rawContent = "Prix du caf\u00e9".getBytes(StandardCharsets.ISO_8859_1);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Subject", "binary");
+        headers.put("Content-Type", "text/plain; charset=ISO-8859-1");
+        EmailOutboxJournal journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        journal.open();
+        journal.append(new RenderedEmail(headers, "Prix du caf\u00e9", rawContent, null, 1000L));
+        journal.append(newEmail("text"));
+        journal.sync();
+        journal.close();
+
+        journal = new EmailOutboxJournal(directory, SEGMENT_SIZE);
+        List<EmailOutboxJournal.Entry> entries = journal.open();
+        RenderedEmail binaryEmail = journal.read(entries.get(0));
+        Assert.assertEquals(binaryEmail.getRawContent(), rawContent);
+        Assert.assertEquals(binaryEmail.getContent(), "Prix du caf\u00e9");
+        Assert.assertEquals(binaryEmail.getDeadline(), 1000L);
+        Assert.assertNull(journal.read(entries.get(1)).getRawContent(), "A text payload should have no raw content.");
+        journal.close();
+    }
+
+    private List<File> getSegments() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        List<File> segments = files == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(files));
+        segments.sort(Comparator.comparing(File::getName));
+        return segments;
+    }
+
+    private static List<String> getSubjects(EmailOutboxJournal journal, List<EmailOutboxJournal.Entry> entries)
+            throws IOException {
+        List<String> subjects = new ArrayList<>();
+        for (EmailOutboxJournal.Entry entry : entries) {
+            subjects.add(journal.read(entry).getHeader("Subject"));
+        }
+        return subjects;
+    }
+
+    private static RenderedEmail newEmail(String subject) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Subject", subject);
+        headers.put("To", "to@localhost");
+        return new RenderedEmail(headers, "Content of " + subject, null);
+    }
+}
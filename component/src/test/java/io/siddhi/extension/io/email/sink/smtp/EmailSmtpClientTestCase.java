@@ -0,0 +1,163 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.smtp;
+
+import io.siddhi.extension.io.email.nio.EmailEventLoopGroup;
+import io.siddhi.extension.io.email.util.EmailConstants;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Class implementing test cases for the time bounds and the cancellation of the sends of the non-blocking smtp
+ * client.
+ */
+public class EmailSmtpClientTestCase {
+    private EmailEventLoopGroup eventLoopGroup;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        eventLoopGroup = new EmailEventLoopGroup("EmailSmtpClientTest", 1);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        eventLoopGroup.shutdown(1000);
+    }
+
+    @Test(description = "Bound a send by the pool wait, connect, write and read timeouts")
+    public void emailSmtpClientTest1() {
+        Map<String, String> properties = newProperties(4000);
+        EmailSmtpClient smtpClient = new EmailSmtpClient("localhost", 3025, properties, eventLoopGroup.next());
+        //The wait for a session, the connect, the writes, and a reply to each of the 10 commands and 2 recipients.
+        Assert.assertEquals(smtpClient.getSendTimeout(2), 4000 + 1000 + 3000 + 2000 * 12);
+        smtpClient.close();
+
+        smtpClient = new EmailSmtpClient("localhost", 3025, newProperties(-1), eventLoopGroup.next());
+        Assert.assertEquals(smtpClient.getSendTimeout(2), Long.MAX_VALUE);
+        smtpClient.close();
+    }
+
+    @Test(description = "Do not send a queued email whose send is cancelled")
+    public void emailSmtpClientTest2() throws Exception {
+        CountDownLatch greetingLatch = new CountDownLatch(1);
+        AtomicInteger receivedEmails = new AtomicInteger();
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread server = new Thread(() -> serve(serverSocket, greetingLatch, receivedEmails));
+            server.setDaemon(true);
+            server.start();
+            EmailSmtpClient smtpClient = new EmailSmtpClient("127.0.0.1", serverSocket.getLocalPort(),
+                    newProperties(60000), eventLoopGroup.next());
+            try {
+                CompletableFuture<Void> first = smtpClient.send(newMessage("First"));
+                CompletableFuture<Void> second = smtpClient.send(newMessage("Second"));
+                //The second email waits for the only session, which waits for the greeting of the server.
+                Thread.sleep(200);
+                Assert.assertTrue(second.cancel(false));
+                greetingLatch.countDown();
+
+                first.get(5, TimeUnit.SECONDS);
+                Thread.sleep(200);
+                Assert.assertEquals(receivedEmails.get(), 1, "The cancelled email should not be sent.");
+            } finally {
+                greetingLatch.countDown();
+                smtpClient.close();
+            }
+        }
+    }
+
+    private static Map<String, String> newProperties(long waitTimeout) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_AUTH_ENABLE, "false");
+        properties.put(EmailConstants.PUBLISHER_POOL_SIZE, "1");
+        properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_CONNECTION_TIMEOUT, "1000");
+        properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_TIMEOUT, "2000");
+        properties.put(EmailConstants.TRANSPORT_MAIL_PUBLISHER_WRITE_TIMEOUT, "3000");
+        properties.put(EmailConstants.POOL_WAIT_TIMEOUT, String.valueOf(waitTimeout));
+        return properties;
+    }
+
+    private static MimeMessage newMessage(String subject) throws MessagingException {
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setFrom(new InternetAddress("from@localhost"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("to@localhost"));
+        message.setSubject(subject);
+        message.setText("Content");
+        return message;
+    }
+
+    /**
+     * Serve a single smtp session, which greets the client only after the latch is released.
+     */
+    private static void serve(ServerSocket serverSocket, CountDownLatch greetingLatch, AtomicInteger receivedEmails) {
+        try (Socket socket = serverSocket.accept()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            greetingLatch.await();
+            reply(out, "220 localhost");
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase(Locale.ENGLISH) : line;
+                if (command.equals("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    do {
+                        line = reader.readLine();
+                    } while (line != null && !line.equals("."));
+                    receivedEmails.incrementAndGet();
+                    reply(out, "250 Queued");
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            //The client closed the session.
+        }
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
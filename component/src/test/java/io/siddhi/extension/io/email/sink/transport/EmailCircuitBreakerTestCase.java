@@ -0,0 +1,146 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import io.siddhi.core.exception.ConnectionUnavailableException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class implementing test cases for the state transitions of the circuit breaker of a relay.
+ */
+public class EmailCircuitBreakerTestCase {
+    private static final int WINDOW_SIZE = 4;
+    private static final long SLOW_CALL_DURATION = 100;
+    private static final long OPEN_DURATION = 200;
+    private static final int TRIAL_SENDS = 2;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(SLOW_CALL_DURATION);
+
+    @Test(description = "Open the circuit when the failure rate of a full window reaches the threshold")
+    public void emailCircuitBreakerTest1() {
+        EmailCircuitBreaker circuitBreaker = newCircuitBreaker();
+        send(circuitBreaker, FAST, null);
+        send(circuitBreaker, FAST, newRelayFailure());
+        send(circuitBreaker, FAST, null);
+        //The circuit does not open before the window is full.
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.CLOSED);
+
+        send(circuitBreaker, FAST, newRelayFailure());
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.OPEN);
+        Assert.assertFalse(circuitBreaker.isCallPermitted());
+        Assert.assertFalse(circuitBreaker.tryAcquirePermission(), "The sends should fail fast while the circuit is "
+                + "open.");
+    }
+
+    @Test(description = "Open the circuit when the rate of the slow sends of a full window reaches the threshold")
+    public void emailCircuitBreakerTest2() {
+        EmailCircuitBreaker circuitBreaker = newCircuitBreaker();
+        send(circuitBreaker, SLOW, null);
+        send(circuitBreaker, FAST, null);
+        send(circuitBreaker, FAST, null);
+        send(circuitBreaker, FAST, null);
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.CLOSED);
+
+        //The oldest slow send leaves the window as the new ones enter it.
+        send(circuitBreaker, SLOW, null);
+        send(circuitBreaker, SLOW, null);
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.CLOSED);
+        send(circuitBreaker, SLOW, null);
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.OPEN);
+    }
+
+    @Test(description = "Close the circuit when all the trial sends succeed after the open duration")
+    public void emailCircuitBreakerTest3() throws InterruptedException {
+        EmailCircuitBreaker circuitBreaker = newOpenCircuitBreaker();
+        Thread.sleep(OPEN_DURATION + 50);
+        Assert.assertTrue(circuitBreaker.isCallPermitted());
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.HALF_OPEN);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        Assert.assertFalse(circuitBreaker.tryAcquirePermission(), "Only " + TRIAL_SENDS + " trial sends should be "
+                + "let through.");
+
+        circuitBreaker.onResult(FAST, null);
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.HALF_OPEN);
+        circuitBreaker.onResult(FAST, null);
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.CLOSED);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test(description = "Open the circuit again when a trial send fails")
+    public void emailCircuitBreakerTest4() throws InterruptedException {
+        EmailCircuitBreaker circuitBreaker = newOpenCircuitBreaker();
+        Thread.sleep(OPEN_DURATION + 50);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onResult(FAST, newRelayFailure());
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.OPEN);
+        Assert.assertFalse(circuitBreaker.isCallPermitted());
+        Assert.assertFalse(circuitBreaker.tryAcquirePermission());
+
+        //A slow trial send opens the circuit again as well.
+        Thread.sleep(OPEN_DURATION + 50);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onResult(SLOW, null);
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.OPEN);
+    }
+
+    @Test(description = "Do not count the errors which are not caused by the relay as failures")
+    public void emailCircuitBreakerTest5() throws InterruptedException {
+        EmailCircuitBreaker circuitBreaker = newCircuitBreaker();
+        for (int i = 0; i < WINDOW_SIZE * 2; i++) {
+            send(circuitBreaker, FAST, new RuntimeException("Invalid address."));
+        }
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.CLOSED);
+
+        //A trial send which fails for an invalid address gives its permission back.
+        circuitBreaker = newOpenCircuitBreaker();
+        Thread.sleep(OPEN_DURATION + 50);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onResult(FAST, new RuntimeException("Invalid address."));
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.HALF_OPEN);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    private static EmailCircuitBreaker newCircuitBreaker() {
+        return new EmailCircuitBreaker("localhost:3025", WINDOW_SIZE, 50, 75, SLOW_CALL_DURATION, OPEN_DURATION,
+                TRIAL_SENDS);
+    }
+
+    private static EmailCircuitBreaker newOpenCircuitBreaker() {
+        EmailCircuitBreaker circuitBreaker = newCircuitBreaker();
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            send(circuitBreaker, FAST, newRelayFailure());
+        }
+        Assert.assertEquals(circuitBreaker.getState(), EmailCircuitBreaker.State.OPEN);
+        return circuitBreaker;
+    }
+
+    private static void send(EmailCircuitBreaker circuitBreaker, long latency, Throwable throwable) {
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission(), "The send should be let through.");
+        circuitBreaker.onResult(latency, throwable);
+    }
+
+    private static ConnectionUnavailableException newRelayFailure() {
+        return new ConnectionUnavailableException("Connection refused.");
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.transport.email.exception.EmailConnectorException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class implementing test cases for the AIMD concurrency limiter of the email sink.
+ */
+public class EmailConcurrencyLimiterTestCase {
+    //A baseline latency long enough that the sends of a test case observe the same congestion.
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final double LATENCY_TOLERANCE = 2;
+    private static final int MAX_LIMIT = 8;
+
+    @Test(description = "Grow the concurrency limit additively on successful sends")
+    public void emailConcurrencyLimiterTest1() throws InterruptedException {
+        EmailConcurrencyLimiter limiter = new EmailConcurrencyLimiter(MAX_LIMIT, LATENCY_TOLERANCE);
+        Assert.assertEquals(limiter.getLimit(), 1);
+        //Sequential sends never use the whole limit. Therefore, the limit does not grow beyond them.
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY, null);
+        }
+        Assert.assertEquals(limiter.getLimit(), 2);
+        grow(limiter);
+        Assert.assertEquals(limiter.getLimit(), MAX_LIMIT);
+    }
+
+    @Test(description = "Halve the concurrency limit when the smtp server replies with 421, 451 or 452")
+    public void emailConcurrencyLimiterTest2() throws InterruptedException {
+        EmailConcurrencyLimiter limiter = new EmailConcurrencyLimiter(MAX_LIMIT, LATENCY_TOLERANCE);
+        grow(limiter);
+        Assert.assertEquals(limiter.getLimit(), MAX_LIMIT);
+
+        send(limiter, newSendFailedException(421));
+        Assert.assertEquals(limiter.getLimit(), 4);
+        //The sends which were in flight when the limit was cut do not cut it again within the baseline latency.
+        send(limiter, newSendFailedException(421));
+        Assert.assertEquals(limiter.getLimit(), 4);
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(LATENCY) + 50);
+        send(limiter, newSendFailedException(451));
+        Assert.assertEquals(limiter.getLimit(), 2);
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(LATENCY) + 50);
+        send(limiter, new EmailConnectorException("Error is encountered while sending the message.",
+                newSendFailedException(452)));
+        Assert.assertEquals(limiter.getLimit(), 1);
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(LATENCY) + 50);
+        send(limiter, newSendFailedException(421));
+        Assert.assertEquals(limiter.getLimit(), 1);
+    }
+
+    @Test(description = "Keep the concurrency limit on errors which do not indicate an overloaded smtp server")
+    public void emailConcurrencyLimiterTest3() throws InterruptedException {
+        EmailConcurrencyLimiter limiter = new EmailConcurrencyLimiter(MAX_LIMIT, LATENCY_TOLERANCE);
+        grow(limiter);
+        send(limiter, newSendFailedException(550));
+        send(limiter, newSendFailedException(554));
+        send(limiter, new SocketTimeoutException("Read timed out"));
+        Assert.assertEquals(limiter.getLimit(), MAX_LIMIT);
+    }
+
+    @Test(description = "Recover the concurrency limit on successful sends after it is cut")
+    public void emailConcurrencyLimiterTest4() throws InterruptedException {
+        EmailConcurrencyLimiter limiter = new EmailConcurrencyLimiter(MAX_LIMIT, LATENCY_TOLERANCE);
+        grow(limiter);
+        send(limiter, newSendFailedException(421));
+        Assert.assertEquals(limiter.getLimit(), 4);
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < limit; i++) {
+            limiter.release(LATENCY, null);
+        }
+        Assert.assertEquals(limiter.getLimit(), 4);
+        grow(limiter);
+        Assert.assertEquals(limiter.getLimit(), MAX_LIMIT);
+    }
+
+    @Test(description = "Halve the concurrency limit when the send latency exceeds the tolerated baseline")
+    public void emailConcurrencyLimiterTest5() throws InterruptedException {
+        EmailConcurrencyLimiter limiter = new EmailConcurrencyLimiter(MAX_LIMIT, LATENCY_TOLERANCE);
+        grow(limiter);
+        limiter.acquire();
+        limiter.release((long) (LATENCY * LATENCY_TOLERANCE) - 1, null);
+        Assert.assertEquals(limiter.getLimit(), MAX_LIMIT);
+        limiter.acquire();
+        limiter.release((long) (LATENCY * LATENCY_TOLERANCE * 2), null);
+        Assert.assertEquals(limiter.getLimit(), 4);
+    }
+
+    @Test(description = "Detect the smtp reply codes of the errors thrown while sending emails")
+    public void emailConcurrencyLimiterTest6() {
+        Assert.assertEquals(EmailConcurrencyLimiter.getReturnCode(newSendFailedException(451)), 451);
+        Assert.assertEquals(EmailConcurrencyLimiter.getReturnCode(new RuntimeException(
+                new EmailConnectorException("Error is encountered while sending the message.",
+                        newSendFailedException(452)))), 452);
+        Assert.assertEquals(EmailConcurrencyLimiter.getReturnCode(new SocketTimeoutException("Read timed out")), -1);
+        Assert.assertEquals(EmailConcurrencyLimiter.getReturnCode(null), -1);
+
+        Assert.assertTrue(EmailConcurrencyLimiter.isThrottled(newSendFailedException(421)));
+        Assert.assertTrue(EmailConcurrencyLimiter.isThrottled(newSendFailedException(451)));
+        Assert.assertTrue(EmailConcurrencyLimiter.isThrottled(newSendFailedException(452)));
+        Assert.assertFalse(EmailConcurrencyLimiter.isThrottled(newSendFailedException(450)));
+        Assert.assertFalse(EmailConcurrencyLimiter.isThrottled(newSendFailedException(550)));
+        Assert.assertFalse(EmailConcurrencyLimiter.isThrottled(new SocketTimeoutException("Read timed out")));
+    }
+
+    /**
+     * Run rounds of sends which use the whole limit, until the limit reaches its maximum.
+     */
+    private static void grow(EmailConcurrencyLimiter limiter) throws InterruptedException {
+        for (int round = 0; round < 100 && limiter.getLimit() < MAX_LIMIT; round++) {
+            int limit = limiter.getLimit();
+            for (int i = 0; i < limit; i++) {
+                limiter.acquire();
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.release(LATENCY, null);
+            }
+        }
+    }
+
+    private static void send(EmailConcurrencyLimiter limiter, Throwable error) throws InterruptedException {
+        limiter.acquire();
+        limiter.release(LATENCY, error);
+    }
+
+    private static SMTPSendFailedException newSendFailedException(int returnCode) {
+        return new SMTPSendFailedException("DATA", returnCode, returnCode + " Requested action aborted", null,
+                null, null, null);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wso2.transport.email.contract.EmailClientConnector;
+import org.wso2.transport.email.contract.message.EmailBaseMessage;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of a borrow, a simulated send and a return on the lock-free {@link EmailConnectionPool}, compared
+ * with the commons-pool GenericKeyedObjectPool it replaced, with 1 to 64 threads. It is not a part of the test
+ * suite, and it is run through its main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailConnectionPoolBenchmark {
+    private static final String POOL_KEY = "benchmark";
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"commons-pool", "lock-free"})
+    private String pool;
+
+    @Param({"8"})
+    private int poolSize;
+
+    @Param({"100"})
+    private int sendTokens;
+
+    private GenericKeyedObjectPool genericPool;
+    private EmailConnectionPool lockFreePool;
+
+    @Setup
+    public void setUp() {
+        if (pool.equals("commons-pool")) {
+            genericPool = new GenericKeyedObjectPool();
+            genericPool.setFactory(new BaseKeyedPoolableObjectFactory() {
+                @Override
+                public Object makeObject(Object key) {
+                    return new FakeConnector();
+                }
+            });
+            genericPool.setMaxTotal(poolSize);
+            genericPool.setMaxActive(poolSize);
+            genericPool.setTestOnBorrow(true);
+            genericPool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_BLOCK);
+        } else {
+            lockFreePool = new EmailConnectionPool(new EmailConnectionPool.ConnectionFactory() {
+                @Override
+                public EmailClientConnector makeObject() {
+                    return new FakeConnector();
+                }
+
+                @Override
+                public boolean validateObject(EmailClientConnector connector) {
+                    return connector.isConnected();
+                }
+
+                @Override
+                public void destroyObject(EmailClientConnector connector) {
+                    connector.disconnect();
+                }
+            }, poolSize, -1, 0, 0);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (genericPool != null) {
+            genericPool.close();
+        }
+        if (lockFreePool != null) {
+            lockFreePool.close();
+        }
+    }
+
+    @Benchmark
+    public void borrowSendAndReturn() throws Exception {
+        if (genericPool != null) {
+            Object connection = genericPool.borrowObject(POOL_KEY);
+            Blackhole.consumeCPU(sendTokens);
+            genericPool.returnObject(POOL_KEY, connection);
+        } else {
+            EmailConnectionPool.PooledConnection connection = lockFreePool.borrowObject();
+            Blackhole.consumeCPU(sendTokens);
+            lockFreePool.returnObject(connection);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(EmailConnectionPoolBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    /**
+     * Connector which is always connected, and does nothing.
+     */
+    private static class FakeConnector implements EmailClientConnector {
+
+        @Override
+        public void init(Map<String, String> properties) {
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void send(EmailBaseMessage emailBaseMessage) {
+        }
+    }
+}
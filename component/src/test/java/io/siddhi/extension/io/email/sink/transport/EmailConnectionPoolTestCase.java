@@ -0,0 +1,240 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.sink.transport;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.transport.email.contract.EmailClientConnector;
+import org.wso2.transport.email.contract.message.EmailBaseMessage;
+import org.wso2.transport.email.exception.EmailConnectorException;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class implementing test cases for the hand offs and the rotation of the connections of the lock-free email client
+ * connection pool.
+ */
+public class EmailConnectionPoolTestCase {
+
+    @Test(description = "Retire a connection after its maximum number of messages, and connect its replacement")
+    public void emailConnectionPoolTest1() throws EmailConnectorException, InterruptedException {
+        FakeConnectionFactory connectionFactory = new FakeConnectionFactory();
+        EmailConnectionPool connectionPool = new EmailConnectionPool(connectionFactory, 1, -1, 2, 0);
+        try {
+            EmailConnectionPool.PooledConnection connection = connectionPool.borrowObject();
+            connectionPool.returnObject(connection);
+            Assert.assertTrue(connectionPool.borrowObject() == connection, "Reuse the connection below its "
+                    + "maximum number of messages.");
+            connectionPool.returnObject(connection);
+            Assert.assertEquals(connectionPool.getRetiredCount(), 1);
+
+            EmailConnectionPool.PooledConnection replacement = connectionPool.borrowObject();
+            Assert.assertTrue(replacement != connection, "Do not reuse the retired connection.");
+            connectionPool.returnObject(replacement);
+            Assert.assertEquals(connectionPool.getCreatedCount(), 2);
+            awaitDestroyed(connectionFactory, 1);
+            Assert.assertEquals(connectionFactory.destroyed.get(), 1);
+        } finally {
+            connectionPool.close();
+        }
+    }
+
+    @Test(description = "Retire a connection which is returned after its maximum lifetime")
+    public void emailConnectionPoolTest2() throws EmailConnectorException, InterruptedException {
+        FakeConnectionFactory connectionFactory = new FakeConnectionFactory();
+        EmailConnectionPool connectionPool = new EmailConnectionPool(connectionFactory, 1, -1, 0, 100);
+        try {
+            EmailConnectionPool.PooledConnection connection = connectionPool.borrowObject();
+            connectionPool.returnObject(connection);
+            Assert.assertEquals(connectionPool.getRetiredCount(), 0);
+
+            connection = connectionPool.borrowObject();
+            Thread.sleep(150);
+            connectionPool.returnObject(connection);
+            Assert.assertEquals(connectionPool.getRetiredCount(), 1);
+            Assert.assertTrue(connectionPool.borrowObject() != connection, "Do not reuse the retired connection.");
+            Assert.assertEquals(connectionPool.getCreatedCount(), 2);
+            awaitDestroyed(connectionFactory, 1);
+            Assert.assertEquals(connectionFactory.destroyed.get(), 1);
+        } finally {
+            connectionPool.close();
+        }
+    }
+
+    @Test(description = "Hand off a returned connection to a thread waiting for it")
+    public void emailConnectionPoolTest3() throws Exception {
+        EmailConnectionPool connectionPool = new EmailConnectionPool(new FakeConnectionFactory(), 1, 5000, 0, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            EmailConnectionPool.PooledConnection connection = connectionPool.borrowObject();
+            Future<EmailConnectionPool.PooledConnection> waitingBorrow = executor.submit(connectionPool::borrowObject);
+            Thread.sleep(50);
+            Assert.assertFalse(waitingBorrow.isDone(), "The borrow should wait while the pool is full.");
+            connectionPool.returnObject(connection);
+            Assert.assertTrue(waitingBorrow.get(1, TimeUnit.SECONDS) == connection);
+            Assert.assertEquals(connectionPool.getCreatedCount(), 1);
+        } finally {
+            executor.shutdownNow();
+            connectionPool.close();
+        }
+    }
+
+    @Test(description = "Return a connection without waiting for a thread which is creating a connection")
+    public void emailConnectionPoolTest4() throws Exception {
+        CountDownLatch connectLatch = new CountDownLatch(1);
+        AtomicInteger connects = new AtomicInteger();
+        FakeConnectionFactory connectionFactory = new FakeConnectionFactory() {
+            @Override
+            public EmailClientConnector makeObject() {
+                //The third connection takes until the latch is released to connect.
+                if (connects.incrementAndGet() == 3) {
+                    try {
+                        connectLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.makeObject();
+            }
+        };
+        EmailConnectionPool connectionPool = new EmailConnectionPool(connectionFactory, 2, 5000, 0, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            EmailConnectionPool.PooledConnection first = connectionPool.borrowObject();
+            EmailConnectionPool.PooledConnection second = connectionPool.borrowObject();
+            Future<EmailConnectionPool.PooledConnection> waitingBorrow = executor.submit(connectionPool::borrowObject);
+            Thread.sleep(50);
+            //The waiting thread creates a connection in place of the broken one, which blocks on the latch.
+            connectionPool.invalidateObject(second);
+            for (int i = 0; i < 50 && connects.get() < 3; i++) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(connects.get(), 3);
+
+            Future<?> returnFuture = executor.submit(() -> connectionPool.returnObject(first));
+            try {
+                returnFuture.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                Assert.fail("The connection should be returned while the waiting thread is connecting.");
+            }
+            connectLatch.countDown();
+            Assert.assertTrue(waitingBorrow.get(1, TimeUnit.SECONDS) != first);
+            Assert.assertEquals(connectionPool.getNumIdle(), 1);
+        } catch (ExecutionException e) {
+            Assert.fail("The connection pool failed.", e.getCause());
+        } finally {
+            connectLatch.countDown();
+            executor.shutdownNow();
+            connectionPool.close();
+        }
+    }
+
+    @Test(description = "Retire the connections of a pool while the relay of another pool hangs on QUIT")
+    public void emailConnectionPoolTest5() throws EmailConnectorException, InterruptedException {
+        CountDownLatch quitLatch = new CountDownLatch(1);
+        FakeConnectionFactory hungConnectionFactory = new FakeConnectionFactory() {
+            @Override
+            public void destroyObject(EmailClientConnector connector) {
+                try {
+                    quitLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.destroyObject(connector);
+            }
+        };
+        FakeConnectionFactory connectionFactory = new FakeConnectionFactory();
+        EmailConnectionPool hungConnectionPool = new EmailConnectionPool(hungConnectionFactory, 1, -1, 1, 0);
+        EmailConnectionPool connectionPool = new EmailConnectionPool(connectionFactory, 1, -1, 1, 0);
+        try {
+            hungConnectionPool.returnObject(hungConnectionPool.borrowObject());
+            Assert.assertEquals(hungConnectionPool.getRetiredCount(), 1);
+
+            connectionPool.returnObject(connectionPool.borrowObject());
+            Assert.assertEquals(connectionPool.getRetiredCount(), 1);
+            awaitDestroyed(connectionFactory, 1);
+            Assert.assertEquals(connectionFactory.destroyed.get(), 1, "The retired connection should be closed "
+                    + "while the relay of the other pool hangs.");
+            Assert.assertEquals(hungConnectionFactory.destroyed.get(), 0);
+        } finally {
+            quitLatch.countDown();
+            hungConnectionPool.close();
+            connectionPool.close();
+        }
+    }
+
+    private static void awaitDestroyed(FakeConnectionFactory connectionFactory, int count)
+            throws InterruptedException {
+        //Retired connections are closed in the background.
+        for (int i = 0; i < 50 && connectionFactory.destroyed.get() < count; i++) {
+            Thread.sleep(100);
+        }
+    }
+
+    private static class FakeConnectionFactory implements EmailConnectionPool.ConnectionFactory {
+        private final AtomicInteger destroyed = new AtomicInteger();
+
+        @Override
+        public EmailClientConnector makeObject() {
+            return new FakeConnector();
+        }
+
+        @Override
+        public boolean validateObject(EmailClientConnector connector) {
+            return true;
+        }
+
+        @Override
+        public void destroyObject(EmailClientConnector connector) {
+            destroyed.incrementAndGet();
+        }
+    }
+
+    private static class FakeConnector implements EmailClientConnector {
+
+        @Override
+        public void init(Map<String, String> properties) {
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void send(EmailBaseMessage emailBaseMessage) {
+        }
+    }
+}
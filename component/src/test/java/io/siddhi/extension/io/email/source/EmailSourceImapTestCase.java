@@ -19,6 +19,8 @@
 
 package io.siddhi.extension.io.email.source;
 
+import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.store.StoredMessage;
 import com.icegreen.greenmail.user.GreenMailUser;
 import com.icegreen.greenmail.user.UserException;
 import com.icegreen.greenmail.util.DummySSLSocketFactory;
@@ -28,6 +30,7 @@ import io.siddhi.core.SiddhiAppRuntime;
 import io.siddhi.core.SiddhiManager;
 import io.siddhi.core.event.Event;
 import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.stream.input.source.Source;
 import io.siddhi.core.stream.output.StreamCallback;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
@@ -39,12 +42,17 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.lang.management.ManagementFactory;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.mail.Flags;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
@@ -455,6 +463,368 @@ public class EmailSourceImapTestCase {
                 + " 'text/plain' but found: text/json"));
     }
 
+    @Test(description = "Test scenario: Configure siddhi to receive events from mails via the non-blocking imap "
+            + "client with SSL.")
+    public void siddhiEmailSourceTest7() throws MessagingException, UserException, InterruptedException {
+
+        log.info("Test scenario: non-blocking imap client with SSL.");
+        // create user on mail server
+        GreenMailUser user = mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String streams = "" + "@App:name('TestSiddhiApp')"
+                + "@source(type='email', @map(type='xml'), "
+                + "username='" + USERNAME + "',"
+                + "password='" + PASSWORD + "',"
+                + "store = 'imap' ,"
+                + "host = '" + LOCALHOST + "',"
+                + "folder = 'INBOX',"
+                + "ssl.enable = 'true' ,"
+                + "port = '3993' ,"
+                + "polling.interval = '5' ,"
+                + "search.term = 'Subject: Test, from:someone' ,"
+                + "content.type = 'text/plain',"
+                + "action.after.processed = 'MOVE',"
+                + "move.to.folder = 'ProcessedMail',"
+                + "imap.client = 'nio')"
+                + "define stream FooStream (name string, age int, country string); "
+                + "define stream BarStream (name string, age int, country string); ";
+
+        String query = ""
+                + "from FooStream "
+                + "select * "
+                + "insert into BarStream; ";
+
+        String event =
+                "<events>"
+                        + "<event>"
+                        + "<name>John</name>"
+                        + "<age>100</age>"
+                        + "<country>AUS</country>"
+                        + "</event>"
+                        + "<event>"
+                        + "<name>Mike</name>"
+                        + "<age>20</age>"
+                        + "<country>USA</country>"
+                        + "</event>"
+                        + "</events>";
+
+        deliverMassage(event, user);
+        mailServer.waitForIncomingEmail(5000, 1);
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        siddhiAppRuntime.start();
+
+        List<String> received = new ArrayList<>(2);
+        List<String> expected = new ArrayList<>(2);
+
+        siddhiAppRuntime.addCallback("BarStream", new StreamCallback() {
+
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                for (Event event : events) {
+                    eventCount.incrementAndGet();
+                    received.add(event.getData(0).toString());
+                }
+
+            }
+        });
+        expected.add("John");
+        expected.add("Mike");
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(eventCount.intValue(), 2, "Event count should be equal to two.");
+        Assert.assertEquals(expected, received, " name parameter of received events are 'John' and"
+                + "Mike respectively");
+        Thread.sleep(500);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Test scenario: Configure siddhi to receive events from two mailboxes via the non-blocking "
+            + "imap client, which share a fetch worker.")
+    public void siddhiEmailSourceTest8() throws MessagingException, UserException, InterruptedException {
+
+        log.info("Test scenario: two mailboxes sharing a fetch worker of the non-blocking imap client.");
+        // create users on mail server
+        GreenMailUser user = mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+        GreenMailUser otherUser = mailServer.setUser("xyz@localhost", "xyz", PASSWORD);
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String streams = "" + "@App:name('TestSiddhiApp')"
+                + "@source(type='email', @map(type='xml'), "
+                + "username='" + USERNAME + "',"
+                + "password='" + PASSWORD + "',"
+                + "host = '" + LOCALHOST + "',"
+                + "port = '3993' ,"
+                + "polling.interval = '5' ,"
+                + "imap.client = 'nio',"
+                + "imap.fetch.workers = '1')"
+                + "define stream FooStream (name string, age int, country string); "
+                + "@source(type='email', @map(type='xml'), "
+                + "username='xyz',"
+                + "password='" + PASSWORD + "',"
+                + "host = '" + LOCALHOST + "',"
+                + "port = '3993' ,"
+                + "polling.interval = '5' ,"
+                + "imap.client = 'nio',"
+                + "imap.fetch.workers = '1')"
+                + "define stream XyzStream (name string, age int, country string); "
+                + "define stream BarStream (name string, age int, country string); ";
+
+        String query = ""
+                + "from FooStream "
+                + "select * "
+                + "insert into BarStream; "
+                + "from XyzStream "
+                + "select * "
+                + "insert into BarStream; ";
+
+        deliverMassage("<events><event><name>John</name><age>100</age><country>AUS</country></event></events>",
+                user);
+        deliverMassage("<events><event><name>Mike</name><age>20</age><country>USA</country></event></events>",
+                otherUser);
+        mailServer.waitForIncomingEmail(5000, 2);
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        List<String> received = new ArrayList<>(2);
+        siddhiAppRuntime.addCallback("BarStream", new StreamCallback() {
+
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                for (Event event : events) {
+                    synchronized (received) {
+                        received.add(event.getData(0).toString());
+                    }
+                    eventCount.incrementAndGet();
+                }
+            }
+        });
+        siddhiAppRuntime.start();
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(eventCount.intValue(), 2, "Event count should be equal to two.");
+        Assert.assertTrue(received.contains("John") && received.contains("Mike"), "Events of both the mailboxes "
+                + "should be received.");
+        Thread.sleep(500);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Test scenario: Configure siddhi to receive events from mails via the non-blocking imap "
+            + "client with the adaptive polling interval.")
+    public void siddhiEmailSourceTest9() throws Exception {
+
+        log.info("Test scenario: non-blocking imap client with the adaptive polling interval.");
+        // create user on mail server
+        GreenMailUser user = mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String streams = "" + "@App:name('TestSiddhiApp')"
+                + "@source(type='email', @map(type='xml'), "
+                + "username='" + USERNAME + "',"
+                + "password='" + PASSWORD + "',"
+                + "host = '" + LOCALHOST + "',"
+                + "port = '3993' ,"
+                + "imap.client = 'nio',"
+                + "imap.idle = 'false',"
+                + "adaptive.polling = 'true',"
+                + "polling.interval.min = '1',"
+                + "polling.interval.max = '4')"
+                + "define stream FooStream (name string, age int, country string); "
+                + "define stream BarStream (name string, age int, country string); ";
+
+        String query = ""
+                + "from FooStream "
+                + "select * "
+                + "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        siddhiAppRuntime.addCallback("BarStream", new StreamCallback() {
+
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                eventCount.addAndGet(events.length);
+            }
+        });
+        siddhiAppRuntime.start();
+
+        ObjectName pollingInterval = new ObjectName("io.siddhi.extension.io.email:type=EmailSource,siddhiApp="
+                + ObjectName.quote("TestSiddhiApp") + ",stream=" + ObjectName.quote("FooStream") + ",mailbox="
+                + ObjectName.quote(USERNAME + "@" + LOCALHOST + "/INBOX"));
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals(mBeanServer.getAttribute(pollingInterval, "MaxPollingInterval"), 4000L);
+
+        deliverMassage("<events><event><name>John</name><age>100</age><country>AUS</country></event></events>",
+                user);
+        SiddhiTestHelper.waitForEvents(50, 1, eventCount, timeout);
+        Assert.assertEquals(eventCount.intValue(), 1, "Event count should be equal to one.");
+        //The next poll is due a second after the poll which found the message.
+        long emptyPolls = (Long) mBeanServer.getAttribute(pollingInterval, "EmptyPolls");
+        Assert.assertEquals(mBeanServer.getAttribute(pollingInterval, "PollingInterval"), 1000L,
+                "Polling interval should be the minimum after a poll which found messages.");
+
+        waitForEmptyPolls(mBeanServer, pollingInterval, emptyPolls + 1);
+        Assert.assertEquals(mBeanServer.getAttribute(pollingInterval, "PollingInterval"), 2000L,
+                "Polling interval should be doubled after an empty poll.");
+        waitForEmptyPolls(mBeanServer, pollingInterval, emptyPolls + 2);
+        Assert.assertEquals(mBeanServer.getAttribute(pollingInterval, "PollingInterval"), 4000L,
+                "Polling interval should be doubled after an empty poll.");
+        siddhiAppRuntime.shutdown();
+        Assert.assertFalse(mBeanServer.isRegistered(pollingInterval), "Polling interval should be unregistered.");
+    }
+
+    @Test(description = "Test scenario: Configure siddhi to receive events from mails via the non-blocking imap "
+            + "client, which processes a limited number of messages per poll in batches.")
+    public void siddhiEmailSourceTest10() throws Exception {
+
+        log.info("Test scenario: non-blocking imap client with a per poll limit and a fetch batch size.");
+        // create user on mail server
+        GreenMailUser user = mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String streams = "" + "@App:name('TestSiddhiApp')"
+                + "@source(type='email', @map(type='xml'), "
+                + "username='" + USERNAME + "',"
+                + "password='" + PASSWORD + "',"
+                + "host = '" + LOCALHOST + "',"
+                + "port = '3993' ,"
+                + "polling.interval = '1' ,"
+                + "imap.client = 'nio',"
+                + "max.messages.per.poll = '2',"
+                + "fetch.batch.size = '1')"
+                + "define stream FooStream (name string, age int, country string); "
+                + "define stream BarStream (name string, age int, country string); ";
+
+        String query = ""
+                + "from FooStream "
+                + "select * "
+                + "insert into BarStream; ";
+
+        for (int i = 0; i < 5; i++) {
+            deliverMassage("<events><event><name>John" + i + "</name><age>100</age><country>AUS</country>"
+                    + "</event></events>", user);
+        }
+        mailServer.waitForIncomingEmail(5000, 5);
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        ObjectName pollingInterval = new ObjectName("io.siddhi.extension.io.email:type=EmailSource,siddhiApp="
+                + ObjectName.quote("TestSiddhiApp") + ",stream=" + ObjectName.quote("FooStream") + ",mailbox="
+                + ObjectName.quote(USERNAME + "@" + LOCALHOST + "/INBOX"));
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        List<Long> polls = new ArrayList<>(5);
+        List<Integer> seenMessages = new ArrayList<>(5);
+        siddhiAppRuntime.addCallback("BarStream", new StreamCallback() {
+
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                for (Event event : events) {
+                    //The polls and the acknowledgements seen by the message which is being processed.
+                    try {
+                        polls.add((Long) mBeanServer.getAttribute(pollingInterval, "Polls"));
+                        seenMessages.add(getSeenMessages(user));
+                    } catch (Exception e) {
+                        log.error("Unable to read the state of the mailbox. " + e.getMessage(), e);
+                    }
+                    eventCount.incrementAndGet();
+                }
+            }
+        });
+        siddhiAppRuntime.start();
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, 10000);
+        Assert.assertEquals(eventCount.intValue(), 5, "Event count should be equal to five.");
+        Assert.assertEquals(polls, Arrays.asList(1L, 1L, 2L, 2L, 3L), "Each poll should process at most two "
+                + "messages.");
+        Assert.assertEquals(seenMessages, Arrays.asList(0, 1, 2, 3, 4), "Each batch should be acknowledged before "
+                + "the next batch is fetched.");
+        Thread.sleep(500);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(description = "Test scenario: Configure siddhi to receive events from mails via the non-blocking imap "
+            + "client, which stops handing over the messages while its source is paused.")
+    public void siddhiEmailSourceTest11() throws MessagingException, UserException, InterruptedException {
+
+        log.info("Test scenario: non-blocking imap client of a paused source.");
+        // create user on mail server
+        GreenMailUser user = mailServer.setUser(ADDRESS, USERNAME, PASSWORD);
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String streams = "" + "@App:name('TestSiddhiApp')"
+                + "@source(type='email', @map(type='xml'), "
+                + "username='" + USERNAME + "',"
+                + "password='" + PASSWORD + "',"
+                + "host = '" + LOCALHOST + "',"
+                + "port = '3993' ,"
+                + "polling.interval = '1' ,"
+                + "imap.client = 'nio')"
+                + "define stream FooStream (name string, age int, country string); "
+                + "define stream BarStream (name string, age int, country string); ";
+
+        String query = ""
+                + "from FooStream "
+                + "select * "
+                + "insert into BarStream; ";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        List<String> received = new ArrayList<>(2);
+        siddhiAppRuntime.addCallback("BarStream", new StreamCallback() {
+
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                for (Event event : events) {
+                    synchronized (received) {
+                        received.add(event.getData(0).toString());
+                    }
+                    eventCount.incrementAndGet();
+                }
+            }
+        });
+        siddhiAppRuntime.start();
+
+        deliverMassage("<events><event><name>John</name><age>100</age><country>AUS</country></event></events>",
+                user);
+        SiddhiTestHelper.waitForEvents(waitTime, 1, eventCount, timeout);
+        Assert.assertEquals(eventCount.intValue(), 1, "Event count should be equal to one.");
+
+        for (List<Source> sources : siddhiAppRuntime.getSources()) {
+            for (Source source : sources) {
+                source.pause();
+            }
+        }
+        deliverMassage("<events><event><name>Mike</name><age>20</age><country>USA</country></event></events>",
+                user);
+        mailServer.waitForIncomingEmail(5000, 2);
+        Thread.sleep(3000);
+        Assert.assertEquals(eventCount.intValue(), 1, "No event should be received while the source is paused.");
+
+        for (List<Source> sources : siddhiAppRuntime.getSources()) {
+            for (Source source : sources) {
+                source.resume();
+            }
+        }
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(eventCount.intValue(), 2, "Event count should be equal to two.");
+        Assert.assertEquals(received.get(1), "Mike", "The message which arrived while paused should be received "
+                + "on resume.");
+        siddhiAppRuntime.shutdown();
+    }
+
+    private static void waitForEmptyPolls(MBeanServer mBeanServer, ObjectName pollingInterval, long emptyPolls)
+            throws Exception {
+        for (int i = 0; i < 100 && (Long) mBeanServer.getAttribute(pollingInterval, "EmptyPolls") < emptyPolls; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(mBeanServer.getAttribute(pollingInterval, "EmptyPolls"), emptyPolls);
+        //The interval is adapted right after the empty poll is counted.
+        Thread.sleep(50);
+    }
+
+    private int getSeenMessages(GreenMailUser user) throws FolderException {
+        int seenMessages = 0;
+        for (StoredMessage message : mailServer.getManagers().getImapHostManager().getInbox(user).getMessages()) {
+            if (message.isSet(Flags.Flag.SEEN)) {
+                seenMessages++;
+            }
+        }
+        return seenMessages;
+    }
 
     private void deliverMassage(String event , GreenMailUser user) throws MessagingException {
         MimeMessage message = new MimeMessage((Session) null);
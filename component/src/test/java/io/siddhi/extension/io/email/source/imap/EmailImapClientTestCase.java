@@ -0,0 +1,219 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.source.imap;
+
+import io.siddhi.extension.io.email.nio.EmailEventLoopGroup;
+import io.siddhi.extension.io.email.util.EmailConstants;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class implementing test cases for pausing the non-blocking imap client.
+ */
+public class EmailImapClientTestCase {
+    private static final String MESSAGE = "From: someone@localhost\r\nSubject: Test\r\n\r\nContent\r\n";
+
+    private EmailEventLoopGroup eventLoopGroup;
+    private EmailPollingScheduler scheduler;
+    private AtomicInteger receivedMessages;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        eventLoopGroup = new EmailEventLoopGroup("EmailImapClientTest", 1);
+        scheduler = new EmailPollingScheduler(1);
+        receivedMessages = new AtomicInteger();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        eventLoopGroup.shutdown(1000);
+    }
+
+    @Test(description = "Do not search the folder when IDLE ends while the client is paused")
+    public void emailImapClientTest1() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            FakeImapServer server = new FakeImapServer(serverSocket);
+            server.fetchLatch.countDown();
+            server.start();
+            EmailImapClient imapClient = newImapClient(serverSocket.getLocalPort());
+            try {
+                imapClient.start(e -> { }).get(5, TimeUnit.SECONDS);
+                Assert.assertTrue(server.idleStarted.await(5, TimeUnit.SECONDS));
+
+                //The server ends IDLE, as it does when IDLE is renewed, after a message arrives.
+                imapClient.pause();
+                server.messageAvailable = true;
+                server.idleEndLatch.countDown();
+                Thread.sleep(500);
+                Assert.assertEquals(server.searches.get(), 1, "The folder should not be searched while paused.");
+                Assert.assertEquals(receivedMessages.get(), 0, "No message should be handed over while paused.");
+
+                imapClient.resume();
+                awaitMessages(1);
+                Assert.assertEquals(receivedMessages.get(), 1);
+            } finally {
+                server.idleEndLatch.countDown();
+                imapClient.close();
+            }
+        }
+    }
+
+    @Test(description = "Do not hand over a batch which is fetched after the client is paused")
+    public void emailImapClientTest2() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            FakeImapServer server = new FakeImapServer(serverSocket);
+            server.messageAvailable = true;
+            server.idleEndLatch.countDown();
+            server.start();
+            EmailImapClient imapClient = newImapClient(serverSocket.getLocalPort());
+            try {
+                imapClient.start(e -> { }).get(5, TimeUnit.SECONDS);
+                Assert.assertTrue(server.fetchStarted.await(5, TimeUnit.SECONDS));
+
+                imapClient.pause();
+                server.fetchLatch.countDown();
+                Thread.sleep(500);
+                Assert.assertEquals(receivedMessages.get(), 0, "No message should be handed over while paused.");
+                Assert.assertEquals(server.stores.get(), 0, "The message should not be acknowledged while paused.");
+
+                imapClient.resume();
+                awaitMessages(1);
+                Assert.assertEquals(receivedMessages.get(), 1);
+            } finally {
+                server.fetchLatch.countDown();
+                imapClient.close();
+            }
+        }
+    }
+
+    private EmailImapClient newImapClient(int port) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(EmailConstants.TRANSPORT_MAIL_RECEIVER_HOST_NAME, "127.0.0.1");
+        properties.put("mail.imap." + EmailConstants.EMAIL_RECEIVER_PORT, String.valueOf(port));
+        properties.put(EmailConstants.TRANSPORT_MAIL_RECEIVER_USERNAME, "abc");
+        properties.put(EmailConstants.TRANSPORT_MAIL_RECEIVER_PASSWORD, "password");
+        properties.put(EmailConstants.TRANSPORT_MAIL_FOLDER_NAME, "INBOX");
+        properties.put(EmailConstants.TRANSPORT_MAIL_ACTION_AFTER_PROCESSED, "SEEN");
+        properties.put(EmailConstants.TRANSPORT_MAIL_RECEIVER_CONTENT_TYPE, "text/plain");
+        return new EmailImapClient(properties, "imap", true, new EmailPollingInterval(100, 100, 100),
+                message -> receivedMessages.incrementAndGet(), Runnable::run, scheduler, eventLoopGroup.next());
+    }
+
+    private void awaitMessages(int count) throws InterruptedException {
+        for (int i = 0; i < 50 && receivedMessages.get() < count; i++) {
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * IMAP server of a single session with a folder of a single message, which is found by the searches only once
+     * it is available. The server ends the first IDLE after the latch is released, and answers the first FETCH
+     * after the fetch latch is released.
+     */
+    private static class FakeImapServer extends Thread {
+        private final ServerSocket serverSocket;
+        private final CountDownLatch idleStarted = new CountDownLatch(1);
+        private final CountDownLatch idleEndLatch = new CountDownLatch(1);
+        private final CountDownLatch fetchStarted = new CountDownLatch(1);
+        private final CountDownLatch fetchLatch = new CountDownLatch(1);
+        private final AtomicInteger searches = new AtomicInteger();
+        private final AtomicInteger stores = new AtomicInteger();
+        private volatile boolean messageAvailable = false;
+        private int idles = 0;
+        private int fetches = 0;
+        private String idleTag;
+
+        private FakeImapServer(ServerSocket serverSocket) {
+            this.serverSocket = serverSocket;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (Socket socket = serverSocket.accept()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                        StandardCharsets.US_ASCII));
+                OutputStream out = socket.getOutputStream();
+                reply(out, "* OK IMAP server ready");
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.equals("DONE")) {
+                        reply(out, idleTag + " OK IDLE terminated");
+                        continue;
+                    }
+                    String tag = line.substring(0, line.indexOf(' '));
+                    String command = line.substring(tag.length() + 1).toUpperCase(Locale.ENGLISH);
+                    if (command.startsWith("CAPABILITY")) {
+                        reply(out, "* CAPABILITY IMAP4rev1 IDLE");
+                    } else if (command.startsWith("SELECT")) {
+                        reply(out, "* 1 EXISTS");
+                    } else if (command.startsWith("UID SEARCH")) {
+                        searches.incrementAndGet();
+                        reply(out, messageAvailable ? "* SEARCH 1" : "* SEARCH");
+                    } else if (command.startsWith("UID FETCH")) {
+                        if (++fetches == 1) {
+                            fetchStarted.countDown();
+                            fetchLatch.await();
+                        }
+                        reply(out, "* 1 FETCH (UID 1 BODY[] {" + MESSAGE.length() + "}\r\n" + MESSAGE + ")");
+                    } else if (command.startsWith("UID STORE")) {
+                        stores.incrementAndGet();
+                    } else if (command.startsWith("IDLE")) {
+                        idleTag = tag;
+                        reply(out, "+ idling");
+                        if (++idles == 1) {
+                            idleStarted.countDown();
+                            idleEndLatch.await();
+                            reply(out, tag + " OK IDLE terminated");
+                        }
+                        continue;
+                    } else if (command.startsWith("LOGOUT")) {
+                        reply(out, "* BYE");
+                        reply(out, tag + " OK LOGOUT completed");
+                        return;
+                    }
+                    reply(out, tag + " OK");
+                }
+            } catch (IOException | InterruptedException e) {
+                //The client closed the session.
+            }
+        }
+
+        private static void reply(OutputStream out, String reply) throws IOException {
+            out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+    }
+}
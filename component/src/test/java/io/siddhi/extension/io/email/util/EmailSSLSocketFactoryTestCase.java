@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.io.email.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Class implementing test cases for configuring the shared SSL socket factories of the email connections.
+ */
+public class EmailSSLSocketFactoryTestCase {
+    private static final String SOCKET_FACTORY_CLASS = "mail.smtp.ssl.socketFactory.class";
+    private static final String SOCKET_FACTORY_FALLBACK = "mail.smtp.ssl.socketFactory.fallback";
+
+    @Test(description = "Use the socket factory which trusts all the servers when 'ssl.trust' is '*'")
+    public void emailSSLSocketFactoryTest1() {
+        Map<String, String> properties = new HashMap<>();
+        EmailSSLSocketFactory.configure(properties, "smtp", " * ");
+        Assert.assertEquals(properties.get(SOCKET_FACTORY_CLASS), EmailSSLSocketFactory.TrustAll.class.getName());
+        Assert.assertEquals(properties.get(SOCKET_FACTORY_FALLBACK), "false");
+    }
+
+    @Test(description = "Use the socket factory which validates the server certificates when 'ssl.trust' is empty")
+    public void emailSSLSocketFactoryTest2() {
+        Map<String, String> properties = new HashMap<>();
+        EmailSSLSocketFactory.configure(properties, "imap", "");
+        Assert.assertEquals(properties.get("mail.imap.ssl.socketFactory.class"),
+                EmailSSLSocketFactory.Default.class.getName());
+        Assert.assertEquals(properties.get("mail.imap.ssl.socketFactory.fallback"), "false");
+        Assert.assertNull(properties.get(SOCKET_FACTORY_CLASS));
+    }
+
+    @Test(description = "Leave the host list of 'ssl.trust' to JavaMail")
+    public void emailSSLSocketFactoryTest3() {
+        Map<String, String> properties = new HashMap<>();
+        EmailSSLSocketFactory.configure(properties, "smtp", "smtp.example.com localhost");
+        Assert.assertTrue(properties.isEmpty(), "No property should be set, but found: " + properties + ".");
+    }
+
+    @Test(description = "Leave the socket factories defined by the user untouched")
+    public void emailSSLSocketFactoryTest4() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(SOCKET_FACTORY_CLASS, "com.example.CustomSSLSocketFactory");
+        EmailSSLSocketFactory.configure(properties, "smtp", "*");
+        Assert.assertEquals(properties.get(SOCKET_FACTORY_CLASS), "com.example.CustomSSLSocketFactory");
+        Assert.assertNull(properties.get(SOCKET_FACTORY_FALLBACK));
+        Assert.assertEquals(properties.size(), 1);
+
+        properties = new HashMap<>();
+        properties.put("mail.smtp.socketFactory.class", "com.example.CustomSocketFactory");
+        EmailSSLSocketFactory.configure(properties, "smtp", "");
+        Assert.assertEquals(properties.get("mail.smtp.socketFactory.class"), "com.example.CustomSocketFactory");
+        Assert.assertNull(properties.get(SOCKET_FACTORY_CLASS));
+        Assert.assertEquals(properties.size(), 1);
+    }
+
+    @Test(description = "Share the SSL context of a trust policy across the connections")
+    public void emailSSLSocketFactoryTest5() {
+        SSLContext trustAll = EmailSSLSocketFactory.getSSLContext("*", "smtp.example.com");
+        SSLContext defaultTrust = EmailSSLSocketFactory.getSSLContext("", "smtp.example.com");
+        Assert.assertTrue(trustAll != defaultTrust, "Trust policies should not share the SSL context.");
+        Assert.assertTrue(EmailSSLSocketFactory.getSSLContext("*", "localhost") == trustAll);
+        Assert.assertTrue(EmailSSLSocketFactory.getSSLContext("localhost smtp.example.com", "smtp.example.com")
+                == trustAll);
+        Assert.assertTrue(EmailSSLSocketFactory.getSSLContext("localhost", "smtp.example.com") == defaultTrust);
+        Assert.assertTrue(EmailSSLSocketFactory.getSSLContext(null, "smtp.example.com") == defaultTrust);
+        Assert.assertTrue(EmailSSLSocketFactory.Default.getDefault() instanceof EmailSSLSocketFactory.Default);
+        Assert.assertTrue(EmailSSLSocketFactory.TrustAll.getDefault() == EmailSSLSocketFactory.TrustAll.getDefault());
+    }
+}